@@ -0,0 +1,241 @@
+package com.appBancaria;
+
+import com.appBancaria.config.Configuracion;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consola de log de la ventana del servidor.
+ * Las líneas escritas en su flujo de salida se guardan en un buffer circular
+ * de tamaño fijo y se pasan al área de texto en lotes, a una frecuencia fija,
+ * desde un Timer de Swing. Así el hilo de eventos no recibe una tarea por cada
+ * escritura y el área de texto nunca tiene más líneas que el buffer.
+ * Permite pausar la vista y filtrar las líneas por texto.
+ */
+class ConsolaLog extends JPanel {
+    // Intervalo entre actualizaciones del área de texto (10 por segundo)
+    private static final int INTERVALO_REFRESCO_MS = 100;
+    // Una línea sin salto de línea más larga que esto se muestra partida
+    private static final int MAX_LINEA_BYTES = 8192;
+
+    private final int maxLineas = Math.max(100, Configuracion.getInt("CONSOLA_MAX_LINEAS", 5000));
+    private final JTextArea areaTexto = new JTextArea();
+    private final JToggleButton pausarButton = new JToggleButton("Pausar");
+    private final JTextField filtroField = new JTextField(15);
+    private final JLabel estadoLabel = new JLabel(" ");
+
+    // Estado compartido con los hilos que escriben; protegido por "this"
+    private final ArrayDeque<String> lineas = new ArrayDeque<>();
+    private final List<String> nuevas = new ArrayList<>();
+    private boolean reconstruir;
+    private long lineasRecibidas;
+
+    // Solo se usan en el hilo de eventos
+    private String filtro = "";
+    private int lineasMostradas;
+
+    private final OutputStream salida = new SalidaConsola();
+
+    ConsolaLog() {
+        super(new BorderLayout(0, 5));
+
+        areaTexto.setEditable(false);
+        areaTexto.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        add(new JScrollPane(areaTexto), BorderLayout.CENTER);
+
+        JPanel controlesPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        controlesPanel.add(pausarButton);
+        controlesPanel.add(new JLabel("Filtrar:"));
+        controlesPanel.add(filtroField);
+        JButton limpiarButton = new JButton("Limpiar");
+        controlesPanel.add(limpiarButton);
+        controlesPanel.add(estadoLabel);
+        add(controlesPanel, BorderLayout.NORTH);
+
+        // Al reanudar se muestra el contenido actual del buffer
+        pausarButton.addActionListener(e -> {
+            pausarButton.setText(pausarButton.isSelected() ? "Reanudar" : "Pausar");
+            if (!pausarButton.isSelected()) {
+                marcarReconstruir();
+            }
+        });
+        filtroField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                cambiarFiltro();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                cambiarFiltro();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                cambiarFiltro();
+            }
+        });
+        limpiarButton.addActionListener(e -> limpiar());
+
+        new Timer(INTERVALO_REFRESCO_MS, e -> refrescar()).start();
+    }
+
+    /**
+     * @return Flujo cuyas líneas se muestran en la consola (para System.setOut/System.setErr)
+     */
+    OutputStream getSalida() {
+        return salida;
+    }
+
+    /**
+     * Borra las líneas guardadas y las mostradas
+     */
+    synchronized void limpiar() {
+        lineas.clear();
+        nuevas.clear();
+        reconstruir = true;
+    }
+
+    private synchronized void agregarLinea(String linea) {
+        lineas.addLast(linea);
+        if (lineas.size() > maxLineas) {
+            lineas.removeFirst();
+        }
+        lineasRecibidas++;
+        if (!reconstruir) {
+            nuevas.add(linea);
+            // Si se acumulan más líneas que las que caben, es más barato reconstruir todo
+            if (nuevas.size() > maxLineas) {
+                nuevas.clear();
+                reconstruir = true;
+            }
+        }
+    }
+
+    private synchronized void marcarReconstruir() {
+        nuevas.clear();
+        reconstruir = true;
+    }
+
+    private void cambiarFiltro() {
+        filtro = filtroField.getText().trim().toLowerCase();
+        marcarReconstruir();
+    }
+
+    /**
+     * Pasa al área de texto las líneas recibidas desde la última actualización (hilo de eventos)
+     */
+    private void refrescar() {
+        if (pausarButton.isSelected()) {
+            estadoLabel.setText("En pausa (" + lineasRecibidas() + " líneas recibidas)");
+            return;
+        }
+        List<String> lote;
+        boolean reemplazar;
+        synchronized (this) {
+            if (!reconstruir && nuevas.isEmpty()) {
+                return;
+            }
+            reemplazar = reconstruir;
+            lote = reemplazar ? new ArrayList<>(lineas) : new ArrayList<>(nuevas);
+            nuevas.clear();
+            reconstruir = false;
+        }
+
+        StringBuilder texto = new StringBuilder();
+        int agregadas = 0;
+        for (String linea : lote) {
+            if (filtro.isEmpty() || linea.toLowerCase().contains(filtro)) {
+                texto.append(linea).append('\n');
+                agregadas++;
+            }
+        }
+
+        if (reemplazar) {
+            areaTexto.setText(texto.toString());
+            lineasMostradas = agregadas;
+        } else if (agregadas > 0) {
+            areaTexto.append(texto.toString());
+            lineasMostradas += agregadas;
+        }
+        recortar();
+        areaTexto.setCaretPosition(areaTexto.getDocument().getLength());
+        estadoLabel.setText(" ");
+    }
+
+    /**
+     * Quita las líneas más antiguas del área de texto si supera el máximo
+     */
+    private void recortar() {
+        int sobrantes = lineasMostradas - maxLineas;
+        if (sobrantes <= 0) {
+            return;
+        }
+        try {
+            areaTexto.replaceRange("", 0, areaTexto.getLineEndOffset(sobrantes - 1));
+            lineasMostradas = maxLineas;
+        } catch (BadLocationException e) {
+            areaTexto.setText("");
+            lineasMostradas = 0;
+        }
+    }
+
+    private synchronized long lineasRecibidas() {
+        return lineasRecibidas;
+    }
+
+    /**
+     * Convierte los bytes escritos en líneas completas
+     */
+    private class SalidaConsola extends OutputStream {
+        private final ByteArrayOutputStream lineaActual = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                terminarLinea();
+            } else {
+                lineaActual.write(b);
+                if (lineaActual.size() >= MAX_LINEA_BYTES) {
+                    terminarLinea();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int inicio = off;
+            int fin = off + len;
+            for (int i = off; i < fin; i++) {
+                if (b[i] == '\n') {
+                    lineaActual.write(b, inicio, i - inicio);
+                    terminarLinea();
+                    inicio = i + 1;
+                }
+            }
+            lineaActual.write(b, inicio, fin - inicio);
+            if (lineaActual.size() >= MAX_LINEA_BYTES) {
+                terminarLinea();
+            }
+        }
+
+        private void terminarLinea() {
+            String linea = lineaActual.toString();
+            lineaActual.reset();
+            // Quitar el \r de los saltos de línea de Windows
+            if (linea.endsWith("\r")) {
+                linea = linea.substring(0, linea.length() - 1);
+            }
+            agregarLinea(linea);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.appBancaria;
 
 import com.appBancaria.servicio.Servidor;
 import com.appBancaria.servicio.ClienteConectado;
+import com.appBancaria.log.Log;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -9,8 +10,6 @@ import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -18,7 +17,7 @@ import java.util.Date;
 public class PaginaPrincipal extends JFrame {
     private JButton iniciarButton;
     private JButton detenerButton;
-    private JTextArea logTextArea;
+    private ConsolaLog consolaLog;
     private JTextArea clientesTextArea;
     private JLabel estadoLabel;
     private Servidor servidor;
@@ -75,12 +74,9 @@ public class PaginaPrincipal extends JFrame {
         // Panel central con área de texto dividido en dos partes
         JPanel centerPanel = new JPanel(new GridLayout(1, 2, 10, 0));
         
-        // Área para logs del servidor
-        logTextArea = new JTextArea();
-        logTextArea.setEditable(false);
-        logTextArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        JScrollPane logScrollPane = new JScrollPane(logTextArea);
-        logScrollPane.setBorder(BorderFactory.createTitledBorder(
+        // Área para logs del servidor (acotada y actualizada por lotes)
+        consolaLog = new ConsolaLog();
+        consolaLog.setBorder(BorderFactory.createTitledBorder(
             BorderFactory.createEtchedBorder(), 
             "Log del servidor",
             TitledBorder.LEFT,
@@ -102,7 +98,7 @@ public class PaginaPrincipal extends JFrame {
             new Font("Arial", Font.BOLD, 12)
         ));
         
-        centerPanel.add(logScrollPane);
+        centerPanel.add(consolaLog);
         centerPanel.add(clientesScrollPane);
         mainPanel.add(centerPanel, BorderLayout.CENTER);
 
@@ -133,7 +129,7 @@ public class PaginaPrincipal extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 if (servidor != null) {
-                    log("Deteniendo el servidor antes de salir...");
+                    Log.info("Deteniendo el servidor antes de salir...");
                     servidor.detener();
                 }
                 if (actualizadorClientes != null) {
@@ -148,7 +144,7 @@ public class PaginaPrincipal extends JFrame {
         
         // Iniciar el servidor automáticamente al abrir la ventana
         SwingUtilities.invokeLater(() -> {
-            log("Iniciando servidor automáticamente...");
+            Log.info("Iniciando servidor automáticamente...");
             iniciarServidor();
         });
     }
@@ -195,9 +191,9 @@ public class PaginaPrincipal extends JFrame {
     }
 
     private void iniciarServidor() {
-        logTextArea.setText(""); // Limpiar logs anteriores
+        consolaLog.limpiar(); // Limpiar logs anteriores
         clientesTextArea.setText(""); // Limpiar lista de clientes
-        log("Iniciando servidor en el puerto " + puerto + "...");
+        Log.info("Iniciando servidor en el puerto " + puerto + "...");
         estadoLabel.setText("INICIANDO");
         estadoLabel.setForeground(new Color(255, 150, 0));
         
@@ -221,12 +217,12 @@ public class PaginaPrincipal extends JFrame {
                     actualizarEstiloBoton(detenerButton, true);
                 });
                 
-                log("Servidor iniciado correctamente en el puerto " + puerto + ". Esperando conexiones...");
+                Log.info("Servidor iniciado correctamente en el puerto " + puerto + ". Esperando conexiones...");
                 
                 // Iniciar el temporizador para actualizar la lista de clientes
                 iniciarActualizadorClientes();
             } catch (Exception ex) {
-                log("Error al iniciar el servidor: " + ex.getMessage());
+                Log.error("Error al iniciar el servidor: " + ex.getMessage());
                 SwingUtilities.invokeLater(() -> {
                     estadoLabel.setText("ERROR");
                     estadoLabel.setForeground(Color.RED);
@@ -242,7 +238,7 @@ public class PaginaPrincipal extends JFrame {
     }
 
     private void detenerServidor() {
-        log("Deteniendo servidor...");
+        Log.info("Deteniendo servidor...");
         estadoLabel.setText("DETENIENDO");
         estadoLabel.setForeground(new Color(255, 150, 0));
         
@@ -262,10 +258,10 @@ public class PaginaPrincipal extends JFrame {
                 servidor.detener();
             }
             
-            log("Servidor detenido correctamente.");
+            Log.info("Servidor detenido correctamente.");
             
             // Cerrar la aplicación completamente después de detener el servidor
-            log("Cerrando la aplicación...");
+            Log.info("Cerrando la aplicación...");
             SwingUtilities.invokeLater(() -> {
                 dispose(); // Cierra la ventana
                 System.exit(0); // Termina la aplicación completamente
@@ -288,7 +284,15 @@ public class PaginaPrincipal extends JFrame {
             StringBuilder sb = new StringBuilder();
             
             // Mostrar el número de clientes conectados
-            sb.append("Total de clientes conectados: ").append(clientes.size()).append("\n\n");
+            sb.append("Total de clientes conectados: ").append(clientes.size()).append("\n");
+            
+            // Mostrar el estado del control de admisión
+            java.util.Map<String, Object> admision = servidor.getEstadisticasAdmision();
+            sb.append("Solicitudes en curso: ").append(admision.get("enEjecucion"))
+              .append("/").append(admision.get("limiteConcurrencia"))
+              .append(" - En cola: ").append(admision.get("enCola"))
+              .append(" - Rechazadas: ").append(admision.get("rechazadas"))
+              .append("\n\n");
             
             // Formateo de fecha para mostrar la hora de conexión
             SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
@@ -314,33 +318,11 @@ public class PaginaPrincipal extends JFrame {
     }
     
     private void redirectSystemStreams() {
-        OutputStream out = new OutputStream() {
-            @Override
-            public void write(int b) throws IOException {
-                updateTextArea(String.valueOf((char) b));
-            }
-            
-            @Override
-            public void write(byte[] b, int off, int len) throws IOException {
-                updateTextArea(new String(b, off, len));
-            }
-        };
-        
-        System.setOut(new PrintStream(out, true));
-        System.setErr(new PrintStream(out, true));
+        PrintStream salida = new PrintStream(consolaLog.getSalida(), true);
+        System.setOut(salida);
+        System.setErr(salida);
     }
     
-    private void updateTextArea(final String text) {
-        SwingUtilities.invokeLater(() -> {
-            logTextArea.append(text);
-            logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
-        });
-    }
-    
-    private void log(String message) {
-        System.out.println("[" + java.time.LocalTime.now().toString().substring(0, 8) + "] " + message);
-    }
-
     public static void main(String[] args) {
         new PaginaPrincipal();
     }
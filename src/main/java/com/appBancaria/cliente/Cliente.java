@@ -1,21 +1,36 @@
 package com.appBancaria.cliente;
 
+import com.appBancaria.dto.AdaptadoresDTO;
+import com.appBancaria.dto.ConsignaDTO;
+import com.appBancaria.dto.ConsultaSaldoDTO;
+import com.appBancaria.dto.RespuestaDTO;
 import com.appBancaria.dto.SolicitudDTO;
+import com.appBancaria.protocolo.ProtocoloBinario;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Cliente {
     private static final String SERVER_ADDRESS = "localhost";
     private static final int SERVER_PORT = 12345;
-    private static final Gson gson = new Gson();
+    private static final Gson gson = AdaptadoresDTO.crearGson();
     
     // Constantes para la prueba de consignación
     private static final String NUMERO_CUENTA_DESTINO = "586522";
@@ -28,6 +43,8 @@ public class Cliente {
         System.out.println("=== MENÚ DE PRUEBAS ===");
         System.out.println("1. Probar login, consulta de saldo y consignación");
         System.out.println("2. Probar consulta de saldo de otra cuenta (debería fallar)");
+        System.out.println("3. Comparar rendimiento de los protocolos JSON y binario");
+        System.out.println("4. Prueba de carga de consignaciones a una misma cuenta");
         System.out.print("Seleccione una opción: ");
         
         int opcion = 1;
@@ -44,6 +61,12 @@ public class Cliente {
             case 2:
                 probarConsultaSaldoAjena(scanner);
                 break;
+            case 3:
+                compararProtocolos(scanner);
+                break;
+            case 4:
+                probarCargaConsignaciones(scanner);
+                break;
             default:
                 System.out.println("Opción inválida, ejecutando prueba estándar");
                 probarLoginYConsignacionJWT(scanner);
@@ -379,4 +402,277 @@ public class Cliente {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+    
+    private static void compararProtocolos(Scanner scanner) {
+        System.out.println("==== COMPARACIÓN DE PROTOCOLOS: JSON VS BINARIO ====");
+        
+        System.out.print("Correo electrónico: ");
+        String correo = scanner.nextLine();
+        
+        System.out.print("Contraseña: ");
+        String contrasena = scanner.nextLine();
+        
+        System.out.print("Número de solicitudes por protocolo [10000]: ");
+        int repeticiones = 10000;
+        try {
+            repeticiones = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            // Se usa el valor por defecto
+        }
+        
+        // La conexión JSON mantiene la sesión abierta mientras dura la prueba
+        try (Socket socketJson = new Socket(SERVER_ADDRESS, SERVER_PORT);
+             PrintWriter out = new PrintWriter(socketJson.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socketJson.getInputStream()));
+             Socket socketBinario = new Socket(SERVER_ADDRESS, SERVER_PORT)) {
+            
+            socketJson.setTcpNoDelay(true);
+            socketBinario.setTcpNoDelay(true);
+            
+            // 1. INICIAR SESIÓN (JSON)
+            Map<String, Object> datos = new HashMap<>();
+            datos.put("correo", correo);
+            datos.put("contrasena", contrasena);
+            SolicitudDTO login = new SolicitudDTO();
+            login.setTipoOperacion("login");
+            login.setDatos(datos);
+            out.println(gson.toJson(login));
+            
+            JsonObject respuesta = JsonParser.parseString(in.readLine()).getAsJsonObject();
+            if (respuesta.get("codigo").getAsInt() != 200) {
+                System.out.println("\n¡Error en la autenticación! " + respuesta.get("mensaje").getAsString());
+                return;
+            }
+            String token = respuesta.get("datos").getAsJsonObject().get("token").getAsString();
+            
+            ConsultaSaldoDTO datosConsulta = new ConsultaSaldoDTO();
+            datosConsulta.setToken(token);
+            SolicitudDTO consulta = new SolicitudDTO();
+            consulta.setTipoOperacion("consulta_saldo");
+            consulta.setCarga(datosConsulta);
+            
+            // 2. NEGOCIAR EL PROTOCOLO BINARIO EN LA SEGUNDA CONEXIÓN
+            DataOutputStream salidaBinaria = new DataOutputStream(new BufferedOutputStream(socketBinario.getOutputStream()));
+            DataInputStream entradaBinaria = new DataInputStream(new BufferedInputStream(socketBinario.getInputStream()));
+            salidaBinaria.write(ProtocoloBinario.HANDSHAKE);
+            salidaBinaria.flush();
+            if (entradaBinaria.readByte() != ProtocoloBinario.HANDSHAKE) {
+                System.out.println("\nEl servidor no aceptó el protocolo binario");
+                return;
+            }
+            
+            // 3. CALENTAMIENTO Y MEDICIÓN
+            int calentamiento = Math.min(1000, repeticiones);
+            for (int i = 0; i < calentamiento; i++) {
+                consultarJson(out, in, consulta);
+                consultarBinario(salidaBinaria, entradaBinaria, consulta);
+            }
+            
+            long inicio = System.nanoTime();
+            double saldoJson = 0;
+            for (int i = 0; i < repeticiones; i++) {
+                saldoJson = consultarJson(out, in, consulta);
+            }
+            long nanosJson = System.nanoTime() - inicio;
+            
+            inicio = System.nanoTime();
+            double saldoBinario = 0;
+            for (int i = 0; i < repeticiones; i++) {
+                saldoBinario = consultarBinario(salidaBinaria, entradaBinaria, consulta);
+            }
+            long nanosBinario = System.nanoTime() - inicio;
+            
+            System.out.println("\n=== RESULTADOS (" + repeticiones + " consultas de saldo por protocolo) ===");
+            imprimirResultado("JSON", nanosJson, repeticiones, saldoJson);
+            imprimirResultado("Binario", nanosBinario, repeticiones, saldoBinario);
+            System.out.println("Tamaño de la solicitud: JSON " + (gson.toJson(consulta).getBytes().length + 1) +
+                    " bytes, binario " + ProtocoloBinario.codificarSolicitud(consulta, gson).length + " bytes");
+            
+        } catch (Exception e) {
+            System.err.println("Error de conexión: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Varias conexiones consignan a la vez en la misma cuenta de destino, que
+     * es el caso en que todas las consignaciones compiten por la misma fila.
+     * Sirve para comparar el rendimiento del servidor entre versiones: se
+     * ejecuta con los mismos parámetros contra el servidor de cada versión
+     * (misma base de datos y .env) y se comparan consignaciones/s y p99.
+     * Las respuestas del menú pueden darse por la entrada estándar, por ejemplo:
+     * printf '4\ncorreo\ncontraseña\n\n16\n500\n' | java ... com.appBancaria.cliente.Cliente
+     */
+    private static void probarCargaConsignaciones(Scanner scanner) {
+        System.out.println("==== PRUEBA DE CARGA: CONSIGNACIONES A UNA MISMA CUENTA ====");
+        
+        System.out.print("Correo electrónico: ");
+        String correo = scanner.nextLine();
+        
+        System.out.print("Contraseña: ");
+        String contrasena = scanner.nextLine();
+        
+        System.out.print("Cuenta destino [" + NUMERO_CUENTA_DESTINO + "]: ");
+        String cuentaDestino = scanner.nextLine().trim();
+        if (cuentaDestino.isEmpty()) {
+            cuentaDestino = NUMERO_CUENTA_DESTINO;
+        }
+        
+        System.out.print("Número de conexiones [16]: ");
+        int conexiones = leerEntero(scanner, 16);
+        
+        System.out.print("Consignaciones por conexión [500]: ");
+        int repeticiones = leerEntero(scanner, 500);
+        
+        // Un solo login: iniciar sesión otra vez invalidaría la sesión anterior,
+        // así que todas las conexiones usan el mismo token. La conexión del login
+        // queda abierta durante toda la prueba porque al cerrarla el servidor
+        // cierra también la sesión
+        try (Socket socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            Map<String, Object> datos = new HashMap<>();
+            datos.put("correo", correo);
+            datos.put("contrasena", contrasena);
+            SolicitudDTO login = new SolicitudDTO();
+            login.setTipoOperacion("login");
+            login.setDatos(datos);
+            out.println(gson.toJson(login));
+            
+            JsonObject respuesta = JsonParser.parseString(in.readLine()).getAsJsonObject();
+            if (respuesta.get("codigo").getAsInt() != 200) {
+                System.out.println("\n¡Error en la autenticación! " + respuesta.get("mensaje").getAsString());
+                return;
+            }
+            String token = respuesta.get("datos").getAsJsonObject().get("token").getAsString();
+            ejecutarCargaConsignaciones(token, cuentaDestino, conexiones, repeticiones);
+        } catch (Exception e) {
+            System.err.println("Error de conexión: " + e.getMessage());
+        }
+    }
+    
+    private static void ejecutarCargaConsignaciones(String token, String cuentaDestino, int conexiones, int repeticiones) {
+        // Se consigna un monto pequeño para no inflar el saldo de la cuenta
+        ConsignaDTO datosConsigna = new ConsignaDTO();
+        datosConsigna.setToken(token);
+        datosConsigna.setNumeroCuentaDestino(cuentaDestino);
+        datosConsigna.setMonto(1.0);
+        SolicitudDTO consigna = new SolicitudDTO();
+        consigna.setTipoOperacion("consigna_cuenta");
+        consigna.setCarga(datosConsigna);
+        String jsonConsigna = gson.toJson(consigna);
+        
+        // Cada conexión guarda la latencia de cada consignación en nanosegundos
+        long[][] latencias = new long[conexiones][];
+        AtomicInteger errores = new AtomicInteger();
+        CountDownLatch listos = new CountDownLatch(conexiones);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>();
+        for (int c = 0; c < conexiones; c++) {
+            final int indice = c;
+            Thread hilo = new Thread(() -> {
+                long[] propias = new long[repeticiones];
+                int completadas = 0;
+                boolean conectada = false;
+                try (Socket socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
+                     PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+                    socket.setTcpNoDelay(true);
+                    conectada = true;
+                    listos.countDown();
+                    salida.await();
+                    for (int i = 0; i < repeticiones; i++) {
+                        long inicio = System.nanoTime();
+                        out.println(jsonConsigna);
+                        String linea = in.readLine();
+                        if (linea == null) {
+                            throw new IOException("El servidor cerró la conexión");
+                        }
+                        propias[completadas++] = System.nanoTime() - inicio;
+                        if (JsonParser.parseString(linea).getAsJsonObject().get("codigo").getAsInt() != 200) {
+                            errores.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    if (!conectada) {
+                        listos.countDown();
+                    }
+                    System.err.println("Error en la conexión " + indice + ": " + e.getMessage());
+                }
+                latencias[indice] = Arrays.copyOf(propias, completadas);
+            }, "carga-" + c);
+            hilos.add(hilo);
+            hilo.start();
+        }
+        
+        try {
+            listos.await();
+            long inicio = System.nanoTime();
+            salida.countDown();
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+            long nanos = System.nanoTime() - inicio;
+            
+            long[] todas = Arrays.stream(latencias).flatMapToLong(Arrays::stream).sorted().toArray();
+            if (todas.length == 0) {
+                System.out.println("\nNo se completó ninguna consignación");
+                return;
+            }
+            double segundos = nanos / 1_000_000_000.0;
+            System.out.println("\n=== RESULTADOS (" + conexiones + " conexiones, cuenta destino " + cuentaDestino + ") ===");
+            System.out.printf("Consignaciones: %d (%d con error) en %.2f s - %.0f consignaciones/s%n",
+                    todas.length, errores.get(), segundos, todas.length / segundos);
+            System.out.printf("Latencia media: %.2f ms - p50: %.2f ms - p99: %.2f ms - máxima: %.2f ms%n",
+                    Arrays.stream(todas).average().orElse(0) / 1_000_000.0,
+                    percentil(todas, 0.50) / 1_000_000.0,
+                    percentil(todas, 0.99) / 1_000_000.0,
+                    todas[todas.length - 1] / 1_000_000.0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static int leerEntero(Scanner scanner, int porDefecto) {
+        try {
+            return Math.max(1, Integer.parseInt(scanner.nextLine().trim()));
+        } catch (NumberFormatException e) {
+            return porDefecto;
+        }
+    }
+    
+    private static long percentil(long[] ordenadas, double fraccion) {
+        int indice = (int) Math.ceil(fraccion * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(indice, ordenadas.length - 1))];
+    }
+    
+    private static double consultarJson(PrintWriter out, BufferedReader in, SolicitudDTO consulta) throws IOException {
+        out.println(gson.toJson(consulta));
+        JsonObject respuesta = JsonParser.parseString(in.readLine()).getAsJsonObject();
+        if (respuesta.get("codigo").getAsInt() != 200) {
+            throw new IOException("Respuesta inesperada: " + respuesta.get("mensaje").getAsString());
+        }
+        return respuesta.get("datos").getAsJsonObject().get("saldo").getAsDouble();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static double consultarBinario(DataOutputStream out, DataInputStream in, SolicitudDTO consulta) throws IOException {
+        out.write(ProtocoloBinario.codificarSolicitud(consulta, gson));
+        out.flush();
+        byte[] trama = ProtocoloBinario.leerTrama(in);
+        if (trama == null) {
+            throw new IOException("El servidor cerró la conexión");
+        }
+        RespuestaDTO respuesta = ProtocoloBinario.decodificarRespuesta(trama, gson);
+        if (respuesta.getCodigo() != 200) {
+            throw new IOException("Respuesta inesperada: " + respuesta.getMensaje());
+        }
+        return (Double) ((Map<String, Object>) respuesta.getDatos()).get("saldo");
+    }
+    
+    private static void imprimirResultado(String protocolo, long nanos, int repeticiones, double saldo) {
+        double segundos = nanos / 1_000_000_000.0;
+        System.out.printf("%-8s total: %.2f s - latencia media: %.1f µs - %.0f solicitudes/s (saldo: $%.2f)%n",
+                protocolo, segundos, nanos / 1000.0 / repeticiones, repeticiones / segundos, saldo);
+    }
+}
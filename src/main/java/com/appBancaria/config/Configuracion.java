@@ -0,0 +1,69 @@
+package com.appBancaria.config;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Acceso centralizado a la configuración del servidor.
+ * Lee las variables del archivo .env (o del entorno del sistema) y permite
+ * indicar valores por defecto para los parámetros opcionales.
+ */
+public final class Configuracion {
+    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+
+    private Configuracion() {
+    }
+
+    /**
+     * Obtiene el valor de una variable de configuración
+     * @param clave Nombre de la variable
+     * @return Valor de la variable o null si no está definida
+     */
+    public static String get(String clave) {
+        return dotenv.get(clave);
+    }
+
+    /**
+     * Obtiene el valor de una variable de configuración con un valor por defecto
+     * @param clave Nombre de la variable
+     * @param porDefecto Valor a devolver si la variable no está definida o está vacía
+     * @return Valor de la variable o el valor por defecto
+     */
+    public static String get(String clave, String porDefecto) {
+        String valor = dotenv.get(clave);
+        return (valor == null || valor.trim().isEmpty()) ? porDefecto : valor.trim();
+    }
+
+    public static int getInt(String clave, int porDefecto) {
+        String valor = get(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + clave + ": " + valor + ". Usando " + porDefecto);
+            return porDefecto;
+        }
+    }
+
+    public static long getLong(String clave, long porDefecto) {
+        String valor = get(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + clave + ": " + valor + ". Usando " + porDefecto);
+            return porDefecto;
+        }
+    }
+
+    public static boolean getBoolean(String clave, boolean porDefecto) {
+        String valor = get(clave, null);
+        if (valor == null) {
+            return porDefecto;
+        }
+        return valor.equalsIgnoreCase("true") || valor.equals("1") || valor.equalsIgnoreCase("si");
+    }
+}
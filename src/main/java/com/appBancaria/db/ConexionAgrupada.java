@@ -0,0 +1,319 @@
+package com.appBancaria.db;
+
+import com.appBancaria.log.Log;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Representa una conexión física administrada por el pool.
+ * Cada préstamo entrega un proxy de {@link Connection} cuyo close() devuelve
+ * la conexión al pool en lugar de cerrarla.
+ * Además mantiene una caché LRU de prepared statements por texto SQL, de modo
+ * que cada consulta se prepara una sola vez por conexión física.
+ */
+class ConexionAgrupada {
+    private final Connection fisica;
+    private final PoolConexiones pool;
+    private final long creadaEn;
+    private volatile long ultimoUso;
+
+    // Información del préstamo actual (para la detección de fugas)
+    private volatile Prestamo prestamoActual;
+
+    // Caché de prepared statements por SQL, ordenada por último acceso
+    private final int tamanoCache;
+    private final Map<String, SentenciaCacheada> sentencias;
+    private final ReentrantLock bloqueoSentencias = new ReentrantLock();
+
+    ConexionAgrupada(Connection fisica, PoolConexiones pool, int tamanoCache) {
+        this.fisica = fisica;
+        this.pool = pool;
+        this.creadaEn = System.currentTimeMillis();
+        this.ultimoUso = creadaEn;
+        this.tamanoCache = tamanoCache;
+        this.sentencias = new LinkedHashMap<String, SentenciaCacheada>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SentenciaCacheada> eldest) {
+                if (size() > ConexionAgrupada.this.tamanoCache) {
+                    eldest.getValue().expulsar();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Connection getFisica() {
+        return fisica;
+    }
+
+    long getCreadaEn() {
+        return creadaEn;
+    }
+
+    long getUltimoUso() {
+        return ultimoUso;
+    }
+
+    Prestamo getPrestamoActual() {
+        return prestamoActual;
+    }
+
+    /**
+     * Marca la conexión como prestada y crea el proxy que se entrega al llamador
+     * @param registrarTraza Si se debe capturar la traza del hilo que la solicita
+     * @return Proxy de la conexión
+     */
+    Connection prestar(boolean registrarTraza) {
+        Prestamo prestamo = new Prestamo(registrarTraza);
+        this.prestamoActual = prestamo;
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                prestamo);
+    }
+
+    /**
+     * Deja la conexión en un estado limpio antes de volver al pool
+     * @throws SQLException si la conexión no se puede restaurar
+     */
+    void restablecer() throws SQLException {
+        if (!fisica.getAutoCommit()) {
+            fisica.rollback();
+            fisica.setAutoCommit(true);
+        }
+        fisica.clearWarnings();
+        // Las sentencias que el préstamo no cerró quedan libres para el siguiente
+        bloqueoSentencias.lock();
+        try {
+            for (SentenciaCacheada sentencia : sentencias.values()) {
+                sentencia.liberar();
+            }
+        } finally {
+            bloqueoSentencias.unlock();
+        }
+    }
+
+    /**
+     * Obtiene un prepared statement de la caché o lo prepara si no existe.
+     * Si la sentencia cacheada está en uso se prepara una temporal que se
+     * cierra normalmente.
+     * @param sql Texto SQL de la sentencia
+     * @return Proxy del prepared statement
+     * @throws SQLException si no se puede preparar la sentencia
+     */
+    private PreparedStatement prepararCacheada(String sql) throws SQLException {
+        if (tamanoCache <= 0) {
+            return fisica.prepareStatement(sql);
+        }
+        bloqueoSentencias.lock();
+        try {
+            SentenciaCacheada sentencia = sentencias.get(sql);
+            if (sentencia != null && sentencia.expulsada) {
+                sentencias.remove(sql);
+                sentencia = null;
+            }
+            if (sentencia != null) {
+                if (sentencia.enUso) {
+                    pool.registrarSentencia(false);
+                    return fisica.prepareStatement(sql);
+                }
+                pool.registrarSentencia(true);
+                sentencia.enUso = true;
+                return sentencia.proxy;
+            }
+            pool.registrarSentencia(false);
+            sentencia = new SentenciaCacheada(fisica.prepareStatement(sql));
+            sentencia.enUso = true;
+            sentencias.put(sql, sentencia);
+            return sentencia.proxy;
+        } finally {
+            bloqueoSentencias.unlock();
+        }
+    }
+
+    void cerrarFisica() {
+        bloqueoSentencias.lock();
+        try {
+            Iterator<SentenciaCacheada> it = sentencias.values().iterator();
+            while (it.hasNext()) {
+                it.next().expulsar();
+                it.remove();
+            }
+        } finally {
+            bloqueoSentencias.unlock();
+        }
+        try {
+            fisica.close();
+        } catch (SQLException e) {
+            Log.error("Error al cerrar conexión física: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Un préstamo concreto de la conexión. Al cerrarse devuelve la conexión al
+     * pool una sola vez; cualquier uso posterior falla como una conexión cerrada.
+     */
+    class Prestamo implements InvocationHandler {
+        private final long inicio = System.currentTimeMillis();
+        private final String hilo = Thread.currentThread().getName();
+        private final Throwable traza;
+        private volatile boolean devuelta = false;
+        private volatile boolean fugaReportada = false;
+
+        Prestamo(boolean registrarTraza) {
+            this.traza = registrarTraza ? new Throwable("Conexión obtenida por el hilo " + hilo) : null;
+        }
+
+        long getInicio() {
+            return inicio;
+        }
+
+        String getHilo() {
+            return hilo;
+        }
+
+        Throwable getTraza() {
+            return traza;
+        }
+
+        boolean isFugaReportada() {
+            return fugaReportada;
+        }
+
+        void marcarFugaReportada() {
+            fugaReportada = true;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            switch (nombre) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        ultimoUso = System.currentTimeMillis();
+                        prestamoActual = null;
+                        pool.devolver(ConexionAgrupada.this, fugaReportada);
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta || fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionAgrupada[" + fisica + "]";
+                default:
+                    break;
+            }
+
+            if (devuelta) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+
+            if (nombre.equals("prepareStatement") && args.length == 1) {
+                return prepararCacheada((String) args[0]);
+            }
+
+            try {
+                return method.invoke(fisica, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Prepared statement guardado en la caché. Su close() solo limpia los
+     * parámetros y lo deja disponible para el siguiente uso del mismo SQL.
+     */
+    private class SentenciaCacheada implements InvocationHandler {
+        private final PreparedStatement real;
+        private final PreparedStatement proxy;
+        private boolean enUso = false;
+        private boolean expulsada = false;
+
+        SentenciaCacheada(PreparedStatement real) {
+            this.real = real;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    this);
+        }
+
+        void liberar() {
+            if (enUso) {
+                enUso = false;
+                try {
+                    real.clearParameters();
+                } catch (SQLException e) {
+                    expulsar();
+                }
+            }
+        }
+
+        /**
+         * Cierra la sentencia real si no está en uso; si lo está, se cerrará
+         * cuando el llamador la cierre
+         */
+        void expulsar() {
+            expulsada = true;
+            if (!enUso) {
+                try {
+                    real.close();
+                } catch (SQLException e) {
+                    Log.error("Error al cerrar prepared statement expulsado: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    bloqueoSentencias.lock();
+                    try {
+                        if (expulsada) {
+                            enUso = false;
+                            real.close();
+                        } else {
+                            liberar();
+                        }
+                    } finally {
+                        bloqueoSentencias.unlock();
+                    }
+                    return null;
+                case "isClosed":
+                    return !enUso || real.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (!enUso) {
+                throw new SQLException("El prepared statement ya fue cerrado");
+            }
+
+            try {
+                return method.invoke(real, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
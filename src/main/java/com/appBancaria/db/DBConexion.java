@@ -1,22 +1,32 @@
 package com.appBancaria.db;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import com.appBancaria.config.Configuracion;
+import com.appBancaria.log.Log;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DBConexion {
     private static DBConexion instance;
-    private Connection connection;
-    private final Dotenv dotenv;
+    private volatile PoolConexiones pool;
+    // Solo un hilo crea el pool
+    private final ReentrantLock bloqueoPool = new ReentrantLock();
+    
+    // Réplicas de solo lectura (DB_REPLICA_URLS); vacío si no hay
+    private final ReplicasLectura replicas = new ReplicasLectura(
+            ReplicasLectura.leerUrls(Configuracion.get("DB_REPLICA_URLS", "")),
+            Configuracion.get("DB_REPLICA_SELECTION", "round-robin"),
+            Configuracion.getLong("DB_REPLICA_RETRY_MS", 30000),
+            this::crearPoolReplica);
     
     // Variables para controlar la reconexión
     private static final int MAX_RECONNECT_ATTEMPTS = 3;
     private static final long RECONNECT_DELAY_MS = 2000; // 2 segundos
     
     private DBConexion() {
-        dotenv = Dotenv.load();
     }
     
     public static synchronized DBConexion getInstance() {
@@ -27,76 +37,144 @@ public class DBConexion {
     }
     
     /**
-     * Obtiene una conexión a la base de datos.
-     * Si la conexión está cerrada o es nula, intenta obtener una nueva.
+     * Obtiene una conexión del pool de conexiones.
+     * Al cerrar la conexión (por ejemplo con try-with-resources) esta vuelve al pool.
      * @return Una conexión activa a la base de datos
-     * @throws SQLException si no se puede establecer la conexión
+     * @throws SQLException si no se puede obtener una conexión a tiempo
      */
-    public synchronized Connection getConnection() throws SQLException {
-        // Verificar si la conexión es válida
-        if (connection == null || connection.isClosed()) {
-            return createNewConnection();
-        }
-        
-        // Verificar si la conexión sigue activa
-        try {
-            if (!connection.isValid(3)) { // timeout de 3 segundos
-                System.out.println("La conexión a la BD no es válida. Creando una nueva conexión...");
-                closeConnection(); // Cerrar la conexión inválida
-                return createNewConnection();
-            }
-        } catch (SQLException e) {
-            System.err.println("Error al verificar conexión: " + e.getMessage());
-            // En caso de error al verificar, intentar crear una nueva
-            return createNewConnection();
+    public Connection getConnection() throws SQLException {
+        return getPool().obtener();
+    }
+    
+    /**
+     * Obtiene una conexión para consultas de solo lectura: de una réplica si hay
+     * alguna configurada y disponible, y si no de la primaria.
+     * Los datos de una réplica pueden ir atrasados respecto a la primaria.
+     * @return Una conexión activa a una réplica o a la primaria
+     * @throws SQLException si no se puede obtener una conexión a tiempo
+     */
+    public Connection getConnectionLectura() throws SQLException {
+        if (replicas.estaVacia()) {
+            return getConnection();
         }
-        
-        return connection;
+        Connection conexion = replicas.obtener();
+        return conexion != null ? conexion : getConnection();
     }
     
     /**
-     * Limpia los prepared statements de la conexión actual
-     * Útil para evitar errores como "prepared statement S_1 already exists"
+     * @return true si hay réplicas de lectura configuradas
      */
-    public synchronized void cleanPreparedStatements() {
-        if (connection != null) {
-            try {
-                try (Statement stmt = connection.createStatement()) {
-                    // Este comando de PostgreSQL limpia todos los prepared statements
-                    stmt.execute("DEALLOCATE ALL");
+    public boolean tieneReplicas() {
+        return !replicas.estaVacia();
+    }
+    
+    /**
+     * Obtiene el pool de conexiones, creándolo la primera vez con la configuración del .env
+     * @return Pool de conexiones
+     * @throws SQLException si no se pueden abrir las conexiones mínimas
+     */
+    private PoolConexiones getPool() throws SQLException {
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            return actual;
+        }
+        bloqueoPool.lock();
+        try {
+            if (pool == null) {
+                PoolConexiones nuevo = new PoolConexiones(
+                        () -> createNewConnection(Configuracion.get("DB_URL"),
+                                Configuracion.get("DB_USER"), Configuracion.get("DB_PASSWORD"), MAX_RECONNECT_ATTEMPTS),
+                        Configuracion.getInt("DB_POOL_MIN", 2),
+                        Configuracion.getInt("DB_POOL_MAX", 10),
+                        Configuracion.getLong("DB_POOL_TIMEOUT_MS", 5000),
+                        Configuracion.getLong("DB_POOL_IDLE_TIMEOUT_MS", 300000),
+                        Configuracion.getLong("DB_POOL_LEAK_THRESHOLD_MS", 30000),
+                        Configuracion.getLong("DB_POOL_VALIDATION_MS", 30000),
+                        Configuracion.getInt("DB_STATEMENT_CACHE_SIZE", 32));
+                try {
+                    nuevo.inicializar();
+                } catch (SQLException e) {
+                    nuevo.cerrar();
+                    throw e;
                 }
-                System.out.println("Prepared statements limpiados correctamente");
-            } catch (SQLException e) {
-                System.err.println("Error al limpiar prepared statements: " + e.getMessage());
+                pool = nuevo;
+                Log.info("Pool de conexiones inicializado: " + nuevo.getEstadisticas());
             }
+            return pool;
+        } finally {
+            bloqueoPool.unlock();
         }
     }
     
+    /**
+     * Crea el pool de una réplica. Sus conexiones se abren sin reintentos y el
+     * préstamo espera poco: si la réplica no responde la lectura va a la primaria.
+     * Las conexiones son de solo lectura, así que una escritura enviada por error
+     * a una réplica falla en lugar de intentarse allí.
+     */
+    private PoolConexiones crearPoolReplica(String url) {
+        String user = Configuracion.get("DB_REPLICA_USER", Configuracion.get("DB_USER"));
+        String password = Configuracion.get("DB_REPLICA_PASSWORD", Configuracion.get("DB_PASSWORD"));
+        return new PoolConexiones(
+                () -> {
+                    Connection conexion = createNewConnection(url, user, password, 1);
+                    try {
+                        conexion.setReadOnly(true);
+                    } catch (SQLException e) {
+                        conexion.close();
+                        throw e;
+                    }
+                    return conexion;
+                },
+                Configuracion.getInt("DB_REPLICA_POOL_MIN", 1),
+                Configuracion.getInt("DB_REPLICA_POOL_MAX", Configuracion.getInt("DB_POOL_MAX", 10)),
+                Configuracion.getLong("DB_REPLICA_TIMEOUT_MS", 1000),
+                Configuracion.getLong("DB_POOL_IDLE_TIMEOUT_MS", 300000),
+                Configuracion.getLong("DB_POOL_LEAK_THRESHOLD_MS", 30000),
+                Configuracion.getLong("DB_POOL_VALIDATION_MS", 30000),
+                Configuracion.getInt("DB_STATEMENT_CACHE_SIZE", 32));
+    }
+    
+    /**
+     * Obtiene las estadísticas del pool de conexiones
+     * @return Mapa con las estadísticas, vacío si el pool no se ha creado
+     */
+    public Map<String, Object> getEstadisticasPool() {
+        PoolConexiones actual = pool;
+        return actual != null ? actual.getEstadisticas() : new HashMap<>();
+    }
+    
+    /**
+     * Obtiene las estadísticas de las réplicas de lectura
+     * @return Mapa con las lecturas enviadas a réplicas y el pool de cada una, vacío si no hay réplicas
+     */
+    public Map<String, Object> getEstadisticasReplicas() {
+        return replicas.estaVacia() ? new HashMap<>() : replicas.getEstadisticas();
+    }
+    
     /**
      * Crea una nueva conexión a la base de datos con reintentos si falla
+     * @param url URL JDBC de la primaria o de una réplica
+     * @param maxIntentos Intentos antes de fallar
      * @return Conexión a la base de datos
      * @throws SQLException si no se puede establecer la conexión después de los reintentos
      */
-    private Connection createNewConnection() throws SQLException {
+    private Connection createNewConnection(String url, String user, String password, int maxIntentos) throws SQLException {
         SQLException lastException = null;
         
-        for (int attempt = 0; attempt < MAX_RECONNECT_ATTEMPTS; attempt++) {
+        for (int attempt = 0; attempt < maxIntentos; attempt++) {
             try {
-                String url = dotenv.get("DB_URL");
-                String user = dotenv.get("DB_USER");
-                String password = dotenv.get("DB_PASSWORD");
-                
-                System.out.println("Intentando conectar a la BD... (intento " + (attempt + 1) + "/" + MAX_RECONNECT_ATTEMPTS + ")");
-                connection = DriverManager.getConnection(url, user, password);
-                System.out.println("Conexión establecida exitosamente!");
+                Log.info("Intentando conectar a la BD... (intento " + (attempt + 1) + "/" + maxIntentos + ")");
+                Connection connection = DriverManager.getConnection(url, user, password);
+                Log.info("Conexión establecida exitosamente!");
                 return connection;
             } catch (SQLException e) {
                 lastException = e;
-                System.err.println("Error al conectar a la BD: " + e.getMessage());
+                Log.error("Error al conectar a la BD: " + e.getMessage());
                 
-                if (attempt < MAX_RECONNECT_ATTEMPTS - 1) {
+                if (attempt < maxIntentos - 1) {
                     try {
-                        System.out.println("Reintentando en " + RECONNECT_DELAY_MS/1000 + " segundos...");
+                        Log.info("Reintentando en " + RECONNECT_DELAY_MS/1000 + " segundos...");
                         Thread.sleep(RECONNECT_DELAY_MS);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
@@ -108,22 +186,27 @@ public class DBConexion {
         
         // Si llegamos aquí, todos los intentos fallaron
         throw new SQLException("No se pudo conectar a la base de datos después de " + 
-                              MAX_RECONNECT_ATTEMPTS + " intentos", lastException);
+                              maxIntentos + " intentos", lastException);
     }
     
     /**
-     * Cierra la conexión actual a la base de datos
+     * Cierra el pool de conexiones a la base de datos y los de las réplicas
      */
-    public synchronized void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Conexión a la BD cerrada correctamente");
-            } catch (SQLException e) {
-                System.err.println("Error al cerrar la conexión: " + e.getMessage());
-            } finally {
-                connection = null; // Asegurar que se marque como nula incluso si hay error
+    public void closeConnection() {
+        if (!replicas.estaVacia()) {
+            Log.info("Estadísticas finales de las réplicas: " + replicas.getEstadisticas());
+            replicas.cerrar();
+        }
+        bloqueoPool.lock();
+        try {
+            if (pool != null) {
+                Log.info("Estadísticas finales del pool: " + pool.getEstadisticas());
+                pool.cerrar();
+                pool = null;
+                Log.info("Conexiones a la BD cerradas correctamente");
             }
+        } finally {
+            bloqueoPool.unlock();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,327 @@
+package com.appBancaria.db;
+
+import com.appBancaria.log.Log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * Mantiene entre un mínimo y un máximo de conexiones físicas, limita la espera
+ * para obtener una conexión, detecta préstamos que no se devuelven (fugas)
+ * y expone estadísticas de uso.
+ */
+public class PoolConexiones {
+
+    /**
+     * Crea conexiones físicas nuevas para el pool
+     */
+    public interface FabricaConexiones {
+        Connection crear() throws SQLException;
+    }
+
+    // Frecuencia de la tarea de mantenimiento (fugas, ociosas y mínimo)
+    private static final long INTERVALO_MANTENIMIENTO_MS = 5000;
+
+    private final FabricaConexiones fabrica;
+    private final int minimo;
+    private final int maximo;
+    private final long timeoutPrestamoMs;
+    private final long timeoutOciosaMs;
+    private final long umbralFugaMs;
+    private final long validacionMs;
+    private final int tamanoCacheSentencias;
+
+    // Un permiso por cada conexión que puede estar prestada a la vez
+    private final Semaphore permisos;
+    // Conexiones libres; se reutiliza primero la más reciente (LIFO)
+    private final LinkedBlockingDeque<ConexionAgrupada> disponibles = new LinkedBlockingDeque<>();
+    private final Set<ConexionAgrupada> activas = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService mantenimiento;
+    private volatile boolean cerrado = false;
+
+    // Estadísticas
+    private final AtomicInteger totales = new AtomicInteger();
+    private final AtomicInteger esperando = new AtomicInteger();
+    private final AtomicLong prestamos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong fugasDetectadas = new AtomicLong();
+    private final AtomicLong conexionesCreadas = new AtomicLong();
+    private final AtomicLong conexionesDescartadas = new AtomicLong();
+    private final AtomicLong esperaTotalNanos = new AtomicLong();
+    private final AtomicLong sentenciasReutilizadas = new AtomicLong();
+    private final AtomicLong sentenciasPreparadas = new AtomicLong();
+
+    /**
+     * @param fabrica Fábrica de conexiones físicas
+     * @param minimo Conexiones que se mantienen abiertas aunque estén ociosas
+     * @param maximo Máximo de conexiones físicas abiertas a la vez
+     * @param timeoutPrestamoMs Tiempo máximo de espera para obtener una conexión
+     * @param timeoutOciosaMs Tiempo tras el cual se cierran conexiones ociosas por encima del mínimo
+     * @param umbralFugaMs Tiempo de préstamo a partir del cual se reporta una posible fuga (0 desactiva)
+     * @param validacionMs Tiempo ociosa a partir del cual se valida la conexión antes de prestarla
+     * @param tamanoCacheSentencias Prepared statements cacheados por conexión (0 desactiva la caché)
+     */
+    public PoolConexiones(FabricaConexiones fabrica, int minimo, int maximo, long timeoutPrestamoMs,
+                          long timeoutOciosaMs, long umbralFugaMs, long validacionMs, int tamanoCacheSentencias) {
+        if (maximo < 1) {
+            throw new IllegalArgumentException("El tamaño máximo del pool debe ser al menos 1");
+        }
+        this.fabrica = fabrica;
+        this.maximo = maximo;
+        this.minimo = Math.max(0, Math.min(minimo, maximo));
+        this.timeoutPrestamoMs = timeoutPrestamoMs;
+        this.timeoutOciosaMs = timeoutOciosaMs;
+        this.umbralFugaMs = umbralFugaMs;
+        this.validacionMs = validacionMs;
+        this.tamanoCacheSentencias = tamanoCacheSentencias;
+        this.permisos = new Semaphore(maximo, true);
+
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-conexiones-mantenimiento");
+            t.setDaemon(true);
+            return t;
+        });
+        mantenimiento.scheduleWithFixedDelay(this::mantener,
+                INTERVALO_MANTENIMIENTO_MS, INTERVALO_MANTENIMIENTO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre las conexiones mínimas configuradas
+     * @throws SQLException si no se puede abrir ninguna conexión
+     */
+    public void inicializar() throws SQLException {
+        while (totales.get() < minimo && permisos.tryAcquire()) {
+            try {
+                disponibles.offerFirst(crearConexion());
+            } finally {
+                permisos.release();
+            }
+        }
+    }
+
+    /**
+     * Obtiene una conexión del pool, esperando como máximo el timeout de préstamo.
+     * La conexión devuelta debe cerrarse para regresar al pool.
+     * @return Conexión prestada
+     * @throws SQLException si no hay conexiones disponibles a tiempo o no se puede crear una
+     */
+    public Connection obtener() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+
+        long inicioEspera = System.nanoTime();
+        boolean permiso;
+        esperando.incrementAndGet();
+        try {
+            permiso = permisos.tryAcquire(timeoutPrestamoMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupción esperando una conexión del pool", e);
+        } finally {
+            esperando.decrementAndGet();
+        }
+
+        if (!permiso) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("No hay conexiones disponibles en el pool después de " +
+                    timeoutPrestamoMs + " ms (activas: " + activas.size() + ", máximo: " + maximo + ")");
+        }
+        esperaTotalNanos.addAndGet(System.nanoTime() - inicioEspera);
+
+        try {
+            ConexionAgrupada conexion = tomarDisponible();
+            if (conexion == null) {
+                conexion = crearConexion();
+            }
+            activas.add(conexion);
+            prestamos.incrementAndGet();
+            return conexion.prestar(umbralFugaMs > 0);
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Recibe una conexión devuelta por un préstamo
+     */
+    void devolver(ConexionAgrupada conexion, boolean fugaReportada) {
+        activas.remove(conexion);
+        try {
+            if (fugaReportada) {
+                Log.info("Conexión reportada como posible fuga fue devuelta al pool");
+            }
+            if (cerrado) {
+                descartar(conexion);
+                return;
+            }
+            try {
+                conexion.restablecer();
+                disponibles.offerFirst(conexion);
+            } catch (SQLException e) {
+                Log.error("Conexión descartada al devolverla al pool: " + e.getMessage());
+                descartar(conexion);
+            }
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private ConexionAgrupada tomarDisponible() {
+        ConexionAgrupada conexion;
+        while ((conexion = disponibles.pollFirst()) != null) {
+            if (esValida(conexion)) {
+                return conexion;
+            }
+            Log.info("La conexión del pool no es válida. Descartándola...");
+            descartar(conexion);
+        }
+        return null;
+    }
+
+    private boolean esValida(ConexionAgrupada conexion) {
+        try {
+            if (conexion.getFisica().isClosed()) {
+                return false;
+            }
+            // Solo se valida contra la BD si la conexión estuvo ociosa un buen rato
+            if (System.currentTimeMillis() - conexion.getUltimoUso() < validacionMs) {
+                return true;
+            }
+            return conexion.getFisica().isValid(3);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private ConexionAgrupada crearConexion() throws SQLException {
+        ConexionAgrupada conexion = new ConexionAgrupada(fabrica.crear(), this, tamanoCacheSentencias);
+        totales.incrementAndGet();
+        conexionesCreadas.incrementAndGet();
+        return conexion;
+    }
+
+    void registrarSentencia(boolean reutilizada) {
+        if (reutilizada) {
+            sentenciasReutilizadas.incrementAndGet();
+        } else {
+            sentenciasPreparadas.incrementAndGet();
+        }
+    }
+
+    private void descartar(ConexionAgrupada conexion) {
+        totales.decrementAndGet();
+        conexionesDescartadas.incrementAndGet();
+        conexion.cerrarFisica();
+    }
+
+    /**
+     * Tarea periódica: reporta fugas, cierra conexiones ociosas por encima del
+     * mínimo y repone conexiones hasta el mínimo configurado
+     */
+    private void mantener() {
+        try {
+            long ahora = System.currentTimeMillis();
+
+            if (umbralFugaMs > 0) {
+                for (ConexionAgrupada conexion : activas) {
+                    ConexionAgrupada.Prestamo prestamo = conexion.getPrestamoActual();
+                    if (prestamo != null && !prestamo.isFugaReportada() && ahora - prestamo.getInicio() > umbralFugaMs) {
+                        prestamo.marcarFugaReportada();
+                        fugasDetectadas.incrementAndGet();
+                        String mensaje = "Posible fuga de conexión: prestada al hilo " + prestamo.getHilo() +
+                                " hace " + (ahora - prestamo.getInicio()) + " ms sin devolverse";
+                        if (prestamo.getTraza() != null) {
+                            // La traza va en el mismo mensaje para que pase por el log asíncrono
+                            StringWriter traza = new StringWriter();
+                            prestamo.getTraza().printStackTrace(new PrintWriter(traza));
+                            mensaje += System.lineSeparator() + traza;
+                        }
+                        Log.advertencia(mensaje);
+                    }
+                }
+            }
+
+            // Las conexiones menos usadas recientemente están al final de la cola
+            Iterator<ConexionAgrupada> it = disponibles.descendingIterator();
+            while (it.hasNext() && totales.get() > minimo) {
+                ConexionAgrupada conexion = it.next();
+                if (ahora - conexion.getUltimoUso() > timeoutOciosaMs && disponibles.removeLastOccurrence(conexion)) {
+                    descartar(conexion);
+                }
+            }
+
+            while (!cerrado && totales.get() < minimo && permisos.tryAcquire()) {
+                try {
+                    disponibles.offerFirst(crearConexion());
+                } finally {
+                    permisos.release();
+                }
+            }
+        } catch (Exception e) {
+            Log.error("Error en el mantenimiento del pool de conexiones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cierra el pool. Las conexiones libres se cierran de inmediato y las
+     * prestadas se cierran cuando se devuelvan.
+     */
+    public void cerrar() {
+        cerrado = true;
+        mantenimiento.shutdownNow();
+        ConexionAgrupada conexion;
+        while ((conexion = disponibles.pollFirst()) != null) {
+            descartar(conexion);
+        }
+    }
+
+    /**
+     * @return Conexiones prestadas más préstamos en espera
+     */
+    public int getCarga() {
+        return activas.size() + esperando.get();
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas del pool
+     * @return Mapa con las estadísticas
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalPrestamos = prestamos.get();
+        estadisticas.put("minimo", minimo);
+        estadisticas.put("maximo", maximo);
+        estadisticas.put("totales", totales.get());
+        estadisticas.put("activas", activas.size());
+        estadisticas.put("disponibles", disponibles.size());
+        estadisticas.put("esperando", esperando.get());
+        estadisticas.put("prestamos", totalPrestamos);
+        estadisticas.put("timeouts", timeouts.get());
+        estadisticas.put("fugasDetectadas", fugasDetectadas.get());
+        estadisticas.put("conexionesCreadas", conexionesCreadas.get());
+        estadisticas.put("conexionesDescartadas", conexionesDescartadas.get());
+        estadisticas.put("esperaPromedioMs", totalPrestamos == 0 ? 0.0 :
+                esperaTotalNanos.get() / (double) totalPrestamos / 1_000_000.0);
+        estadisticas.put("sentenciasReutilizadas", sentenciasReutilizadas.get());
+        estadisticas.put("sentenciasPreparadas", sentenciasPreparadas.get());
+        return estadisticas;
+    }
+}
@@ -0,0 +1,237 @@
+package com.appBancaria.db;
+
+import com.appBancaria.log.Log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Réplicas de solo lectura de la base de datos, cada una con su propio pool.
+ * Se elige una réplica por turnos (round-robin) o la que tenga menos
+ * conexiones prestadas y en espera (least-loaded). Una réplica a la que no se
+ * puede conectar se omite durante un tiempo; si ninguna responde, quien pidió
+ * la conexión recibe null y debe usar la primaria.
+ */
+final class ReplicasLectura {
+
+    /**
+     * Crea el pool de una réplica a partir de su URL
+     */
+    interface FabricaPools {
+        PoolConexiones crear(String url);
+    }
+
+    private final List<Replica> replicas;
+    private final boolean menosCargada;
+    private final long reintentoMs;
+    private final FabricaPools fabricaPools;
+    private final AtomicInteger turno = new AtomicInteger();
+
+    // Estadísticas
+    private final AtomicLong lecturas = new AtomicLong();
+    private final AtomicLong lecturasEnPrimaria = new AtomicLong();
+
+    /**
+     * @param urls URLs JDBC de las réplicas
+     * @param seleccion "least-loaded" para elegir la réplica menos cargada; cualquier otro valor usa round-robin
+     * @param reintentoMs Tiempo que se omite una réplica tras un fallo de conexión
+     * @param fabricaPools Crea el pool de cada réplica la primera vez que se usa
+     */
+    ReplicasLectura(List<String> urls, String seleccion, long reintentoMs, FabricaPools fabricaPools) {
+        List<Replica> lista = new ArrayList<>();
+        for (String url : urls) {
+            lista.add(new Replica(url));
+        }
+        this.replicas = Collections.unmodifiableList(lista);
+        this.menosCargada = "least-loaded".equalsIgnoreCase(seleccion);
+        this.reintentoMs = Math.max(0, reintentoMs);
+        this.fabricaPools = fabricaPools;
+    }
+
+    /**
+     * Lee la lista de URLs de réplicas de la configuración (separadas por comas)
+     */
+    static List<String> leerUrls(String valor) {
+        List<String> urls = new ArrayList<>();
+        if (valor != null) {
+            for (String url : valor.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    urls.add(url.trim());
+                }
+            }
+        }
+        return urls;
+    }
+
+    boolean estaVacia() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Obtiene una conexión de alguna réplica disponible
+     * @return Conexión prestada, o null si ninguna réplica pudo dar una (se debe usar la primaria)
+     */
+    Connection obtener() {
+        lecturas.incrementAndGet();
+        int inicio = menosCargada ? indiceMenosCargada() : Math.floorMod(turno.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((inicio + i) % replicas.size());
+            Connection conexion = replica.obtener();
+            if (conexion != null) {
+                return conexion;
+            }
+        }
+        lecturasEnPrimaria.incrementAndGet();
+        return null;
+    }
+
+    void cerrar() {
+        for (Replica replica : replicas) {
+            replica.cerrar();
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de las réplicas
+     * @return Mapa con las lecturas, las enviadas a la primaria y el pool de cada réplica
+     */
+    Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("seleccion", menosCargada ? "least-loaded" : "round-robin");
+        estadisticas.put("lecturas", lecturas.get());
+        estadisticas.put("lecturasEnPrimaria", lecturasEnPrimaria.get());
+        for (int i = 0; i < replicas.size(); i++) {
+            estadisticas.put("replica" + (i + 1), replicas.get(i).getEstadisticas());
+        }
+        return estadisticas;
+    }
+
+    private int indiceMenosCargada() {
+        int mejor = 0;
+        int menorCarga = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            if (!replica.disponible()) {
+                continue;
+            }
+            int carga = replica.carga();
+            if (carga < menorCarga) {
+                menorCarga = carga;
+                mejor = i;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Una réplica y su pool, que se crea al usarla por primera vez
+     */
+    private final class Replica {
+        private final String url;
+        private volatile PoolConexiones pool;
+        // Solo un hilo crea el pool de la réplica
+        private final ReentrantLock bloqueoPool = new ReentrantLock();
+        // Instante (ms) hasta el que se omite tras un fallo
+        private volatile long omitirHasta;
+        private final AtomicLong prestamos = new AtomicLong();
+        private final AtomicLong fallos = new AtomicLong();
+
+        Replica(String url) {
+            this.url = url;
+        }
+
+        boolean disponible() {
+            return System.currentTimeMillis() >= omitirHasta;
+        }
+
+        int carga() {
+            PoolConexiones actual = pool;
+            return actual != null ? actual.getCarga() : 0;
+        }
+
+        Connection obtener() {
+            if (!disponible()) {
+                return null;
+            }
+            try {
+                Connection conexion = getPool().obtener();
+                prestamos.incrementAndGet();
+                return conexion;
+            } catch (SQLTimeoutException e) {
+                // Réplica saturada pero en línea: esta lectura va a otra, sin omitirla
+                fallos.incrementAndGet();
+                return null;
+            } catch (SQLException e) {
+                fallos.incrementAndGet();
+                omitirHasta = System.currentTimeMillis() + reintentoMs;
+                Log.advertencia("Réplica de lectura " + descripcion() + " no disponible durante "
+                        + reintentoMs + " ms: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private PoolConexiones getPool() throws SQLException {
+            PoolConexiones actual = pool;
+            if (actual != null) {
+                return actual;
+            }
+            bloqueoPool.lock();
+            try {
+                if (pool == null) {
+                    PoolConexiones nuevo = fabricaPools.crear(url);
+                    try {
+                        nuevo.inicializar();
+                    } catch (SQLException e) {
+                        nuevo.cerrar();
+                        throw e;
+                    }
+                    pool = nuevo;
+                    Log.info("Pool de la réplica de lectura " + descripcion() + " inicializado");
+                }
+                return pool;
+            } finally {
+                bloqueoPool.unlock();
+            }
+        }
+
+        void cerrar() {
+            bloqueoPool.lock();
+            try {
+                if (pool != null) {
+                    pool.cerrar();
+                    pool = null;
+                }
+            } finally {
+                bloqueoPool.unlock();
+            }
+        }
+
+        Map<String, Object> getEstadisticas() {
+            Map<String, Object> estadisticas = new LinkedHashMap<>();
+            PoolConexiones actual = pool;
+            estadisticas.put("url", descripcion());
+            estadisticas.put("disponible", disponible());
+            estadisticas.put("prestamos", prestamos.get());
+            estadisticas.put("fallos", fallos.get());
+            estadisticas.put("pool", actual != null ? actual.getEstadisticas() : new LinkedHashMap<>());
+            return estadisticas;
+        }
+
+        /**
+         * URL sin parámetros, para no mostrar credenciales en logs ni estadísticas
+         */
+        private String descripcion() {
+            int parametros = url.indexOf('?');
+            return parametros >= 0 ? url.substring(0, parametros) : url;
+        }
+    }
+}
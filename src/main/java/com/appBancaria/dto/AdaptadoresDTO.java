@@ -0,0 +1,421 @@
+package com.appBancaria.dto;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * TypeAdapters escritos a mano para los DTO del protocolo.
+ * Leen y escriben con el API de streaming de Gson, sin reflexión, y deciden la
+ * clase de "datos" según el tipoOperacion: las operaciones frecuentes (login,
+ * consulta_saldo, consigna_cuenta, historial_transacciones) se decodifican
+ * directamente a su DTO y el resto sigue usando Map<String, Object>.
+ */
+public final class AdaptadoresDTO implements TypeAdapterFactory {
+
+    private AdaptadoresDTO() {
+    }
+
+    /**
+     * Crea una instancia de Gson con todos los adaptadores registrados.
+     * Gson es thread-safe y cachea sus adaptadores, así que debe crearse una vez y compartirse.
+     * @return Instancia de Gson
+     */
+    public static Gson crearGson() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new AdaptadoresDTO())
+                .registerTypeAdapter(LoginDTO.class, new AdaptadorLogin().nullSafe())
+                .registerTypeAdapter(ConsultaSaldoDTO.class, new AdaptadorConsultaSaldo().nullSafe())
+                .registerTypeAdapter(ConsignaDTO.class, new AdaptadorConsigna().nullSafe())
+                .registerTypeAdapter(HistorialDTO.class, new AdaptadorHistorial().nullSafe())
+                .registerTypeAdapter(SaldoDTO.class, new AdaptadorSaldo().nullSafe())
+                .create();
+    }
+
+    /**
+     * Clase de los datos tipados de una operación
+     * @param tipoOperacion Tipo de operación
+     * @return Clase de los datos, o null si la operación usa Map<String, Object>
+     */
+    public static Class<?> claseDatos(String tipoOperacion) {
+        if (tipoOperacion == null) {
+            return null;
+        }
+        switch (tipoOperacion.toLowerCase()) {
+            case "login":
+                return LoginDTO.class;
+            case "consulta_saldo":
+                return ConsultaSaldoDTO.class;
+            case "consigna_cuenta":
+                return ConsignaDTO.class;
+            case "historial_transacciones":
+                return HistorialDTO.class;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> tipo) {
+        if (tipo.getRawType() == SolicitudDTO.class) {
+            return (TypeAdapter<T>) new AdaptadorSolicitud(gson).nullSafe();
+        }
+        if (tipo.getRawType() == RespuestaDTO.class) {
+            return (TypeAdapter<T>) new AdaptadorRespuesta(gson).nullSafe();
+        }
+        return null;
+    }
+
+    private static class AdaptadorSolicitud extends TypeAdapter<SolicitudDTO> {
+        private final Gson gson;
+        private final TypeAdapter<Map<String, Object>> adaptadorMapa;
+        private final TypeAdapter<JsonElement> adaptadorArbol;
+
+        AdaptadorSolicitud(Gson gson) {
+            this.gson = gson;
+            this.adaptadorMapa = gson.getAdapter(new TypeToken<Map<String, Object>>() { });
+            this.adaptadorArbol = gson.getAdapter(JsonElement.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, SolicitudDTO solicitud) throws IOException {
+            out.beginObject();
+            if (solicitud.getTipoOperacion() != null) {
+                out.name("tipoOperacion").value(solicitud.getTipoOperacion());
+            }
+            if (solicitud.getCarga() != null) {
+                out.name("datos");
+                escribirDatos(out, solicitud.getCarga());
+            } else if (solicitud.getDatos() != null) {
+                out.name("datos");
+                adaptadorMapa.write(out, solicitud.getDatos());
+            }
+            if (solicitud.getIdSolicitud() != null) {
+                out.name("idSolicitud").value(solicitud.getIdSolicitud());
+            }
+            out.endObject();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void escribirDatos(JsonWriter out, Object datos) throws IOException {
+            ((TypeAdapter<Object>) gson.getAdapter(datos.getClass())).write(out, datos);
+        }
+
+        @Override
+        public SolicitudDTO read(JsonReader in) throws IOException {
+            SolicitudDTO solicitud = new SolicitudDTO();
+            // Si "datos" llega antes que "tipoOperacion" se guarda como árbol y se decodifica al final
+            JsonElement datosPendientes = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "tipoOperacion":
+                        solicitud.setTipoOperacion(leerTexto(in));
+                        break;
+                    case "idSolicitud":
+                        solicitud.setIdSolicitud(leerTexto(in));
+                        break;
+                    case "datos":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else if (solicitud.getTipoOperacion() != null) {
+                            leerDatos(in, solicitud);
+                        } else {
+                            datosPendientes = adaptadorArbol.read(in);
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            if (datosPendientes != null) {
+                Class<?> clase = claseDatos(solicitud.getTipoOperacion());
+                if (clase != null) {
+                    solicitud.setCarga(gson.getAdapter(clase).fromJsonTree(datosPendientes));
+                } else {
+                    solicitud.setDatos(adaptadorMapa.fromJsonTree(datosPendientes));
+                }
+            }
+            return solicitud;
+        }
+
+        private void leerDatos(JsonReader in, SolicitudDTO solicitud) throws IOException {
+            Class<?> clase = claseDatos(solicitud.getTipoOperacion());
+            if (clase != null) {
+                solicitud.setCarga(gson.getAdapter(clase).read(in));
+            } else {
+                solicitud.setDatos(adaptadorMapa.read(in));
+            }
+        }
+    }
+
+    private static class AdaptadorRespuesta extends TypeAdapter<RespuestaDTO> {
+        private final Gson gson;
+        private final TypeAdapter<Object> adaptadorObjeto;
+
+        AdaptadorRespuesta(Gson gson) {
+            this.gson = gson;
+            this.adaptadorObjeto = gson.getAdapter(Object.class);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, RespuestaDTO respuesta) throws IOException {
+            out.beginObject();
+            out.name("codigo").value(respuesta.getCodigo());
+            if (respuesta.getMensaje() != null) {
+                out.name("mensaje").value(respuesta.getMensaje());
+            }
+            if (respuesta.getDatos() != null) {
+                out.name("datos");
+                Object datos = respuesta.getDatos();
+                ((TypeAdapter<Object>) gson.getAdapter(datos.getClass())).write(out, datos);
+            }
+            if (respuesta.getIdSolicitud() != null) {
+                out.name("idSolicitud").value(respuesta.getIdSolicitud());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public RespuestaDTO read(JsonReader in) throws IOException {
+            RespuestaDTO respuesta = new RespuestaDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "codigo":
+                        respuesta.setCodigo(in.nextInt());
+                        break;
+                    case "mensaje":
+                        respuesta.setMensaje(leerTexto(in));
+                        break;
+                    case "datos":
+                        respuesta.setDatos(adaptadorObjeto.read(in));
+                        break;
+                    case "idSolicitud":
+                        respuesta.setIdSolicitud(leerTexto(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return respuesta;
+        }
+    }
+
+    private static class AdaptadorLogin extends TypeAdapter<LoginDTO> {
+        @Override
+        public void write(JsonWriter out, LoginDTO datos) throws IOException {
+            out.beginObject();
+            escribirTexto(out, "correo", datos.getCorreo());
+            escribirTexto(out, "contrasena", datos.getContrasena());
+            out.endObject();
+        }
+
+        @Override
+        public LoginDTO read(JsonReader in) throws IOException {
+            LoginDTO datos = new LoginDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "correo":
+                        datos.setCorreo(leerTexto(in));
+                        break;
+                    case "contrasena":
+                        datos.setContrasena(leerTexto(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return datos;
+        }
+    }
+
+    private static class AdaptadorConsultaSaldo extends TypeAdapter<ConsultaSaldoDTO> {
+        @Override
+        public void write(JsonWriter out, ConsultaSaldoDTO datos) throws IOException {
+            out.beginObject();
+            escribirTexto(out, "token", datos.getToken());
+            escribirTexto(out, "numeroCuenta", datos.getNumeroCuenta());
+            if (datos.getIdentificacion() != null) {
+                out.name("identificacion").value(datos.getIdentificacion());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ConsultaSaldoDTO read(JsonReader in) throws IOException {
+            ConsultaSaldoDTO datos = new ConsultaSaldoDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token":
+                        datos.setToken(leerTexto(in));
+                        break;
+                    case "numeroCuenta":
+                        datos.setNumeroCuenta(leerTexto(in));
+                        break;
+                    case "identificacion":
+                        datos.setIdentificacion(leerEntero(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return datos;
+        }
+    }
+
+    private static class AdaptadorConsigna extends TypeAdapter<ConsignaDTO> {
+        @Override
+        public void write(JsonWriter out, ConsignaDTO datos) throws IOException {
+            out.beginObject();
+            escribirTexto(out, "token", datos.getToken());
+            escribirTexto(out, "numeroCuentaDestino", datos.getNumeroCuentaDestino());
+            if (datos.getMonto() != null) {
+                out.name("monto").value(datos.getMonto());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ConsignaDTO read(JsonReader in) throws IOException {
+            ConsignaDTO datos = new ConsignaDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token":
+                        datos.setToken(leerTexto(in));
+                        break;
+                    case "numeroCuentaDestino":
+                        datos.setNumeroCuentaDestino(leerTexto(in));
+                        break;
+                    case "monto":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            datos.setMonto(in.nextDouble());
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return datos;
+        }
+    }
+
+    private static class AdaptadorHistorial extends TypeAdapter<HistorialDTO> {
+        @Override
+        public void write(JsonWriter out, HistorialDTO datos) throws IOException {
+            out.beginObject();
+            escribirTexto(out, "token", datos.getToken());
+            if (datos.getTamanoPagina() != null) {
+                out.name("tamanoPagina").value(datos.getTamanoPagina());
+            }
+            escribirTexto(out, "cursor", datos.getCursor());
+            out.endObject();
+        }
+
+        @Override
+        public HistorialDTO read(JsonReader in) throws IOException {
+            HistorialDTO datos = new HistorialDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token":
+                        datos.setToken(leerTexto(in));
+                        break;
+                    case "tamanoPagina":
+                        datos.setTamanoPagina(leerEntero(in));
+                        break;
+                    case "cursor":
+                        datos.setCursor(leerTexto(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return datos;
+        }
+    }
+
+    private static class AdaptadorSaldo extends TypeAdapter<SaldoDTO> {
+        @Override
+        public void write(JsonWriter out, SaldoDTO datos) throws IOException {
+            out.beginObject();
+            out.name("saldo").value(datos.getSaldo());
+            out.endObject();
+        }
+
+        @Override
+        public SaldoDTO read(JsonReader in) throws IOException {
+            SaldoDTO datos = new SaldoDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("saldo".equals(in.nextName())) {
+                    datos.setSaldo(in.nextDouble());
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return datos;
+        }
+    }
+
+    private static void escribirTexto(JsonWriter out, String nombre, String valor) throws IOException {
+        if (valor != null) {
+            out.name(nombre).value(valor);
+        }
+    }
+
+    /**
+     * Lee un texto; como Gson con String, acepta también números y booleanos
+     */
+    private static String leerTexto(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Lee un entero; acepta valores como 123.0, que es como Gson serializa los números de un Map
+     */
+    private static Integer leerEntero(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return (int) in.nextDouble();
+    }
+}
@@ -0,0 +1,10 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de solicitud que incluyen el token JWT de la sesión
+ */
+public interface ConToken {
+    String getToken();
+
+    void setToken(String token);
+}
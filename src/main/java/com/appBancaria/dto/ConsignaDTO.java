@@ -0,0 +1,39 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de la operación "consigna_cuenta"
+ */
+public class ConsignaDTO implements ConToken {
+    private String token;
+    private String numeroCuentaDestino;
+    private Double monto;
+
+    public ConsignaDTO() {
+    }
+
+    @Override
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getNumeroCuentaDestino() {
+        return numeroCuentaDestino;
+    }
+
+    public void setNumeroCuentaDestino(String numeroCuentaDestino) {
+        this.numeroCuentaDestino = numeroCuentaDestino;
+    }
+
+    public Double getMonto() {
+        return monto;
+    }
+
+    public void setMonto(Double monto) {
+        this.monto = monto;
+    }
+}
@@ -0,0 +1,40 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de la operación "consulta_saldo". Si no se indica número de cuenta ni
+ * identificación se consulta la cuenta del usuario del token.
+ */
+public class ConsultaSaldoDTO implements ConToken {
+    private String token;
+    private String numeroCuenta;
+    private Integer identificacion;
+
+    public ConsultaSaldoDTO() {
+    }
+
+    @Override
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getNumeroCuenta() {
+        return numeroCuenta;
+    }
+
+    public void setNumeroCuenta(String numeroCuenta) {
+        this.numeroCuenta = numeroCuenta;
+    }
+
+    public Integer getIdentificacion() {
+        return identificacion;
+    }
+
+    public void setIdentificacion(Integer identificacion) {
+        this.identificacion = identificacion;
+    }
+}
@@ -0,0 +1,41 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de la operación "historial_transacciones"
+ */
+public class HistorialDTO implements ConToken {
+    private String token;
+    // Transacciones por página (opcional)
+    private Integer tamanoPagina;
+    // Cursor devuelto en la página anterior (null para la primera página)
+    private String cursor;
+
+    public HistorialDTO() {
+    }
+
+    @Override
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public Integer getTamanoPagina() {
+        return tamanoPagina;
+    }
+
+    public void setTamanoPagina(Integer tamanoPagina) {
+        this.tamanoPagina = tamanoPagina;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+}
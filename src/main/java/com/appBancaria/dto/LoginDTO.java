@@ -0,0 +1,33 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de la operación "login"
+ */
+public class LoginDTO {
+    private String correo;
+    private String contrasena;
+
+    public LoginDTO() {
+    }
+
+    public LoginDTO(String correo, String contrasena) {
+        this.correo = correo;
+        this.contrasena = contrasena;
+    }
+
+    public String getCorreo() {
+        return correo;
+    }
+
+    public void setCorreo(String correo) {
+        this.correo = correo;
+    }
+
+    public String getContrasena() {
+        return contrasena;
+    }
+
+    public void setContrasena(String contrasena) {
+        this.contrasena = contrasena;
+    }
+}
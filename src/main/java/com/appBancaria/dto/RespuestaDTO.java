@@ -4,6 +4,9 @@ public class RespuestaDTO {
     private int codigo;
     private String mensaje;
     private Object datos;
+    // Identificador opcional elegido por el cliente; se devuelve igual en la respuesta
+    // y permite enviar varias solicitudes seguidas y recibir las respuestas en otro orden
+    private String idSolicitud;
 
     public RespuestaDTO() {
     }
@@ -31,4 +34,12 @@ public class RespuestaDTO {
     public void setDatos(Object datos) {
         this.datos = datos;
     }
+
+    public String getIdSolicitud() {
+        return idSolicitud;
+    }
+
+    public void setIdSolicitud(String idSolicitud) {
+        this.idSolicitud = idSolicitud;
+    }
 }
@@ -0,0 +1,23 @@
+package com.appBancaria.dto;
+
+/**
+ * Datos de la respuesta de "consulta_saldo"
+ */
+public class SaldoDTO {
+    private double saldo;
+
+    public SaldoDTO() {
+    }
+
+    public SaldoDTO(double saldo) {
+        this.saldo = saldo;
+    }
+
+    public double getSaldo() {
+        return saldo;
+    }
+
+    public void setSaldo(double saldo) {
+        this.saldo = saldo;
+    }
+}
@@ -5,6 +5,12 @@ import java.util.Map;
 public class SolicitudDTO {
     private String tipoOperacion;
     private Map<String, Object> datos;
+    // Datos tipados de las operaciones que tienen clase propia (LoginDTO, ConsignaDTO...);
+    // se serializan como "datos" y, cuando están presentes, datos queda en null
+    private transient Object carga;
+    // Identificador opcional elegido por el cliente; se devuelve igual en la respuesta
+    // y permite enviar varias solicitudes seguidas y recibir las respuestas en otro orden
+    private String idSolicitud;
 
     public SolicitudDTO() {
     }
@@ -24,4 +30,29 @@ public class SolicitudDTO {
     public void setDatos(Map<String, Object> datos) {
         this.datos = datos;
     }
+
+    public String getIdSolicitud() {
+        return idSolicitud;
+    }
+
+    public void setIdSolicitud(String idSolicitud) {
+        this.idSolicitud = idSolicitud;
+    }
+
+    public Object getCarga() {
+        return carga;
+    }
+
+    /**
+     * Obtiene los datos tipados de la solicitud
+     * @param tipo Clase esperada
+     * @return Datos tipados, o null si la solicitud no trae datos de esa clase
+     */
+    public <T> T getCarga(Class<T> tipo) {
+        return tipo.isInstance(carga) ? tipo.cast(carga) : null;
+    }
+
+    public void setCarga(Object carga) {
+        this.carga = carga;
+    }
 }
@@ -0,0 +1,341 @@
+package com.appBancaria.log;
+
+import com.appBancaria.config.Configuracion;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log asíncrono del servidor.
+ * Quien registra un mensaje solo lo deja en un buffer circular de tamaño
+ * fijo; un hilo escritor en segundo plano le da formato y lo escribe en
+ * System.out o System.err (que la ventana del servidor redirige a su consola).
+ * Así escribir en el log nunca bloquea el procesamiento de una solicitud:
+ * si el buffer está lleno el mensaje se descarta y se cuenta, y el escritor
+ * informa cuántos se descartaron.
+ *
+ * Configuración (.env): LOG_LEVEL (DEBUG, INFO, ADVERTENCIA, ERROR) y
+ * LOG_BUFFER_SIZE (mensajes pendientes, se redondea a potencia de 2).
+ */
+public final class Log {
+
+    /**
+     * Niveles de log, de menor a mayor severidad
+     */
+    public enum Nivel {
+        DEBUG, INFO, ADVERTENCIA, ERROR
+    }
+
+    // Tiempo máximo que el escritor duerme cuando no hay mensajes
+    private static final long ESPERA_ESCRITOR_NANOS = 100_000_000L;
+    // Mensajes que el escritor toma del buffer antes de escribir
+    private static final int MAX_LOTE_ESCRITURA = 256;
+    private static final long INTERVALO_INFORME_DESCARTES_MS = 1000;
+
+    private static final Nivel nivelMinimo = leerNivel(Configuracion.get("LOG_LEVEL", "INFO"));
+    private static final Anillo anillo = new Anillo(Configuracion.getInt("LOG_BUFFER_SIZE", 8192));
+
+    // Estadísticas
+    private static final AtomicLong escritos = new AtomicLong();
+    private static final AtomicLong descartados = new AtomicLong();
+
+    private static final Thread escritor;
+    private static volatile boolean escritorDormido;
+    private static volatile boolean detenido;
+
+    static {
+        escritor = new Thread(Log::escribirPendientes, "log-escritor");
+        escritor.setDaemon(true);
+        escritor.start();
+        // Escribir lo pendiente al cerrar la aplicación
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::detener, "log-cierre"));
+    }
+
+    private Log() {
+    }
+
+    public static void debug(String mensaje) {
+        registrar(Nivel.DEBUG, mensaje);
+    }
+
+    public static void info(String mensaje) {
+        registrar(Nivel.INFO, mensaje);
+    }
+
+    public static void advertencia(String mensaje) {
+        registrar(Nivel.ADVERTENCIA, mensaje);
+    }
+
+    public static void error(String mensaje) {
+        registrar(Nivel.ERROR, mensaje);
+    }
+
+    /**
+     * Registra un error junto con la traza de la excepción que lo causó
+     */
+    public static void error(String mensaje, Throwable causa) {
+        if (!habilitado(Nivel.ERROR)) {
+            return;
+        }
+        StringWriter traza = new StringWriter();
+        causa.printStackTrace(new PrintWriter(traza));
+        registrar(Nivel.ERROR, mensaje + System.lineSeparator() + traza);
+    }
+
+    /**
+     * Indica si los mensajes de un nivel se registran; sirve para no construir
+     * mensajes costosos que de todas formas se descartarían
+     */
+    public static boolean habilitado(Nivel nivel) {
+        return nivel.compareTo(nivelMinimo) >= 0;
+    }
+
+    /**
+     * Registra un mensaje sin bloquear
+     * @param nivel Nivel del mensaje
+     * @param mensaje Texto del mensaje
+     */
+    public static void registrar(Nivel nivel, String mensaje) {
+        if (!habilitado(nivel)) {
+            return;
+        }
+        Entrada entrada = new Entrada(nivel, System.currentTimeMillis(), mensaje);
+        if (detenido || !anillo.ofrecer(entrada)) {
+            if (detenido) {
+                // Ya no hay escritor: escribir directamente
+                escribir(entrada, new StringBuilder(), new Formateador());
+            } else {
+                descartados.incrementAndGet();
+            }
+            return;
+        }
+        if (escritorDormido) {
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    /**
+     * Detiene el escritor después de escribir los mensajes pendientes
+     */
+    public static void detener() {
+        if (detenido) {
+            return;
+        }
+        detenido = true;
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas del log
+     * @return Mapa con las estadísticas
+     */
+    public static Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("nivel", nivelMinimo.name());
+        estadisticas.put("capacidad", anillo.capacidad());
+        estadisticas.put("pendientes", anillo.pendientes());
+        estadisticas.put("escritos", escritos.get());
+        estadisticas.put("descartados", descartados.get());
+        return estadisticas;
+    }
+
+    private static void escribirPendientes() {
+        Formateador formateador = new Formateador();
+        StringBuilder buffer = new StringBuilder(8192);
+        PrintStream destinoBuffer = null;
+        long descartadosInformados = 0;
+        long ultimoInforme = 0;
+
+        while (true) {
+            int escritosLote = 0;
+            Entrada entrada;
+            while (escritosLote < MAX_LOTE_ESCRITURA && (entrada = anillo.tomar()) != null) {
+                // Se agrupan los mensajes consecutivos del mismo destino para conservar el orden
+                PrintStream destino = destino(entrada.nivel);
+                if (destino != destinoBuffer) {
+                    vaciar(buffer, destinoBuffer);
+                    destinoBuffer = destino;
+                }
+                formateador.formatear(entrada, buffer);
+                escritosLote++;
+            }
+            vaciar(buffer, destinoBuffer);
+            escritos.addAndGet(escritosLote);
+
+            // Los descartes se informan como mucho una vez por segundo
+            long totalDescartados = descartados.get();
+            long ahora = System.currentTimeMillis();
+            if (totalDescartados > descartadosInformados
+                    && (escritosLote == 0 || ahora - ultimoInforme >= INTERVALO_INFORME_DESCARTES_MS)) {
+                escribir(new Entrada(Nivel.ADVERTENCIA, ahora,
+                        "Se descartaron " + (totalDescartados - descartadosInformados)
+                                + " mensajes de log (buffer lleno)"), buffer, formateador);
+                descartadosInformados = totalDescartados;
+                ultimoInforme = ahora;
+            }
+
+            if (escritosLote == 0) {
+                if (detenido) {
+                    return;
+                }
+                escritorDormido = true;
+                // Volver a mirar después de marcarse dormido para no perder un aviso
+                if (anillo.pendientes() == 0 && !detenido) {
+                    LockSupport.parkNanos(ESPERA_ESCRITOR_NANOS);
+                }
+                escritorDormido = false;
+            }
+        }
+    }
+
+    private static PrintStream destino(Nivel nivel) {
+        return nivel.compareTo(Nivel.ADVERTENCIA) >= 0 ? System.err : System.out;
+    }
+
+    private static void escribir(Entrada entrada, StringBuilder buffer, Formateador formateador) {
+        formateador.formatear(entrada, buffer);
+        vaciar(buffer, destino(entrada.nivel));
+    }
+
+    private static void vaciar(StringBuilder buffer, PrintStream destino) {
+        if (destino != null && buffer.length() > 0) {
+            destino.print(buffer);
+            destino.flush();
+            buffer.setLength(0);
+        }
+    }
+
+    private static Nivel leerNivel(String valor) {
+        try {
+            return Nivel.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Valor inválido para LOG_LEVEL: " + valor + ". Usando INFO");
+            return Nivel.INFO;
+        }
+    }
+
+    /**
+     * Mensaje pendiente de escribir
+     */
+    private static final class Entrada {
+        final Nivel nivel;
+        final long instante;
+        final String mensaje;
+
+        Entrada(Nivel nivel, long instante, String mensaje) {
+            this.nivel = nivel;
+            this.instante = instante;
+            this.mensaje = mensaje;
+        }
+    }
+
+    /**
+     * Da formato a los mensajes: "[yyyy-MM-dd HH:mm:ss] NIVEL: mensaje".
+     * La fecha se formatea una sola vez por segundo; cada instancia la usa un solo hilo.
+     */
+    private static final class Formateador {
+        private final SimpleDateFormat formato = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        private long segundoActual = -1;
+        private String fechaActual;
+
+        void formatear(Entrada entrada, StringBuilder destino) {
+            long segundo = entrada.instante / 1000;
+            if (segundo != segundoActual) {
+                fechaActual = formato.format(new Date(segundo * 1000));
+                segundoActual = segundo;
+            }
+            destino.append('[').append(fechaActual).append("] ");
+            if (entrada.nivel != Nivel.INFO) {
+                destino.append(entrada.nivel.name()).append(": ");
+            }
+            destino.append(entrada.mensaje).append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Buffer circular acotado para varios productores y un solo consumidor (el escritor).
+     * Cada posición tiene un número de secuencia que indica si está libre para
+     * el productor de esa vuelta o lista para el consumidor, así que ni
+     * productores ni consumidor usan bloqueos.
+     */
+    private static final class Anillo {
+        private final Entrada[] entradas;
+        private final AtomicLongArray secuencias;
+        private final int mascara;
+        private final AtomicLong siguienteEscritura = new AtomicLong();
+        // Solo lo usa el consumidor
+        private volatile long siguienteLectura;
+
+        Anillo(int capacidadSolicitada) {
+            int capacidad = Integer.highestOneBit(Math.max(2, Math.min(capacidadSolicitada, 1 << 20)) * 2 - 1);
+            entradas = new Entrada[capacidad];
+            secuencias = new AtomicLongArray(capacidad);
+            for (int i = 0; i < capacidad; i++) {
+                secuencias.set(i, i);
+            }
+            mascara = capacidad - 1;
+        }
+
+        int capacidad() {
+            return entradas.length;
+        }
+
+        long pendientes() {
+            return Math.max(0, siguienteEscritura.get() - siguienteLectura);
+        }
+
+        /**
+         * @return false si el buffer está lleno
+         */
+        boolean ofrecer(Entrada entrada) {
+            long posicion = siguienteEscritura.get();
+            while (true) {
+                int indice = (int) (posicion & mascara);
+                long diferencia = secuencias.get(indice) - posicion;
+                if (diferencia == 0) {
+                    if (siguienteEscritura.compareAndSet(posicion, posicion + 1)) {
+                        entradas[indice] = entrada;
+                        // Publica la entrada para el consumidor
+                        secuencias.set(indice, posicion + 1);
+                        return true;
+                    }
+                    posicion = siguienteEscritura.get();
+                } else if (diferencia < 0) {
+                    // El consumidor aún no libera esta posición de la vuelta anterior
+                    return false;
+                } else {
+                    posicion = siguienteEscritura.get();
+                }
+            }
+        }
+
+        /**
+         * @return Siguiente entrada, o null si no hay ninguna lista
+         */
+        Entrada tomar() {
+            int indice = (int) (siguienteLectura & mascara);
+            if (secuencias.get(indice) != siguienteLectura + 1) {
+                return null;
+            }
+            Entrada entrada = entradas[indice];
+            entradas[indice] = null;
+            // Libera la posición para la siguiente vuelta
+            secuencias.set(indice, siguienteLectura + mascara + 1);
+            siguienteLectura++;
+            return entrada;
+        }
+    }
+}
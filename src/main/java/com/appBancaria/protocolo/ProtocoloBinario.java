@@ -0,0 +1,424 @@
+package com.appBancaria.protocolo;
+
+import com.appBancaria.dto.ConsignaDTO;
+import com.appBancaria.dto.ConsultaSaldoDTO;
+import com.appBancaria.dto.RespuestaDTO;
+import com.appBancaria.dto.SaldoDTO;
+import com.appBancaria.dto.SolicitudDTO;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Protocolo binario compacto, alternativo a una línea JSON por mensaje.
+ *
+ * Negociación: si el primer byte que envía el cliente es {@link #HANDSHAKE}
+ * (un byte que nunca puede iniciar un texto JSON), la conexión pasa a modo
+ * binario y el servidor confirma devolviendo el mismo byte. Cualquier otro
+ * primer byte se trata como el inicio de la primera línea JSON.
+ *
+ * Trama: [longitud int32][código de operación 1 byte][idSolicitud int32][cuerpo]
+ * donde la longitud cuenta todo lo que va después de ella. idSolicitud = 0
+ * equivale a una solicitud sin id (se atiende en orden). Los ids negativos
+ * están reservados: el servidor envía sus latidos como respuestas PING con
+ * idSolicitud {@link #ID_LATIDO_BINARIO}, y rechaza las solicitudes con id negativo.
+ * Como el id viaja como entero, una solicitud JSON cuyo idSolicitud no sea un
+ * entero no negativo también se rechaza: su respuesta no se podría asociar a ella.
+ *
+ * Cuerpo de las solicitudes:
+ * - PING: vacío, o un byte de latidos (0 sin cambio, 1 desactivarlos, 2 activarlos)
+ * - CONSULTA_SALDO: token (UTF), tipo de filtro (byte: 0 ninguno, 1 número de cuenta, 2 identificación), valor
+ * - CONSIGNA_CUENTA: token (UTF), numeroCuentaDestino (UTF), monto (double)
+ * - JSON: el SolicitudDTO completo en JSON (UTF-8), para el resto de operaciones
+ *
+ * Cuerpo de las respuestas: codigo (short), mensaje (UTF) y luego
+ * - PING: vacío
+ * - CONSULTA_SALDO: saldo (double) si codigo es 200
+ * - CONSIGNA_CUENTA: exito (boolean), mensaje del resultado (UTF) y, si hubo éxito,
+ *   saldoAnterior, saldoNuevo, monto (double), numeroCuentaDestino y numeroCuentaOrigen (UTF)
+ * - JSON: datos de la respuesta en JSON (UTF-8), vacío si no hay datos
+ * Las respuestas de operaciones con formato fijo siempre usan ese formato,
+ * aunque la solicitud haya llegado como JSON.
+ */
+public final class ProtocoloBinario {
+    public static final byte HANDSHAKE = (byte) 0xB1;
+    // Tamaño máximo del contenido de una trama; con su prefijo ocupa lo mismo que la línea más larga del protocolo JSON
+    public static final int MAX_TRAMA = 1024 * 1024 - 4;
+
+    public static final byte OP_JSON = 0;
+    public static final byte OP_PING = 1;
+    public static final byte OP_CONSULTA_SALDO = 2;
+    public static final byte OP_CONSIGNA_CUENTA = 3;
+
+    // Id de los latidos del servidor: "latido" en el protocolo JSON, negativo en el binario
+    public static final String ID_LATIDO = "latido";
+    public static final int ID_LATIDO_BINARIO = -1;
+
+    private static final byte LATIDO_SIN_CAMBIO = 0;
+    private static final byte LATIDO_DESACTIVAR = 1;
+    private static final byte LATIDO_ACTIVAR = 2;
+
+    private static final byte FILTRO_NINGUNO = 0;
+    private static final byte FILTRO_NUMERO_CUENTA = 1;
+    private static final byte FILTRO_IDENTIFICACION = 2;
+
+    private ProtocoloBinario() {
+    }
+
+    /**
+     * Código de operación binario que corresponde a un tipo de operación
+     * @param tipoOperacion Tipo de operación (puede ser null)
+     * @return Código de operación; OP_JSON si la operación no tiene formato fijo
+     */
+    public static byte codigoOperacion(String tipoOperacion) {
+        if (tipoOperacion == null) {
+            return OP_JSON;
+        }
+        switch (tipoOperacion.toLowerCase()) {
+            case "ping":
+                return OP_PING;
+            case "consulta_saldo":
+                return OP_CONSULTA_SALDO;
+            case "consigna_cuenta":
+                return OP_CONSIGNA_CUENTA;
+            default:
+                return OP_JSON;
+        }
+    }
+
+    /**
+     * Codifica una solicitud como trama completa (con el prefijo de longitud)
+     * @param solicitud Solicitud a enviar
+     * @param gson Instancia de Gson para las operaciones sin formato fijo
+     * @return Bytes de la trama
+     */
+    public static byte[] codificarSolicitud(SolicitudDTO solicitud, Gson gson) {
+        byte operacion = codigoOperacion(solicitud.getTipoOperacion());
+        // Los datos pueden venir tipados o, como en el protocolo JSON, en un Map
+        if (operacion != OP_PING && solicitud.getCarga() == null && solicitud.getDatos() != null) {
+            solicitud = gson.fromJson(gson.toJson(solicitud), SolicitudDTO.class);
+        }
+        try {
+            Trama trama = new Trama(operacion, idNumerico(solicitud.getIdSolicitud()));
+            DataOutputStream out = trama.out;
+            switch (operacion) {
+                case OP_PING:
+                    Object latido = solicitud.getDatos() != null ? solicitud.getDatos().get("latido") : null;
+                    if (latido instanceof Boolean) {
+                        out.writeByte((Boolean) latido ? LATIDO_ACTIVAR : LATIDO_DESACTIVAR);
+                    }
+                    break;
+                case OP_CONSULTA_SALDO:
+                    ConsultaSaldoDTO consulta = solicitud.getCarga(ConsultaSaldoDTO.class);
+                    if (consulta == null) {
+                        consulta = new ConsultaSaldoDTO();
+                    }
+                    out.writeUTF(texto(consulta.getToken()));
+                    if (consulta.getNumeroCuenta() != null) {
+                        out.writeByte(FILTRO_NUMERO_CUENTA);
+                        out.writeUTF(consulta.getNumeroCuenta());
+                    } else if (consulta.getIdentificacion() != null) {
+                        out.writeByte(FILTRO_IDENTIFICACION);
+                        out.writeInt(consulta.getIdentificacion());
+                    } else {
+                        out.writeByte(FILTRO_NINGUNO);
+                    }
+                    break;
+                case OP_CONSIGNA_CUENTA:
+                    ConsignaDTO consigna = solicitud.getCarga(ConsignaDTO.class);
+                    if (consigna == null) {
+                        consigna = new ConsignaDTO();
+                    }
+                    out.writeUTF(texto(consigna.getToken()));
+                    out.writeUTF(texto(consigna.getNumeroCuentaDestino()));
+                    out.writeDouble(consigna.getMonto() != null ? consigna.getMonto() : 0.0);
+                    break;
+                default:
+                    out.write(gson.toJson(solicitud).getBytes(StandardCharsets.UTF_8));
+                    break;
+            }
+            return trama.terminar();
+        } catch (IOException e) {
+            // ByteArrayOutputStream no lanza IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodifica el contenido de una trama de solicitud (sin el prefijo de longitud)
+     * @param datos Buffer con la trama
+     * @param desde Posición donde empieza el contenido
+     * @param longitud Longitud del contenido
+     * @param gson Instancia de Gson para las operaciones sin formato fijo
+     * @return Solicitud decodificada
+     * @throws IOException si la trama está mal formada
+     */
+    public static SolicitudDTO decodificarSolicitud(byte[] datos, int desde, int longitud, Gson gson) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos, desde, longitud));
+        byte operacion = in.readByte();
+        int idNumerico = in.readInt();
+        if (idNumerico < 0) {
+            throw new IOException("idSolicitud negativo (reservado para el servidor): " + idNumerico);
+        }
+        String idSolicitud = idTexto(idNumerico);
+
+        SolicitudDTO solicitud = new SolicitudDTO();
+        switch (operacion) {
+            case OP_PING:
+                solicitud.setTipoOperacion("ping");
+                Map<String, Object> datosPing = new HashMap<>();
+                byte latido = in.available() > 0 ? in.readByte() : LATIDO_SIN_CAMBIO;
+                if (latido == LATIDO_ACTIVAR || latido == LATIDO_DESACTIVAR) {
+                    datosPing.put("latido", latido == LATIDO_ACTIVAR);
+                }
+                solicitud.setDatos(datosPing);
+                break;
+            case OP_CONSULTA_SALDO:
+                solicitud.setTipoOperacion("consulta_saldo");
+                ConsultaSaldoDTO consulta = new ConsultaSaldoDTO();
+                consulta.setToken(in.readUTF());
+                byte filtro = in.readByte();
+                if (filtro == FILTRO_NUMERO_CUENTA) {
+                    consulta.setNumeroCuenta(in.readUTF());
+                } else if (filtro == FILTRO_IDENTIFICACION) {
+                    consulta.setIdentificacion(in.readInt());
+                }
+                solicitud.setCarga(consulta);
+                break;
+            case OP_CONSIGNA_CUENTA:
+                solicitud.setTipoOperacion("consigna_cuenta");
+                ConsignaDTO consigna = new ConsignaDTO();
+                consigna.setToken(in.readUTF());
+                consigna.setNumeroCuentaDestino(in.readUTF());
+                consigna.setMonto(in.readDouble());
+                solicitud.setCarga(consigna);
+                break;
+            case OP_JSON:
+                int inicioJson = desde + 5;
+                solicitud = gson.fromJson(new String(datos, inicioJson, longitud - 5, StandardCharsets.UTF_8), SolicitudDTO.class);
+                if (solicitud != null && solicitud.getIdSolicitud() == null) {
+                    solicitud.setIdSolicitud(idSolicitud);
+                } else if (solicitud != null) {
+                    validarIdCliente(solicitud.getIdSolicitud());
+                }
+                return solicitud;
+            default:
+                throw new IOException("Código de operación desconocido: " + operacion);
+        }
+        solicitud.setIdSolicitud(idSolicitud);
+        return solicitud;
+    }
+
+    /**
+     * Codifica una respuesta como trama completa (con el prefijo de longitud)
+     * @param tipoOperacion Tipo de operación de la solicitud respondida (puede ser null)
+     * @param respuesta Respuesta a enviar
+     * @param gson Instancia de Gson para las operaciones sin formato fijo
+     * @return Bytes de la trama
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] codificarRespuesta(String tipoOperacion, RespuestaDTO respuesta, Gson gson) {
+        byte operacion = codigoOperacion(tipoOperacion);
+        try {
+            Trama trama = new Trama(operacion, idNumerico(respuesta.getIdSolicitud()));
+            DataOutputStream out = trama.out;
+            out.writeShort(respuesta.getCodigo());
+            out.writeUTF(texto(respuesta.getMensaje()));
+            boolean exitosa = respuesta.getCodigo() == 200;
+            switch (operacion) {
+                case OP_PING:
+                    break;
+                case OP_CONSULTA_SALDO:
+                    if (exitosa) {
+                        out.writeDouble(((SaldoDTO) respuesta.getDatos()).getSaldo());
+                    }
+                    break;
+                case OP_CONSIGNA_CUENTA:
+                    if (exitosa) {
+                        Map<String, Object> datos = (Map<String, Object>) respuesta.getDatos();
+                        boolean exito = Boolean.TRUE.equals(datos.get("exito"));
+                        out.writeBoolean(exito);
+                        out.writeUTF(texto(datos.get("mensaje")));
+                        if (exito) {
+                            out.writeDouble(((Number) datos.get("saldoAnterior")).doubleValue());
+                            out.writeDouble(((Number) datos.get("saldoNuevo")).doubleValue());
+                            out.writeDouble(((Number) datos.get("monto")).doubleValue());
+                            out.writeUTF(texto(datos.get("numeroCuentaDestino")));
+                            out.writeUTF(texto(datos.get("numeroCuentaOrigen")));
+                        }
+                    }
+                    break;
+                default:
+                    if (respuesta.getDatos() != null) {
+                        out.write(gson.toJson(respuesta.getDatos()).getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+            }
+            return trama.terminar();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodifica el contenido de una trama de respuesta (sin el prefijo de longitud)
+     * @param datos Contenido de la trama
+     * @param gson Instancia de Gson para las operaciones sin formato fijo
+     * @return Respuesta decodificada; datos queda como Map igual que en el protocolo JSON
+     * @throws IOException si la trama está mal formada
+     */
+    @SuppressWarnings("unchecked")
+    public static RespuestaDTO decodificarRespuesta(byte[] datos, Gson gson) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos));
+        byte operacion = in.readByte();
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setIdSolicitud(idTexto(in.readInt()));
+        respuesta.setCodigo(in.readShort());
+        respuesta.setMensaje(in.readUTF());
+
+        Map<String, Object> campos = new HashMap<>();
+        switch (operacion) {
+            case OP_PING:
+                respuesta.setDatos(campos);
+                break;
+            case OP_CONSULTA_SALDO:
+                if (respuesta.getCodigo() == 200) {
+                    campos.put("saldo", in.readDouble());
+                    respuesta.setDatos(campos);
+                }
+                break;
+            case OP_CONSIGNA_CUENTA:
+                if (respuesta.getCodigo() == 200) {
+                    boolean exito = in.readBoolean();
+                    campos.put("exito", exito);
+                    campos.put("mensaje", in.readUTF());
+                    if (exito) {
+                        campos.put("saldoAnterior", in.readDouble());
+                        campos.put("saldoNuevo", in.readDouble());
+                        campos.put("monto", in.readDouble());
+                        campos.put("numeroCuentaDestino", in.readUTF());
+                        campos.put("numeroCuentaOrigen", in.readUTF());
+                    }
+                    respuesta.setDatos(campos);
+                }
+                break;
+            case OP_JSON:
+                int restante = in.available();
+                if (restante > 0) {
+                    byte[] json = new byte[restante];
+                    in.readFully(json);
+                    respuesta.setDatos(gson.fromJson(new String(json, StandardCharsets.UTF_8), Object.class));
+                }
+                break;
+            default:
+                throw new IOException("Código de operación desconocido: " + operacion);
+        }
+        return respuesta;
+    }
+
+    /**
+     * Lee una trama completa de un flujo bloqueante
+     * @param in Flujo de entrada
+     * @return Contenido de la trama (sin el prefijo de longitud), o null si el flujo terminó
+     * @throws IOException si hay un error de lectura o la trama excede el tamaño máximo
+     */
+    public static byte[] leerTrama(DataInputStream in) throws IOException {
+        int longitud;
+        try {
+            longitud = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        validarLongitud(longitud);
+        byte[] contenido = new byte[longitud];
+        in.readFully(contenido);
+        return contenido;
+    }
+
+    /**
+     * Verifica que la longitud anunciada de una trama sea aceptable
+     * @param longitud Longitud leída del prefijo
+     * @throws IOException si la longitud es inválida
+     */
+    public static void validarLongitud(int longitud) throws IOException {
+        if (longitud < 5 || longitud > MAX_TRAMA) {
+            throw new IOException("Longitud de trama inválida: " + longitud);
+        }
+    }
+
+    /**
+     * Verifica que el idSolicitud de una solicitud JSON se pueda enviar en la trama de su respuesta
+     * @throws IOException si no es un entero no negativo
+     */
+    private static void validarIdCliente(String idSolicitud) throws IOException {
+        try {
+            if (Integer.parseInt(idSolicitud) >= 0) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Se rechaza abajo
+        }
+        throw new IOException("En el protocolo binario idSolicitud debe ser un entero no negativo: " + idSolicitud);
+    }
+
+    /**
+     * @throws IllegalArgumentException si el id no es un entero: codificarlo como 0
+     *         haría que su respuesta no se pudiera asociar a la solicitud
+     */
+    private static int idNumerico(String idSolicitud) {
+        if (idSolicitud == null) {
+            return 0;
+        }
+        if (ID_LATIDO.equals(idSolicitud)) {
+            return ID_LATIDO_BINARIO;
+        }
+        try {
+            return Integer.parseInt(idSolicitud);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("En el protocolo binario idSolicitud debe ser un entero: " + idSolicitud);
+        }
+    }
+
+    private static String idTexto(int idSolicitud) {
+        if (idSolicitud == ID_LATIDO_BINARIO) {
+            return ID_LATIDO;
+        }
+        return idSolicitud == 0 ? null : Integer.toString(idSolicitud);
+    }
+
+    private static String texto(Object valor) {
+        return valor != null ? valor.toString() : "";
+    }
+
+    /**
+     * Trama en construcción; reserva los 4 bytes de la longitud y la completa al terminar
+     */
+    private static class Trama {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Trama(byte operacion, int idSolicitud) throws IOException {
+            out.writeInt(0);
+            out.writeByte(operacion);
+            out.writeInt(idSolicitud);
+        }
+
+        byte[] terminar() {
+            byte[] trama = bytes.toByteArray();
+            int longitud = trama.length - 4;
+            trama[0] = (byte) (longitud >>> 24);
+            trama[1] = (byte) (longitud >>> 16);
+            trama[2] = (byte) (longitud >>> 8);
+            trama[3] = (byte) longitud;
+            return trama;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.log.Log;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commit agrupado de consignaciones.
+ * Con cada consignación en su propia transacción, el rendimiento queda
+ * limitado por lo que tarda cada commit en escribirse a disco. Aquí las
+ * consignaciones que llegan a la vez se reúnen durante unos milisegundos (o
+ * hasta un máximo) y un solo hilo las aplica en una transacción; quien
+ * consignó recibe su resultado solo después del commit compartido.
+ * Si el lote falla antes del commit, cada consignación se reintenta por
+ * separado para que el error de una no afecte a las demás. Si falla el commit
+ * no se sabe si el lote quedó aplicado, así que no se reintenta: reintentarlo
+ * podría aplicar dos veces cada consignación. Quien consignó espera el
+ * resultado un tiempo limitado; si se agota sin que el lote se aplique, la
+ * consignación también se informa como incierta.
+ */
+final class AgrupadorConsignaciones {
+    // Tiempo que el hilo espera la primera consignación antes de revisar si debe detenerse
+    private static final long ESPERA_VACIA_MS = 100;
+
+    /**
+     * Aplica un lote de consignaciones en una sola transacción. Debe dejar en
+     * cada consignación su resultado o su error propio (cuenta inexistente) y
+     * lanzar una excepción solo si falló la transacción completa: una
+     * {@link ResultadoIncierto} si falló el commit, cualquier otra si se
+     * revirtió antes de confirmarse.
+     */
+    @FunctionalInterface
+    interface AplicadorLote {
+        void aplicar(List<Pendiente> lote) throws SQLException;
+    }
+
+    /**
+     * Aplica una consignación en su propia transacción
+     */
+    @FunctionalInterface
+    interface AplicadorIndividual {
+        Map<String, Object> aplicar(String idSesion, String numeroCuentaDestino, double monto) throws SQLException;
+    }
+
+    /**
+     * El commit del lote falló y no se sabe si quedó confirmado (por ejemplo,
+     * se perdió la conexión esperando la respuesta del commit)
+     */
+    static final class ResultadoIncierto extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        ResultadoIncierto(Throwable causa) {
+            super("No se pudo confirmar el lote de consignaciones: " + causa.getMessage(), causa);
+        }
+    }
+
+    private final boolean habilitado;
+    private final int maxLote;
+    private final long esperaNanos;
+    private final long esperaResultadoNanos;
+    private final AplicadorLote aplicadorLote;
+    private final AplicadorIndividual aplicadorIndividual;
+    private final LinkedBlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+    private final Thread hilo;
+    private volatile boolean activo = true;
+
+    // Estadísticas
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong consignaciones = new AtomicLong();
+    private final AtomicLong lotesFallidos = new AtomicLong();
+    private final AtomicLong lotesInciertos = new AtomicLong();
+    private final AtomicLong esperasAgotadas = new AtomicLong();
+    private final AtomicLong maxTamanoLote = new AtomicLong();
+
+    /**
+     * @param habilitado Si es false cada consignación se aplica directamente
+     * @param maxLote Máximo de consignaciones por transacción
+     * @param esperaMs Tiempo máximo que se espera a más consignaciones tras la primera
+     * @param esperaResultadoMs Tiempo máximo que quien consignó espera a que se aplique su lote
+     * @param aplicadorLote Aplica un lote en una transacción
+     * @param aplicadorIndividual Aplica una consignación sola
+     */
+    AgrupadorConsignaciones(boolean habilitado, int maxLote, long esperaMs, long esperaResultadoMs,
+                            AplicadorLote aplicadorLote, AplicadorIndividual aplicadorIndividual) {
+        this.habilitado = habilitado && maxLote > 1;
+        this.maxLote = Math.max(1, maxLote);
+        this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, esperaMs));
+        this.esperaResultadoNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, esperaResultadoMs));
+        this.aplicadorLote = aplicadorLote;
+        this.aplicadorIndividual = aplicadorIndividual;
+        if (this.habilitado) {
+            hilo = new Thread(this::procesar, "commit-agrupado");
+            hilo.setDaemon(true);
+            hilo.start();
+        } else {
+            hilo = null;
+        }
+    }
+
+    /**
+     * Aplica una consignación, agrupada con las que lleguen a la vez si está habilitado.
+     * Bloquea hasta que la transacción que la incluye se confirme.
+     * @return Resultado de la consignación
+     * @throws SQLException si la consignación no se pudo aplicar
+     */
+    Map<String, Object> consignar(String idSesion, String numeroCuentaDestino, double monto) throws SQLException {
+        if (!habilitado || !activo) {
+            return aplicadorIndividual.aplicar(idSesion, numeroCuentaDestino, monto);
+        }
+        Pendiente pendiente = new Pendiente(idSesion, numeroCuentaDestino, monto);
+        cola.add(pendiente);
+        // Si se detuvo justo ahora puede que el hilo ya no la tome
+        if (!activo && cola.remove(pendiente)) {
+            return aplicadorIndividual.aplicar(idSesion, numeroCuentaDestino, monto);
+        }
+        try {
+            return pendiente.esperar(esperaResultadoNanos);
+        } catch (TimeoutException e) {
+            esperasAgotadas.incrementAndGet();
+            // Si sigue en la cola ningún lote la tomó: se sabe que no se aplicó
+            if (cola.remove(pendiente)) {
+                throw new SQLException("La consignación no se aplicó: el servidor no la procesó a tiempo");
+            }
+            Log.error("Se agotó la espera del resultado de una consignación a la cuenta "
+                    + numeroCuentaDestino + "; puede haberse aplicado");
+            throw new SQLException("No se pudo confirmar la consignación; "
+                    + "consulte el saldo antes de intentarla de nuevo");
+        }
+    }
+
+    /**
+     * Deja de aceptar consignaciones agrupadas y espera a que se apliquen las pendientes
+     */
+    void detener() {
+        if (hilo == null || !activo) {
+            return;
+        }
+        activo = false;
+        hilo.interrupt();
+        try {
+            hilo.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas del commit agrupado
+     * @return Mapa con las estadísticas
+     */
+    Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalLotes = lotes.get();
+        long totalConsignaciones = consignaciones.get();
+        estadisticas.put("habilitado", habilitado);
+        estadisticas.put("lotes", totalLotes);
+        estadisticas.put("consignaciones", totalConsignaciones);
+        estadisticas.put("tamanoMedioLote", totalLotes > 0 ? (double) totalConsignaciones / totalLotes : 0.0);
+        estadisticas.put("maxTamanoLote", maxTamanoLote.get());
+        estadisticas.put("lotesFallidos", lotesFallidos.get());
+        estadisticas.put("lotesInciertos", lotesInciertos.get());
+        estadisticas.put("esperasAgotadas", esperasAgotadas.get());
+        estadisticas.put("pendientes", cola.size());
+        return estadisticas;
+    }
+
+    private void procesar() {
+        List<Pendiente> lote = new ArrayList<>(maxLote);
+        // Al detenerse se siguen aplicando las consignaciones que ya estaban en la cola
+        while (activo || !cola.isEmpty()) {
+            try {
+                Pendiente primera = cola.poll(ESPERA_VACIA_MS, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                long limite = System.nanoTime() + esperaNanos;
+                while (lote.size() < maxLote) {
+                    long restante = limite - System.nanoTime();
+                    Pendiente siguiente = restante > 0 && activo
+                            ? cola.poll(restante, TimeUnit.NANOSECONDS)
+                            : cola.poll();
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                // detener(): se aplica lo que ya se reunió y se vacía la cola sin esperar
+            }
+            if (!lote.isEmpty()) {
+                aplicar(lote);
+                lote.clear();
+            }
+        }
+    }
+
+    private void aplicar(List<Pendiente> lote) {
+        lotes.incrementAndGet();
+        consignaciones.addAndGet(lote.size());
+        maxTamanoLote.accumulateAndGet(lote.size(), Math::max);
+
+        // Una sola consignación no gana nada con el lote
+        if (lote.size() == 1) {
+            aplicarIndividual(lote.get(0));
+            return;
+        }
+        try {
+            aplicadorLote.aplicar(lote);
+        } catch (ResultadoIncierto e) {
+            lotesInciertos.incrementAndGet();
+            Log.error("No se sabe si el lote de " + lote.size() + " consignaciones quedó confirmado, "
+                    + "no se reintenta: " + e.getMessage());
+            for (Pendiente pendiente : lote) {
+                pendiente.marcarIncierta();
+                pendiente.completar();
+            }
+            return;
+        } catch (SQLException | RuntimeException e) {
+            lotesFallidos.incrementAndGet();
+            Log.advertencia("Falló el lote de " + lote.size() + " consignaciones, se reintentan por separado: "
+                    + e.getMessage());
+            for (Pendiente pendiente : lote) {
+                aplicarIndividual(pendiente);
+            }
+            return;
+        }
+        for (Pendiente pendiente : lote) {
+            pendiente.completar();
+        }
+    }
+
+    private void aplicarIndividual(Pendiente pendiente) {
+        pendiente.resultado = null;
+        pendiente.error = null;
+        try {
+            pendiente.resultado = aplicadorIndividual.aplicar(
+                    pendiente.idSesion, pendiente.numeroCuentaDestino, pendiente.monto);
+        } catch (SQLException e) {
+            pendiente.error = e;
+        } catch (RuntimeException e) {
+            pendiente.error = new SQLException(e.getMessage(), e);
+        }
+        pendiente.completar();
+    }
+
+    /**
+     * Consignación en espera de ser aplicada
+     */
+    static final class Pendiente {
+        final String idSesion;
+        final String numeroCuentaDestino;
+        final double monto;
+        private final CompletableFuture<Map<String, Object>> futuro = new CompletableFuture<>();
+        // Los asigna el hilo del agrupador antes de completar el futuro
+        private Map<String, Object> resultado;
+        private SQLException error;
+
+        private Pendiente(String idSesion, String numeroCuentaDestino, double monto) {
+            this.idSesion = idSesion;
+            this.numeroCuentaDestino = numeroCuentaDestino;
+            this.monto = monto;
+        }
+
+        /**
+         * Resultado de la consignación dentro del lote; se entrega al confirmarse el lote
+         */
+        void setResultado(Map<String, Object> resultado) {
+            this.resultado = resultado;
+            this.error = null;
+        }
+
+        /**
+         * Error propio de esta consignación (no impide confirmar el resto del lote)
+         */
+        void setError(SQLException error) {
+            this.error = error;
+            this.resultado = null;
+        }
+
+        /**
+         * Si la consignación estaba en la transacción cuyo commit falló, se
+         * informa que su resultado es desconocido; los errores propios se conservan
+         */
+        private void marcarIncierta() {
+            if (resultado != null) {
+                setError(new SQLException("No se pudo confirmar la consignación; "
+                        + "consulte el saldo antes de intentarla de nuevo"));
+            }
+        }
+
+        private void completar() {
+            if (error != null) {
+                futuro.completeExceptionally(error);
+            } else if (resultado != null) {
+                futuro.complete(resultado);
+            } else {
+                futuro.completeExceptionally(new SQLException("La consignación no se aplicó"));
+            }
+        }
+
+        /**
+         * @throws TimeoutException si el lote no se aplicó dentro del plazo (el hilo del
+         *         agrupador murió o el servidor se detuvo sin vaciar la cola)
+         */
+        private Map<String, Object> esperar(long plazoNanos) throws SQLException, TimeoutException {
+            // Si el hilo se interrumpe (servidor deteniéndose) se sigue esperando hasta el plazo:
+            // la consignación puede confirmarse de todas formas y no debe informarse como fallida
+            long limite = System.nanoTime() + plazoNanos;
+            boolean interrumpido = false;
+            try {
+                while (true) {
+                    try {
+                        return futuro.get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        interrumpido = true;
+                    } catch (ExecutionException e) {
+                        Throwable causa = e.getCause();
+                        if (causa instanceof SQLException) {
+                            throw (SQLException) causa;
+                        }
+                        throw new SQLException(causa.getMessage(), causa);
+                    }
+                }
+            } finally {
+                if (interrumpido) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.log.Log;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asigna números de cuenta con el esquema hi/lo: cada bloque de números se
+ * reserva con un solo nextval de una secuencia de la base de datos (hi) y
+ * sus números se entregan desde memoria sin bloqueos (lo). Así los números
+ * no se repiten entre hilos ni entre servidores y crear una cuenta no
+ * necesita consultar si el número ya existe.
+ * El bloque n (desde 1) cubre los números [100000 + (n - 1) * tamanoBloque, 100000 + n * tamanoBloque).
+ * Al reiniciar el servidor se pierden los números no usados del bloque en curso.
+ * Los números de cuenta tienen 6 dígitos: al pasar de 999999 (9000 bloques de
+ * 100) no se asignan más y crear una cuenta falla con un error explícito.
+ */
+final class AsignadorNumerosCuenta {
+    private static final long PRIMER_NUMERO = 100000;
+    private static final long ULTIMO_NUMERO = 999999;
+    private static final String SECUENCIA = "cuentas_numero_bloque_seq";
+
+    private final int tamanoBloque;
+    private volatile Bloque bloque = new Bloque(0, 0);
+    // Solo un hilo reserva un bloque nuevo a la vez
+    private final ReentrantLock reserva = new ReentrantLock();
+    private volatile boolean secuenciaCreada;
+
+    // Estadísticas
+    private final AtomicLong asignados = new AtomicLong();
+    private final AtomicLong bloquesReservados = new AtomicLong();
+
+    AsignadorNumerosCuenta(int tamanoBloque) {
+        this.tamanoBloque = Math.max(1, tamanoBloque);
+    }
+
+    /**
+     * Crea la secuencia si no existe. Debe llamarse con la conexión en autoCommit,
+     * antes de abrir la transacción que pedirá números, para que la creación
+     * quede confirmada aunque esa transacción se revierta; solo hace algo la primera vez.
+     * @param conn Conexión de quien va a pedir números
+     */
+    void preparar(Connection conn) throws SQLException {
+        if (secuenciaCreada) {
+            return;
+        }
+        reserva.lock();
+        try {
+            // Dos CREATE ... IF NOT EXISTS a la vez pueden chocar en PostgreSQL
+            if (!secuenciaCreada) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE SEQUENCE IF NOT EXISTS " + SECUENCIA);
+                }
+                secuenciaCreada = true;
+            }
+        } finally {
+            reserva.unlock();
+        }
+    }
+
+    /**
+     * @param conn Conexión de quien pide el número; si hay que reservar un bloque
+     *             se usa esta misma (nextval no se deshace aunque su transacción se revierta)
+     * @return Siguiente número de cuenta libre de este servidor
+     * @throws SQLException si no se pudo reservar un bloque nuevo o se agotaron los números
+     */
+    String siguiente(Connection conn) throws SQLException {
+        while (true) {
+            Bloque actual = bloque;
+            long numero = actual.tomar();
+            if (numero >= 0) {
+                asignados.incrementAndGet();
+                return String.valueOf(numero);
+            }
+            reserva.lock();
+            try {
+                // Otro hilo pudo haber reservado el bloque mientras se esperaba
+                if (bloque == actual) {
+                    bloque = reservarBloque(conn);
+                }
+            } finally {
+                reserva.unlock();
+            }
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas del asignador
+     * @return Mapa con números asignados y bloques reservados
+     */
+    Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("tamanoBloque", tamanoBloque);
+        estadisticas.put("asignados", asignados.get());
+        estadisticas.put("bloquesReservados", bloquesReservados.get());
+        estadisticas.put("disponiblesEnBloque", bloque.disponibles());
+        return estadisticas;
+    }
+
+    private Bloque reservarBloque(Connection conn) throws SQLException {
+        if (!secuenciaCreada) {
+            throw new SQLException("La secuencia de números de cuenta no se ha preparado");
+        }
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT nextval('" + SECUENCIA + "')")) {
+                rs.next();
+                long inicio = PRIMER_NUMERO + (rs.getLong(1) - 1) * tamanoBloque;
+                if (inicio > ULTIMO_NUMERO) {
+                    Log.error("Se agotaron los números de cuenta de 6 dígitos");
+                    throw new SQLException("No hay números de cuenta disponibles");
+                }
+                bloquesReservados.incrementAndGet();
+                Log.debug("Reservado bloque de números de cuenta desde " + inicio);
+                return new Bloque(inicio, Math.min(inicio + tamanoBloque, ULTIMO_NUMERO + 1));
+            }
+        }
+    }
+
+    /**
+     * Rango de números reservado; los hilos toman números con un CAS
+     */
+    private static final class Bloque {
+        private final AtomicLong siguiente;
+        private final long fin;
+
+        Bloque(long inicio, long fin) {
+            this.siguiente = new AtomicLong(inicio);
+            this.fin = fin;
+        }
+
+        /**
+         * @return Número tomado, o -1 si el bloque se agotó
+         */
+        long tomar() {
+            while (true) {
+                long numero = siguiente.get();
+                if (numero >= fin) {
+                    return -1;
+                }
+                if (siguiente.compareAndSet(numero, numero + 1)) {
+                    return numero;
+                }
+            }
+        }
+
+        long disponibles() {
+            return Math.max(0, fin - siguiente.get());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.appBancaria.servicio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caché en memoria de saldos, indexada por número de cuenta, y de la cuenta
+ * de cada número de identificación.
+ * La mayoría de consultas de saldo son del mismo titular revisando una cuenta
+ * que no cambió, así que se responden sin consultar la base de datos.
+ * Toda operación que cambia un saldo debe llamar a {@link #invalidar(String)}
+ * al confirmarse; las lecturas de la BD que estaban en curso durante una
+ * invalidación no se guardan (ver {@link #getVersion(String)}), así que la
+ * caché nunca devuelve un saldo anterior a una consignación ya confirmada.
+ * Al llenarse se descarta la entrada usada hace más tiempo (LRU).
+ */
+public class CacheSaldos {
+    // Contadores de invalidación repartidos por número de cuenta: una consignación
+    // solo impide guardar las lecturas de las cuentas de su misma franja
+    private static final int FRANJAS_VERSION = 256;
+
+    private final boolean habilitada;
+    private final int maxEntradas;
+    // Protegidos por su propio monitor
+    private final LinkedHashMap<String, Double> saldos;
+    private final LinkedHashMap<Integer, String> cuentasPorIdentificacion;
+    private final AtomicLongArray versiones = new AtomicLongArray(FRANJAS_VERSION);
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    public CacheSaldos(boolean habilitada, int maxEntradas) {
+        this.habilitada = habilitada;
+        this.maxEntradas = Math.max(1, maxEntradas);
+        this.saldos = crearLru(this.maxEntradas);
+        this.cuentasPorIdentificacion = crearLru(this.maxEntradas);
+    }
+
+    /**
+     * Obtiene el saldo de una cuenta si está en caché
+     * @param numeroCuenta Número de cuenta
+     * @return Saldo o null si no está en caché
+     */
+    public Double obtener(String numeroCuenta) {
+        if (!habilitada || numeroCuenta == null) {
+            return null;
+        }
+        Double saldo;
+        synchronized (saldos) {
+            saldo = saldos.get(numeroCuenta);
+        }
+        if (saldo == null) {
+            fallos.incrementAndGet();
+        } else {
+            aciertos.incrementAndGet();
+        }
+        return saldo;
+    }
+
+    /**
+     * Versión de invalidación de una cuenta; debe leerse antes de consultar la BD y pasarse a guardar()
+     * @param numeroCuenta Número de cuenta
+     * @return Versión actual
+     */
+    public long getVersion(String numeroCuenta) {
+        return versiones.get(franja(numeroCuenta));
+    }
+
+    /**
+     * Guarda un saldo leído de la BD tras un fallo de caché. Si la cuenta se
+     * invalidó desde que se leyó la versión, no se guarda (la lectura pudo ser
+     * anterior a la consignación).
+     * @param numeroCuenta Número de cuenta
+     * @param saldo Saldo leído
+     * @param versionLeida Versión obtenida con getVersion() antes de la consulta
+     */
+    public void guardar(String numeroCuenta, double saldo, long versionLeida) {
+        if (!habilitada || numeroCuenta == null) {
+            return;
+        }
+        synchronized (saldos) {
+            // Se compara dentro del bloqueo: invalidar() incrementa la versión antes de quitar la entrada
+            if (versiones.get(franja(numeroCuenta)) == versionLeida) {
+                saldos.put(numeroCuenta, saldo);
+            }
+        }
+    }
+
+    /**
+     * Quita el saldo de una cuenta; se llama cuando una operación que lo cambia se confirma
+     * @param numeroCuenta Número de cuenta
+     */
+    public void invalidar(String numeroCuenta) {
+        if (numeroCuenta == null) {
+            return;
+        }
+        invalidaciones.incrementAndGet();
+        synchronized (saldos) {
+            versiones.incrementAndGet(franja(numeroCuenta));
+            saldos.remove(numeroCuenta);
+        }
+    }
+
+    /**
+     * Obtiene la cuenta asociada a un número de identificación si está en caché
+     * @param identificacion Número de identificación del cliente
+     * @return Número de cuenta o null si no está en caché
+     */
+    public String cuentaDeIdentificacion(int identificacion) {
+        if (!habilitada) {
+            return null;
+        }
+        synchronized (cuentasPorIdentificacion) {
+            return cuentasPorIdentificacion.get(identificacion);
+        }
+    }
+
+    /**
+     * Guarda la cuenta de un número de identificación (no cambia, no requiere invalidación)
+     */
+    public void guardarIdentificacion(int identificacion, String numeroCuenta) {
+        if (!habilitada || numeroCuenta == null) {
+            return;
+        }
+        synchronized (cuentasPorIdentificacion) {
+            cuentasPorIdentificacion.put(identificacion, numeroCuenta);
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de la caché
+     * @return Mapa con las estadísticas
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalAciertos = aciertos.get();
+        long total = totalAciertos + fallos.get();
+        int entradas;
+        synchronized (saldos) {
+            entradas = saldos.size();
+        }
+        estadisticas.put("habilitada", habilitada);
+        estadisticas.put("saldos", entradas);
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("aciertos", totalAciertos);
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : totalAciertos / (double) total);
+        estadisticas.put("invalidaciones", invalidaciones.get());
+        return estadisticas;
+    }
+
+    private static int franja(String numeroCuenta) {
+        return (numeroCuenta.hashCode() & 0x7fffffff) % FRANJAS_VERSION;
+    }
+
+    private static <K, V> LinkedHashMap<K, V> crearLru(int maxEntradas) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> mayor) {
+                return size() > maxEntradas;
+            }
+        };
+    }
+}
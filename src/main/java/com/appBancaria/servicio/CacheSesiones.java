@@ -0,0 +1,187 @@
+package com.appBancaria.servicio;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de sesiones activas, indexada por sessionId.
+ * Guarda los datos de identidad del cliente (sin el saldo, que cambia con cada
+ * consignación) hasta la expiración del JWT de la sesión, de modo que validar
+ * un token no requiera consultar la base de datos en cada solicitud.
+ * Al llenarse se descarta la sesión guardada hace más tiempo, que es la
+ * próxima en expirar porque todos los tokens duran lo mismo.
+ */
+public class CacheSesiones {
+    // Campos de identidad que se guardan; el saldo se excluye a propósito
+    private static final String[] CAMPOS_IDENTIDAD = {"idSesion", "nombre", "correo", "identificacion", "numeroCuenta"};
+
+    private final boolean habilitada;
+    private final int maxEntradas;
+    private final ConcurrentHashMap<String, Entrada> sesiones = new ConcurrentHashMap<>();
+    // Sesión vigente de cada correo; al iniciar sesión de nuevo se invalida la anterior
+    private final ConcurrentHashMap<String, String> sesionPorCorreo = new ConcurrentHashMap<>();
+    // Sesiones en el orden en que se guardaron, para descartar la más antigua sin recorrer la caché
+    private final ConcurrentLinkedQueue<String> orden = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger enOrden = new AtomicInteger();
+    // Se incrementa con cada inicio o cierre de sesión; permite descartar lecturas de la BD
+    // que pudieron quedar obsoletas mientras se ejecutaban
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    private static class Entrada {
+        private final Map<String, Object> identidad;
+        private final long expiraEn;
+
+        Entrada(Map<String, Object> identidad, long expiraEn) {
+            this.identidad = identidad;
+            this.expiraEn = expiraEn;
+        }
+    }
+
+    public CacheSesiones(boolean habilitada, int maxEntradas) {
+        this.habilitada = habilitada;
+        this.maxEntradas = maxEntradas;
+    }
+
+    /**
+     * Obtiene la identidad de una sesión si está en caché y no ha expirado
+     * @param idSesion ID de sesión
+     * @return Identidad del cliente (inmutable) o null si no está en caché
+     */
+    public Map<String, Object> obtener(String idSesion) {
+        if (!habilitada || idSesion == null) {
+            return null;
+        }
+        Entrada entrada = sesiones.get(idSesion);
+        if (entrada == null) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        if (entrada.expiraEn <= System.currentTimeMillis()) {
+            sesiones.remove(idSesion, entrada);
+            fallos.incrementAndGet();
+            return null;
+        }
+        aciertos.incrementAndGet();
+        return entrada.identidad;
+    }
+
+    /**
+     * Versión actual de la caché; debe leerse antes de consultar la BD y pasarse a guardar()
+     * @return Versión actual
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Guarda una sesión recién creada en el login. Invalida la sesión anterior del mismo correo.
+     * @param idSesion ID de sesión
+     * @param infoCliente Información del cliente
+     * @param expiraEn Instante (ms) en que expira el JWT de la sesión
+     * @return Identidad guardada
+     */
+    public Map<String, Object> registrarLogin(String idSesion, Map<String, Object> infoCliente, long expiraEn) {
+        version.incrementAndGet();
+        Map<String, Object> identidad = extraerIdentidad(infoCliente);
+        if (habilitada) {
+            poner(idSesion, identidad, expiraEn);
+        }
+        return identidad;
+    }
+
+    /**
+     * Guarda una sesión leída de la BD tras un fallo de caché. Si hubo inicios o
+     * cierres de sesión desde que se leyó la versión, no se guarda (la lectura
+     * podría corresponder a una sesión ya desplazada).
+     * @param idSesion ID de sesión
+     * @param infoCliente Información leída de la BD
+     * @param expiraEn Instante (ms) en que expira el JWT de la sesión
+     * @param versionLeida Versión obtenida con getVersion() antes de la consulta
+     * @return Identidad del cliente
+     */
+    public Map<String, Object> guardar(String idSesion, Map<String, Object> infoCliente, long expiraEn, long versionLeida) {
+        Map<String, Object> identidad = extraerIdentidad(infoCliente);
+        if (habilitada && version.get() == versionLeida) {
+            poner(idSesion, identidad, expiraEn);
+        }
+        return identidad;
+    }
+
+    private void poner(String idSesion, Map<String, Object> identidad, long expiraEn) {
+        if (sesiones.put(idSesion, new Entrada(identidad, expiraEn)) == null) {
+            orden.add(idSesion);
+            // Cada sesión nueva desplaza a lo sumo una, la más antigua
+            if (enOrden.incrementAndGet() > maxEntradas) {
+                String masAntigua = orden.poll();
+                if (masAntigua != null) {
+                    enOrden.decrementAndGet();
+                    descartar(masAntigua);
+                }
+            }
+        }
+        String correo = (String) identidad.get("correo");
+        if (correo != null) {
+            String anterior = sesionPorCorreo.put(correo, idSesion);
+            if (anterior != null && !anterior.equals(idSesion)) {
+                sesiones.remove(anterior);
+            }
+        }
+    }
+
+    /**
+     * Elimina una sesión de la caché (logout o desconexión)
+     * @param idSesion ID de sesión a invalidar
+     */
+    public void invalidar(String idSesion) {
+        version.incrementAndGet();
+        if (idSesion == null) {
+            return;
+        }
+        descartar(idSesion);
+    }
+
+    private void descartar(String idSesion) {
+        Entrada entrada = sesiones.remove(idSesion);
+        if (entrada != null) {
+            String correo = (String) entrada.identidad.get("correo");
+            if (correo != null) {
+                sesionPorCorreo.remove(correo, idSesion);
+            }
+        }
+    }
+
+    private static Map<String, Object> extraerIdentidad(Map<String, Object> infoCliente) {
+        Map<String, Object> identidad = new HashMap<>();
+        for (String campo : CAMPOS_IDENTIDAD) {
+            if (infoCliente.containsKey(campo)) {
+                identidad.put(campo, infoCliente.get(campo));
+            }
+        }
+        return Collections.unmodifiableMap(identidad);
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de la caché
+     * @return Mapa con las estadísticas
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalAciertos = aciertos.get();
+        long total = totalAciertos + fallos.get();
+        estadisticas.put("habilitada", habilitada);
+        estadisticas.put("sesiones", sesiones.size());
+        estadisticas.put("aciertos", totalAciertos);
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : totalAciertos / (double) total);
+        return estadisticas;
+    }
+}
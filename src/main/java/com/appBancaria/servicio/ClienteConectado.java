@@ -1,8 +1,12 @@
 package com.appBancaria.servicio;
 
+import com.appBancaria.log.Log;
+
+import java.io.IOException;
 import java.net.Socket;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Clase para almacenar información sobre clientes conectados al servidor.
@@ -10,12 +14,23 @@ import java.util.Date;
  * hora de conexión y datos de sesión.
  */
 public class ClienteConectado {
+    private static final AtomicLong siguienteIdConexion = new AtomicLong();
+
+    private final long idConexion = siguienteIdConexion.incrementAndGet();
     private final Socket socket;
     private String direccionIP;
-    private String informacionCliente;
+    private volatile String informacionCliente;
     private Date horaConexion;
-    private String idSesion;
-    private String correoUsuario;
+    private volatile String idSesion;
+    private volatile String correoUsuario;
+    // Registro que indexa este cliente por correo (null si no está registrado)
+    private GestorClientes gestorClientes;
+    // Cierre del transporte que atiende la conexión (null: basta con cerrar el socket)
+    private volatile Runnable cierre;
+    // Momento (ms) en que se recibieron datos del cliente por última vez
+    private volatile long ultimaActividad = System.currentTimeMillis();
+    // El cliente pidió recibir latidos del servidor
+    private volatile boolean latido;
     
     /**
      * Constructor que inicializa un cliente conectado con su socket.
@@ -31,6 +46,15 @@ public class ClienteConectado {
         this.correoUsuario = null;
     }
     
+    /**
+     * Obtiene el identificador de la conexión, único dentro del servidor.
+     * 
+     * @return ID de la conexión
+     */
+    public long getIdConexion() {
+        return idConexion;
+    }
+    
     /**
      * Obtiene el socket del cliente conectado.
      * 
@@ -108,8 +132,95 @@ public class ClienteConectado {
      * 
      * @param correoUsuario Nuevo correo electrónico
      */
-    public void setCorreoUsuario(String correoUsuario) {
+    public synchronized void setCorreoUsuario(String correoUsuario) {
+        String anterior = this.correoUsuario;
         this.correoUsuario = correoUsuario;
+        if (gestorClientes != null) {
+            gestorClientes.indexarCorreo(this, anterior, correoUsuario);
+        }
+    }
+    
+    /**
+     * Indexa el cliente en un registro de clientes con su correo actual.
+     * Mientras esté registrado, los cambios de correo actualizan el índice.
+     * 
+     * @param gestorClientes Registro de clientes
+     */
+    synchronized void registrarEn(GestorClientes gestorClientes) {
+        this.gestorClientes = gestorClientes;
+        gestorClientes.indexarCorreo(this, null, correoUsuario);
+    }
+    
+    /**
+     * Quita el cliente del índice del registro en el que estaba.
+     */
+    synchronized void desregistrar() {
+        if (gestorClientes != null) {
+            gestorClientes.indexarCorreo(this, correoUsuario, null);
+            gestorClientes = null;
+        }
+    }
+    
+    /**
+     * Establece cómo se cierra la conexión. Lo registra el transporte, para que
+     * un cierre forzado pase por su propio cierre y la conexión se finalice.
+     * 
+     * @param cierre Cierra la conexión; debe poder llamarse desde cualquier hilo
+     */
+    void setCierre(Runnable cierre) {
+        this.cierre = cierre;
+    }
+    
+    /**
+     * Cierra la conexión desde cualquier hilo.
+     */
+    public void cerrar() {
+        Runnable actual = cierre;
+        if (actual != null) {
+            actual.run();
+            return;
+        }
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            Log.error("Error cerrando socket: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Registra que se recibieron datos del cliente.
+     */
+    public void registrarActividad() {
+        ultimaActividad = System.currentTimeMillis();
+    }
+    
+    /**
+     * Obtiene el momento en que se recibieron datos del cliente por última vez.
+     * 
+     * @return Milisegundos desde la época
+     */
+    public long getUltimaActividad() {
+        return ultimaActividad;
+    }
+    
+    /**
+     * Indica si el cliente pidió recibir latidos del servidor.
+     * 
+     * @return true si el servidor debe enviarle latidos
+     */
+    public boolean isLatido() {
+        return latido;
+    }
+    
+    /**
+     * Establece si el cliente recibe latidos del servidor.
+     * 
+     * @param latido true para enviarle latidos
+     */
+    public void setLatido(boolean latido) {
+        this.latido = latido;
     }
     
     /**
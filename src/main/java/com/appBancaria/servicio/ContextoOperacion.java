@@ -0,0 +1,71 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.SolicitudDTO;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Datos con los que se ejecuta un {@link ManejadorOperacion}
+ */
+final class ContextoOperacion {
+    private final SolicitudDTO solicitud;
+    private final ClienteConectado clienteConectado;
+    private final Map<String, Object> tokenInfo;
+    private final Map<String, Map<String, Object>> tokensLote;
+
+    ContextoOperacion(SolicitudDTO solicitud, ClienteConectado clienteConectado,
+                      Map<String, Object> tokenInfo, Map<String, Map<String, Object>> tokensLote) {
+        this.solicitud = solicitud;
+        this.clienteConectado = clienteConectado;
+        this.tokenInfo = tokenInfo;
+        this.tokensLote = tokensLote;
+    }
+
+    public SolicitudDTO getSolicitud() {
+        return solicitud;
+    }
+
+    public ClienteConectado getClienteConectado() {
+        return clienteConectado;
+    }
+
+    /**
+     * @return Información del token validado, o null si la operación no requiere autenticación
+     */
+    public Map<String, Object> getTokenInfo() {
+        return tokenInfo;
+    }
+
+    public String getIdSesion() {
+        return tokenInfo != null ? (String) tokenInfo.get("sessionId") : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getInfoCliente() {
+        return tokenInfo != null ? (Map<String, Object>) tokenInfo.get("infoCliente") : null;
+    }
+
+    /**
+     * @return Tokens ya validados en el lote en curso, o null fuera de un lote
+     */
+    public Map<String, Map<String, Object>> getTokensLote() {
+        return tokensLote;
+    }
+
+    /**
+     * Obtiene los datos tipados de la solicitud; si no trae datos devuelve una instancia vacía
+     */
+    public <T> T getCarga(Class<T> tipo, Supplier<T> vacia) {
+        T carga = solicitud.getCarga(tipo);
+        return carga != null ? carga : vacia.get();
+    }
+
+    /**
+     * Obtiene un campo de los datos sin tipar de la solicitud
+     * @return Valor del campo, o null si la solicitud no trae datos
+     */
+    public Object getDato(String campo) {
+        return solicitud.getDatos() != null ? solicitud.getDatos().get(campo) : null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.appBancaria.servicio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Control de admisión para el procesamiento de solicitudes.
+ * Limita cuántas solicitudes se procesan a la vez y cuántas pueden esperar
+ * turno. Cuando la cola de espera está llena, o la espera supera el tiempo
+ * máximo, la solicitud se rechaza de inmediato para que el cliente reciba una
+ * respuesta rápida en lugar de aumentar la latencia de todos.
+ */
+public class ControlAdmision {
+    private final int limiteConcurrencia;
+    private final int maxCola;
+    private final long timeoutColaMs;
+    private final Semaphore permisos;
+
+    // Estadísticas
+    private final AtomicInteger enCola = new AtomicInteger();
+    private final AtomicInteger maxColaObservada = new AtomicInteger();
+    private final AtomicLong admitidas = new AtomicLong();
+    private final AtomicLong rechazadasColaLlena = new AtomicLong();
+    private final AtomicLong rechazadasTimeout = new AtomicLong();
+    private final AtomicLong esperaTotalNanos = new AtomicLong();
+
+    /**
+     * @param limiteConcurrencia Solicitudes que se procesan a la vez
+     * @param maxCola Solicitudes que pueden esperar turno
+     * @param timeoutColaMs Tiempo máximo de espera en la cola
+     */
+    public ControlAdmision(int limiteConcurrencia, int maxCola, long timeoutColaMs) {
+        this.limiteConcurrencia = Math.max(1, limiteConcurrencia);
+        this.maxCola = Math.max(0, maxCola);
+        this.timeoutColaMs = timeoutColaMs;
+        this.permisos = new Semaphore(this.limiteConcurrencia, true);
+    }
+
+    /**
+     * Intenta obtener un turno de procesamiento
+     * @return true si la solicitud fue admitida (debe llamarse a liberar() al terminar),
+     *         false si fue rechazada por saturación
+     */
+    public boolean adquirir() {
+        if (permisos.tryAcquire()) {
+            admitidas.incrementAndGet();
+            return true;
+        }
+
+        int profundidad = enCola.incrementAndGet();
+        if (profundidad > maxCola) {
+            enCola.decrementAndGet();
+            rechazadasColaLlena.incrementAndGet();
+            return false;
+        }
+        maxColaObservada.accumulateAndGet(profundidad, Math::max);
+
+        long inicio = System.nanoTime();
+        try {
+            if (permisos.tryAcquire(timeoutColaMs, TimeUnit.MILLISECONDS)) {
+                esperaTotalNanos.addAndGet(System.nanoTime() - inicio);
+                admitidas.incrementAndGet();
+                return true;
+            }
+            rechazadasTimeout.incrementAndGet();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rechazadasTimeout.incrementAndGet();
+            return false;
+        } finally {
+            enCola.decrementAndGet();
+        }
+    }
+
+    /**
+     * Intenta obtener un turno adicional sin esperar, para trabajo que una
+     * solicitud ya admitida quiere hacer en paralelo (operaciones de un lote)
+     * @return true si se obtuvo (debe llamarse a liberar() al terminar)
+     */
+    public boolean intentarAdquirir() {
+        return permisos.tryAcquire();
+    }
+
+    /**
+     * Libera el turno obtenido con adquirir() o intentarAdquirir()
+     */
+    public void liberar() {
+        permisos.release();
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de admisión
+     * @return Mapa con las estadísticas
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long totalAdmitidas = admitidas.get();
+        estadisticas.put("limiteConcurrencia", limiteConcurrencia);
+        estadisticas.put("enEjecucion", limiteConcurrencia - permisos.availablePermits());
+        estadisticas.put("enCola", enCola.get());
+        estadisticas.put("maxCola", maxCola);
+        estadisticas.put("maxColaObservada", maxColaObservada.get());
+        estadisticas.put("admitidas", totalAdmitidas);
+        estadisticas.put("rechazadas", rechazadasColaLlena.get() + rechazadasTimeout.get());
+        estadisticas.put("rechazadasColaLlena", rechazadasColaLlena.get());
+        estadisticas.put("rechazadasTimeout", rechazadasTimeout.get());
+        estadisticas.put("esperaPromedioMs", totalAdmitidas == 0 ? 0.0 :
+                esperaTotalNanos.get() / (double) totalAdmitidas / 1_000_000.0);
+        return estadisticas;
+    }
+}
@@ -0,0 +1,377 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.db.DBConexion;
+import com.appBancaria.log.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cuentas calientes: cuentas de destino que reciben muchas consignaciones a
+ * la vez (nómina, comercios). Actualizar su saldo en cada consignación haría
+ * que todas esperaran el bloqueo de la misma fila de "cuentas".
+ * Para estas cuentas la consignación registra el movimiento en "transacciones"
+ * y, en la misma sentencia, el monto pendiente en "cuentas_delta" (inserciones
+ * que no compiten por ninguna fila). Además suma el monto a un acumulador en
+ * memoria repartido en franjas (cada hilo usa la suya, así no compiten por el
+ * mismo contador) para responder el saldo sin consultar la base de datos.
+ * Un hilo en segundo plano pasa periódicamente los pendientes al saldo de la
+ * tabla: una sola sentencia por cuenta borra las filas de "cuentas_delta" que
+ * consume y suma sus montos, así que repetir una pasada cuya respuesta se
+ * perdió no suma dos veces.
+ *
+ * El saldo consultado es exacto: es el último saldo leído de la base de datos
+ * más lo acumulado que aún no se ha pasado a la tabla.
+ * Si el servidor se cae entre dos pasadas, los pendientes quedan en
+ * "cuentas_delta" y se pasan al saldo al iniciar (al usar la primera cuenta
+ * caliente). Las filas de consignaciones cuya respuesta se perdió (no llegaron
+ * al acumulador) se pasan al saldo cuando tienen más de un minuto.
+ * Supone un solo servidor con cuentas calientes sobre la misma base de datos.
+ *
+ * Los montos se acumulan en centavos.
+ */
+final class CuentasCalientes {
+    // Posiciones del arreglo entre una franja y la siguiente (64 bytes), para que
+    // dos franjas no compartan línea de caché
+    private static final int SEPARACION_FRANJAS = 8;
+    // Antigüedad a partir de la cual una fila de cuentas_delta que no llegó al acumulador se pasa al saldo
+    private static final int SEGUNDOS_HUERFANAS = 60;
+
+    private static final String CREAR_TABLA =
+            "CREATE TABLE IF NOT EXISTS cuentas_delta (" +
+            "    id BIGSERIAL PRIMARY KEY," +
+            "    cuenta_id INTEGER NOT NULL REFERENCES cuentas(id)," +
+            "    monto NUMERIC(15, 2) NOT NULL," +
+            "    creado TIMESTAMP NOT NULL DEFAULT now()" +
+            ")";
+    // Pendientes que quedaron de una ejecución anterior (caída entre pasadas)
+    private static final String PASAR_PENDIENTES_ANTERIORES =
+            "WITH consumidos AS (DELETE FROM cuentas_delta RETURNING cuenta_id, monto), " +
+            "totales AS (SELECT cuenta_id, SUM(monto) AS total FROM consumidos GROUP BY cuenta_id) " +
+            "UPDATE cuentas c SET saldo = c.saldo + t.total FROM totales t WHERE c.id = t.cuenta_id";
+    // Consume las filas acumuladas (por id) y las huérfanas antiguas de la cuenta y las suma al saldo
+    private static final String PASAR_PENDIENTES =
+            "WITH consumidos AS (" +
+            "    DELETE FROM cuentas_delta WHERE id = ANY(?) " +
+            "    OR (cuenta_id = ? AND creado < now() - make_interval(secs => ?)) RETURNING monto" +
+            ") " +
+            "UPDATE cuentas SET saldo = saldo + COALESCE((SELECT SUM(monto) FROM consumidos), 0) " +
+            "WHERE id = ? RETURNING saldo";
+
+    private final Set<String> numerosCuenta;
+    private final long intervaloMs;
+    private final int franjas;
+    private final ConcurrentHashMap<String, Cuenta> cuentas = new ConcurrentHashMap<>();
+    private final Thread hilo;
+    private volatile boolean activa = true;
+    // Solo un hilo prepara la tabla de deltas
+    private final ReentrantLock bloqueoPreparacion = new ReentrantLock();
+    private volatile boolean tablaPreparada;
+
+    // Estadísticas
+    private final AtomicLong pasadas = new AtomicLong();
+    private final AtomicLong pasadasFallidas = new AtomicLong();
+
+    /**
+     * @param numerosCuenta Números de cuenta calientes (vacío = deshabilitado)
+     * @param intervaloMs Cada cuánto se pasa lo acumulado al saldo de la tabla
+     */
+    CuentasCalientes(Set<String> numerosCuenta, long intervaloMs) {
+        this.numerosCuenta = Collections.unmodifiableSet(new LinkedHashSet<>(numerosCuenta));
+        this.intervaloMs = Math.max(10, intervaloMs);
+        this.franjas = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+        if (this.numerosCuenta.isEmpty()) {
+            hilo = null;
+        } else {
+            hilo = new Thread(this::pasarPeriodicamente, "cuentas-calientes");
+            hilo.setDaemon(true);
+            hilo.start();
+            Log.info("Cuentas calientes: " + this.numerosCuenta);
+        }
+    }
+
+    /**
+     * Lee la lista de cuentas calientes de la configuración ("123,456")
+     */
+    static Set<String> leerNumeros(String valor) {
+        Set<String> numeros = new LinkedHashSet<>();
+        if (valor != null) {
+            for (String numero : valor.split(",")) {
+                if (!numero.trim().isEmpty()) {
+                    numeros.add(numero.trim());
+                }
+            }
+        }
+        return numeros;
+    }
+
+    boolean esCaliente(String numeroCuenta) {
+        return numeroCuenta != null && numerosCuenta.contains(numeroCuenta);
+    }
+
+    /**
+     * Obtiene el estado en memoria de una cuenta caliente, cargándolo si es la primera vez
+     * @return Cuenta, o null si no existe en la base de datos
+     */
+    Cuenta obtener(String numeroCuenta) throws SQLException {
+        Cuenta cuenta = cuentas.get(numeroCuenta);
+        if (cuenta != null) {
+            return cuenta;
+        }
+        String query = "SELECT id, saldo FROM cuentas WHERE numero_cuenta = ?";
+        try (Connection conn = DBConexion.getInstance().getConnection()) {
+            if (!tablaPreparada) {
+                prepararTabla(conn);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, numeroCuenta);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Cuenta nueva = new Cuenta(numeroCuenta, rs.getInt("id"), rs.getDouble("saldo"));
+                    // Si otro hilo la cargó a la vez se usa la suya, que puede tener montos acumulados
+                    Cuenta existente = cuentas.putIfAbsent(numeroCuenta, nueva);
+                    return existente != null ? existente : nueva;
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea cuentas_delta si no existe y pasa al saldo los pendientes de una
+     * ejecución anterior. Se hace en la conexión de quien carga la primera
+     * cuenta caliente, antes de que se pueda registrar cualquier consignación.
+     */
+    private void prepararTabla(Connection conn) throws SQLException {
+        bloqueoPreparacion.lock();
+        try {
+            if (tablaPreparada) {
+                return;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREAR_TABLA);
+                int cuentasActualizadas = stmt.executeUpdate(PASAR_PENDIENTES_ANTERIORES);
+                if (cuentasActualizadas > 0) {
+                    Log.advertencia("Se pasaron al saldo consignaciones pendientes de una ejecución anterior en "
+                            + cuentasActualizadas + " cuentas calientes");
+                }
+            }
+            tablaPreparada = true;
+        } finally {
+            bloqueoPreparacion.unlock();
+        }
+    }
+
+    /**
+     * Pasa lo acumulado de todas las cuentas al saldo de la tabla
+     */
+    void pasarAcumulado() {
+        // Aproximadamente una vez por minuto se pasa también cada cuenta sin pendientes,
+        // para recoger las filas huérfanas
+        long pasadasPorMinuto = Math.max(1, SEGUNDOS_HUERFANAS * 1000L / intervaloMs);
+        boolean revisarHuerfanas = pasadas.get() % pasadasPorMinuto == 0;
+        for (Cuenta cuenta : cuentas.values()) {
+            try {
+                cuenta.pasarAcumulado(revisarHuerfanas);
+            } catch (SQLException e) {
+                pasadasFallidas.incrementAndGet();
+                Log.error("Error al actualizar el saldo de la cuenta caliente " + cuenta.numeroCuenta
+                        + ": " + e.getMessage());
+            }
+        }
+        pasadas.incrementAndGet();
+    }
+
+    /**
+     * Detiene el hilo y pasa al saldo lo que quede acumulado
+     */
+    void detener() {
+        if (hilo == null || !activa) {
+            return;
+        }
+        activa = false;
+        hilo.interrupt();
+        try {
+            hilo.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Los pendientes ya están en cuentas_delta; esta última pasada solo evita
+        // dejarlos para el próximo inicio
+        pasarAcumulado();
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de las cuentas calientes
+     * @return Mapa con las pasadas y, por cuenta, el saldo y lo pendiente de pasar
+     */
+    Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("cuentas", numerosCuenta.size());
+        estadisticas.put("intervaloMs", intervaloMs);
+        estadisticas.put("pasadas", pasadas.get());
+        estadisticas.put("pasadasFallidas", pasadasFallidas.get());
+        for (Cuenta cuenta : cuentas.values()) {
+            Map<String, Object> datos = new LinkedHashMap<>();
+            datos.put("saldo", cuenta.saldo());
+            datos.put("pendiente", cuenta.pendienteCentavos() / 100.0);
+            datos.put("consignaciones", cuenta.consignaciones.get());
+            estadisticas.put(cuenta.numeroCuenta, datos);
+        }
+        return estadisticas;
+    }
+
+    private void pasarPeriodicamente() {
+        while (activa) {
+            try {
+                Thread.sleep(intervaloMs);
+            } catch (InterruptedException e) {
+                if (!activa) {
+                    return;
+                }
+            }
+            pasarAcumulado();
+        }
+    }
+
+    static long aCentavos(double monto) {
+        return Math.round(monto * 100);
+    }
+
+    /**
+     * Estado en memoria de una cuenta caliente.
+     * "version" funciona como un seqlock: es impar mientras se mueven montos
+     * entre el acumulador y el saldo base, y quien lee el saldo reintenta si
+     * cambió durante la lectura. Así las consultas y consignaciones nunca
+     * esperan al UPDATE de la pasada.
+     * Cada monto acumulado va con el id de su fila en cuentas_delta, que es lo
+     * que consume la pasada.
+     */
+    final class Cuenta {
+        final String numeroCuenta;
+        final int id;
+        private final AtomicLongArray acumulado = new AtomicLongArray(franjas * SEPARACION_FRANJAS);
+        private final ReentrantLock bloqueoPasada = new ReentrantLock();
+        private final AtomicLong consignaciones = new AtomicLong();
+        // Filas de cuentas_delta acumuladas y aún no tomadas por una pasada: {id, centavos}
+        private final ConcurrentLinkedQueue<long[]> porPasar = new ConcurrentLinkedQueue<>();
+        // Filas tomadas por una pasada que aún no se confirma; solo con bloqueoPasada
+        private final List<Long> idsEnVuelo = new ArrayList<>();
+        // Solo se modifican con bloqueoPasada y la versión impar
+        private volatile long saldoBaseCentavos;
+        private volatile long enVueloCentavos;
+        private volatile long version;
+
+        private Cuenta(String numeroCuenta, int id, double saldo) {
+            this.numeroCuenta = numeroCuenta;
+            this.id = id;
+            this.saldoBaseCentavos = aCentavos(saldo);
+        }
+
+        /**
+         * Suma un monto a la cuenta
+         * @param idDelta Id de la fila de cuentas_delta ya confirmada para este monto
+         * @return Saldo de la cuenta justo después de sumar el monto
+         */
+        double acumular(long idDelta, long centavos) {
+            int franja = (int) (Thread.currentThread().getId() & (franjas - 1));
+            // Primero el acumulador: una pasada solo descuenta de él montos que ya sumó
+            acumulado.addAndGet(franja * SEPARACION_FRANJAS, centavos);
+            porPasar.add(new long[] {idDelta, centavos});
+            consignaciones.incrementAndGet();
+            return saldo();
+        }
+
+        /**
+         * @return Saldo exacto: saldo de la tabla más lo acumulado pendiente
+         */
+        double saldo() {
+            while (true) {
+                long antes = version;
+                if ((antes & 1) == 0) {
+                    long total = saldoBaseCentavos + enVueloCentavos + sumarAcumulado();
+                    if (version == antes) {
+                        return total / 100.0;
+                    }
+                }
+                Thread.yield();
+            }
+        }
+
+        long pendienteCentavos() {
+            return enVueloCentavos + sumarAcumulado();
+        }
+
+        private long sumarAcumulado() {
+            long suma = 0;
+            for (int i = 0; i < franjas; i++) {
+                suma += acumulado.get(i * SEPARACION_FRANJAS);
+            }
+            return suma;
+        }
+
+        /**
+         * Pasa lo acumulado al saldo de la tabla. Si la sentencia falla, las
+         * filas quedan "en vuelo" y se incluyen en la siguiente pasada; como se
+         * consumen por id, si sí se aplicó no se suman otra vez.
+         * @param revisarHuerfanas Ejecutar la sentencia aunque no haya acumulado, para recoger filas huérfanas
+         */
+        private void pasarAcumulado(boolean revisarHuerfanas) throws SQLException {
+            bloqueoPasada.lock();
+            try {
+                long tomados = 0;
+                long[] fila;
+                while ((fila = porPasar.poll()) != null) {
+                    idsEnVuelo.add(fila[0]);
+                    tomados += fila[1];
+                }
+                version++;
+                acumulado.addAndGet(0, -tomados);
+                enVueloCentavos += tomados;
+                version++;
+                if (idsEnVuelo.isEmpty() && !revisarHuerfanas) {
+                    return;
+                }
+
+                double saldoNuevo;
+                try (Connection conn = DBConexion.getInstance().getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(PASAR_PENDIENTES)) {
+                    stmt.setArray(1, conn.createArrayOf("bigint", idsEnVuelo.toArray()));
+                    stmt.setInt(2, id);
+                    stmt.setInt(3, SEGUNDOS_HUERFANAS);
+                    stmt.setInt(4, id);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("La cuenta caliente " + numeroCuenta + " ya no existe");
+                        }
+                        saldoNuevo = rs.getDouble("saldo");
+                    }
+                }
+
+                version++;
+                saldoBaseCentavos = aCentavos(saldoNuevo);
+                enVueloCentavos = 0;
+                version++;
+                idsEnVuelo.clear();
+            } finally {
+                bloqueoPasada.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.RespuestaDTO;
+import com.appBancaria.dto.SolicitudDTO;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reparte las solicitudes de una conexión respetando el orden solo donde hace falta.
+ * - Las solicitudes sin idSolicitud, y las operaciones que modifican estado
+ *   (login, logout, consignaciones, registro), se procesan en orden y de a una:
+ *   esperan a que terminen las anteriores y las posteriores esperan por ellas.
+ * - Las operaciones de solo lectura que traen idSolicitud pueden procesarse
+ *   en paralelo y responderse en cualquier orden; el cliente las asocia por su id.
+ * Sin idSolicitud el comportamiento es idéntico al protocolo original.
+ */
+class DespachadorConexion {
+    // Solicitudes de solo lectura de una misma conexión que se procesan a la vez
+    private static final int MAX_CONCURRENTES = 8;
+    // Solicitudes encoladas o en curso a partir de las cuales la conexión se considera congestionada
+    private static final int MAX_PENDIENTES = 32;
+
+    /**
+     * Serializa y escribe una respuesta hacia el cliente, en el protocolo de la conexión
+     */
+    interface Respondedor {
+        /**
+         * @param solicitud Solicitud respondida (null si no se pudo interpretar)
+         * @param respuesta Respuesta a enviar
+         */
+        void responder(SolicitudDTO solicitud, RespuestaDTO respuesta);
+    }
+
+    private static class Item {
+        private final SolicitudDTO solicitud;
+        // Respuesta ya calculada (por ejemplo, error de formato)
+        private final RespuestaDTO respuestaInmediata;
+        private final boolean secuencial;
+
+        Item(SolicitudDTO solicitud, RespuestaDTO respuestaInmediata, boolean secuencial) {
+            this.solicitud = solicitud;
+            this.respuestaInmediata = respuestaInmediata;
+            this.secuencial = secuencial;
+        }
+    }
+
+    private final Servidor servidor;
+    private final ClienteConectado cliente;
+    private final Executor ejecutor;
+    private final Respondedor respondedor;
+    // Si las solicitudes secuenciales pueden ejecutarse en el hilo que las recibe
+    private final boolean ejecutarEnLinea;
+    private Runnable alDescongestionar;
+
+    // Estado protegido por bloqueo
+    private final ReentrantLock bloqueo = new ReentrantLock();
+    private final Condition descongestionada = bloqueo.newCondition();
+    private final ArrayDeque<Item> cola = new ArrayDeque<>();
+    private int enCurso = 0;
+    private boolean secuencialEnCurso = false;
+    private boolean congestionado = false;
+
+    DespachadorConexion(Servidor servidor, ClienteConectado cliente, Executor ejecutor,
+                        Respondedor respondedor, boolean ejecutarEnLinea) {
+        this.servidor = servidor;
+        this.cliente = cliente;
+        this.ejecutor = ejecutor;
+        this.respondedor = respondedor;
+        this.ejecutarEnLinea = ejecutarEnLinea;
+    }
+
+    /**
+     * Acción a ejecutar cuando una conexión congestionada vuelve a aceptar solicitudes
+     */
+    void setAlDescongestionar(Runnable alDescongestionar) {
+        this.alDescongestionar = alDescongestionar;
+    }
+
+    /**
+     * Recibe una línea JSON de la conexión y la programa para su procesamiento
+     * @param linea Solicitud recibida
+     * @return true si la conexión quedó congestionada y conviene dejar de leer
+     */
+    boolean recibir(String linea) {
+        return recibir(crearItem(linea));
+    }
+
+    /**
+     * Recibe una solicitud ya decodificada (protocolo binario) y la programa para su procesamiento
+     * @param solicitud Solicitud recibida
+     * @return true si la conexión quedó congestionada y conviene dejar de leer
+     */
+    boolean recibir(SolicitudDTO solicitud) {
+        return recibir(crearItem(solicitud));
+    }
+
+    /**
+     * Recibe una trama binaria que no se pudo decodificar y responde el error en orden
+     * @param mensaje Descripción del error
+     * @return true si la conexión quedó congestionada y conviene dejar de leer
+     */
+    boolean recibirInvalida(String mensaje) {
+        return recibir(new Item(null, servidor.respuestaError(400, mensaje, null), true));
+    }
+
+    private boolean recibir(Item item) {
+        Item enLinea = null;
+        List<Item> iniciar;
+        boolean resultado;
+
+        bloqueo.lock();
+        try {
+            if (ejecutarEnLinea && item.secuencial && cola.isEmpty() && enCurso == 0) {
+                enCurso++;
+                secuencialEnCurso = true;
+                enLinea = item;
+                iniciar = Collections.emptyList();
+            } else {
+                cola.add(item);
+                iniciar = tomarIniciables();
+            }
+            if (cola.size() + enCurso >= MAX_PENDIENTES) {
+                congestionado = true;
+            }
+            resultado = congestionado;
+        } finally {
+            bloqueo.unlock();
+        }
+
+        lanzar(iniciar);
+        if (enLinea != null) {
+            ejecutar(enLinea);
+        }
+        return resultado;
+    }
+
+    /**
+     * Bloquea el hilo que llama hasta que la conexión deja de estar congestionada
+     * @throws InterruptedException si el hilo es interrumpido
+     */
+    void esperarDescongestion() throws InterruptedException {
+        bloqueo.lock();
+        try {
+            while (congestionado) {
+                descongestionada.await();
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private Item crearItem(String linea) {
+        SolicitudDTO solicitud;
+        try {
+            solicitud = servidor.parsearSolicitud(linea, cliente);
+        } catch (RuntimeException e) {
+            return new Item(null, servidor.respuestaError(500, "Error interno del servidor: " + e.getMessage(), null), true);
+        }
+        return crearItem(solicitud);
+    }
+
+    private Item crearItem(SolicitudDTO solicitud) {
+        if (solicitud == null || solicitud.getTipoOperacion() == null) {
+            return new Item(null, servidor.respuestaError(400, "Invalid request format",
+                    solicitud != null ? solicitud.getIdSolicitud() : null), true);
+        }
+        return new Item(solicitud, null, servidor.requiereOrden(solicitud));
+    }
+
+    /**
+     * Saca de la cola las solicitudes que ya pueden empezar. Debe llamarse con el bloqueo tomado.
+     */
+    private List<Item> tomarIniciables() {
+        List<Item> iniciables = null;
+        while (!cola.isEmpty() && !secuencialEnCurso) {
+            Item siguiente = cola.peek();
+            if (siguiente.secuencial) {
+                if (enCurso > 0) {
+                    break;
+                }
+                secuencialEnCurso = true;
+            } else if (enCurso >= MAX_CONCURRENTES) {
+                break;
+            }
+            cola.poll();
+            enCurso++;
+            if (iniciables == null) {
+                iniciables = new ArrayList<>(2);
+            }
+            iniciables.add(siguiente);
+        }
+        return iniciables != null ? iniciables : Collections.<Item>emptyList();
+    }
+
+    private void lanzar(List<Item> items) {
+        for (Item item : items) {
+            try {
+                ejecutor.execute(() -> ejecutar(item));
+            } catch (RejectedExecutionException e) {
+                // El servidor se está deteniendo; la solicitud se descarta
+                terminar(item);
+            }
+        }
+    }
+
+    private void ejecutar(Item item) {
+        try {
+            RespuestaDTO respuesta = item.respuestaInmediata != null
+                    ? item.respuestaInmediata
+                    : servidor.atenderSolicitud(item.solicitud, cliente);
+            respondedor.responder(item.solicitud, respuesta);
+        } finally {
+            terminar(item);
+        }
+    }
+
+    private void terminar(Item item) {
+        List<Item> iniciar;
+        boolean descongestionar = false;
+        bloqueo.lock();
+        try {
+            enCurso--;
+            if (item.secuencial) {
+                secuencialEnCurso = false;
+            }
+            iniciar = tomarIniciables();
+            if (congestionado && cola.size() + enCurso < MAX_PENDIENTES / 2) {
+                congestionado = false;
+                descongestionar = true;
+                descongestionada.signalAll();
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+        lanzar(iniciar);
+        if (descongestionar && alDescongestionar != null) {
+            alDescongestionar.run();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.log.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fábrica de ejecutores para atender conexiones de clientes.
+ * Soporta dos modos:
+ * - "plataforma": un hilo del sistema operativo por tarea (comportamiento original)
+ * - "virtual": un hilo virtual por tarea (requiere Java 21 o superior)
+ * Los hilos virtuales se obtienen por reflexión para que el proyecto siga
+ * compilando con versiones anteriores de Java; si no están disponibles se usa
+ * el modo plataforma.
+ * Como las tareas pueden correr en hilos virtuales, el código que espera o hace
+ * I/O mientras tiene un bloqueo usa ReentrantLock en lugar de synchronized: en
+ * Java 21 un hilo virtual que se bloquea dentro de synchronized queda fijado a
+ * su hilo portador y lo deja sin poder atender otras tareas.
+ */
+public final class Ejecutores {
+    public static final String MODO_PLATAFORMA = "plataforma";
+    public static final String MODO_VIRTUAL = "virtual";
+
+    private Ejecutores() {
+    }
+
+    /**
+     * Crea un ejecutor que lanza un hilo nuevo por cada tarea
+     * @param modo Modo de ejecución ("plataforma" o "virtual")
+     * @param prefijoNombre Prefijo para el nombre de los hilos
+     * @return Ejecutor creado
+     */
+    public static ExecutorService hiloPorTarea(String modo, String prefijoNombre) {
+        if (MODO_VIRTUAL.equalsIgnoreCase(modo)) {
+            ExecutorService virtual = crearEjecutorVirtual(prefijoNombre);
+            if (virtual != null) {
+                return virtual;
+            }
+            Log.advertencia("Los hilos virtuales requieren Java 21 o superior (versión actual: " +
+                    System.getProperty("java.version") + "). Usando hilos de plataforma");
+        }
+        return Executors.newCachedThreadPool(fabricaPlataforma(prefijoNombre, false));
+    }
+
+    /**
+     * Crea un ejecutor para tareas cortas. En modo virtual cada tarea obtiene su
+     * propio hilo virtual; en modo plataforma se usa un pool fijo de hilos daemon.
+     * @param modo Modo de ejecución ("plataforma" o "virtual")
+     * @param hilos Tamaño del pool en modo plataforma
+     * @param prefijoNombre Prefijo para el nombre de los hilos
+     * @return Ejecutor creado
+     */
+    public static ExecutorService trabajadores(String modo, int hilos, String prefijoNombre) {
+        if (MODO_VIRTUAL.equalsIgnoreCase(modo)) {
+            ExecutorService virtual = crearEjecutorVirtual(prefijoNombre);
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, hilos), fabricaPlataforma(prefijoNombre, true));
+    }
+
+    /**
+     * Indica si el modo solicitado se resolverá con hilos virtuales en esta JVM
+     * @param modo Modo de ejecución configurado
+     * @return true si se usarán hilos virtuales
+     */
+    public static boolean usaHilosVirtuales(String modo) {
+        return MODO_VIRTUAL.equalsIgnoreCase(modo) && fabricaVirtual("prueba-") != null;
+    }
+
+    /**
+     * Crea una fábrica de hilos de plataforma con nombre secuencial
+     * @param prefijoNombre Prefijo del nombre de cada hilo
+     * @param daemon Si los hilos deben ser daemon
+     * @return Fábrica de hilos
+     */
+    public static ThreadFactory fabricaPlataforma(String prefijoNombre, boolean daemon) {
+        AtomicInteger contador = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefijoNombre + contador.incrementAndGet());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+
+    private static ExecutorService crearEjecutorVirtual(String prefijoNombre) {
+        ThreadFactory fabrica = fabricaVirtual(prefijoNombre);
+        if (fabrica == null) {
+            return null;
+        }
+        try {
+            Method nuevoEjecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) nuevoEjecutor.invoke(null, fabrica);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Equivale a Thread.ofVirtual().name(prefijo, 1).factory() en Java 21
+     */
+    private static ThreadFactory fabricaVirtual(String prefijoNombre) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> tipoBuilder = Class.forName("java.lang.Thread$Builder");
+            builder = tipoBuilder.getMethod("name", String.class, long.class).invoke(builder, prefijoNombre, 1L);
+            return (ThreadFactory) tipoBuilder.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
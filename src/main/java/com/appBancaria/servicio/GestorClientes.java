@@ -1,36 +1,35 @@
 package com.appBancaria.servicio;
 
+import com.appBancaria.log.Log;
+
 import java.io.IOException;
 import java.net.Socket;
-import java.sql.SQLException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Clase que gestiona la lista de clientes conectados al servidor.
+ * Los clientes se indexan por ID de conexión y por correo del usuario, así que
+ * agregar, quitar o buscar un cliente no copia la lista de conectados. El
+ * índice por ID mantiene el orden de conexión, de modo que la instantánea
+ * para la interfaz no necesita ordenarse.
  */
 public class GestorClientes {
-    private final List<ClienteConectado> clientesConectados = new CopyOnWriteArrayList<>();
-    private final GestorCuentas gestorCuentas;
-    private boolean running = true;
-    
-    /**
-     * Constructor para GestorClientes
-     */
-    public GestorClientes(GestorCuentas gestorCuentas) {
-        this.gestorCuentas = gestorCuentas;
-    }
+    private final ConcurrentSkipListMap<Long, ClienteConectado> clientesPorId = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Set<ClienteConectado>> clientesPorCorreo = new ConcurrentHashMap<>();
     
     /**
      * Agrega un cliente a la lista de clientes conectados
      * @param clienteConectado El cliente a agregar
      */
     public void agregarCliente(ClienteConectado clienteConectado) {
-        clientesConectados.add(clienteConectado);
+        clientesPorId.put(clienteConectado.getIdConexion(), clienteConectado);
+        clienteConectado.registrarEn(this);
     }
     
     /**
@@ -38,86 +37,92 @@ public class GestorClientes {
      * @param clienteConectado El cliente a eliminar
      */
     public void removerCliente(ClienteConectado clienteConectado) {
-        clientesConectados.remove(clienteConectado);
+        if (clientesPorId.remove(clienteConectado.getIdConexion(), clienteConectado)) {
+            clienteConectado.desregistrar();
+        }
     }
     
     /**
      * Obtiene la lista de clientes conectados
-     * @return Lista de clientes conectados
+     * @return Copia de la lista de clientes conectados, en orden de conexión
      */
     public List<ClienteConectado> getClientesConectados() {
-        // Primero verificar las conexiones activas antes de devolver la lista
-        verificarClientes();
-        return new ArrayList<>(clientesConectados);
+        return new ArrayList<>(clientesPorId.values());
     }
     
     /**
-     * Verifica si hay clientes que ya no están conectados y los elimina
+     * @return Número de clientes conectados
      */
-    public void verificarClientes() {
-        // Usar Iterator para evitar ConcurrentModificationException
-        Iterator<ClienteConectado> iterator = clientesConectados.iterator();
-        while (iterator.hasNext()) {
-            ClienteConectado cliente = iterator.next();
-            Socket socket = cliente.getSocket();
-            
-            // Verificar si el socket está cerrado o no está conectado
-            if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown()) {
-                log("Detectado cliente desconectado durante verificación: " + cliente.getDireccionIP());
-                
-                // Verificar si el cliente tenía una sesión activa
-                if (cliente.isSesionActiva() && cliente.getCorreoUsuario() != null && cliente.getIdSesion() != null) {
-                    try {
-                        // Cerrar la sesión en la base de datos
-                        log("Cerrando sesión de usuario desconectado: " + cliente.getCorreoUsuario());
-                        gestorCuentas.cerrarSesion(cliente.getCorreoUsuario(), cliente.getIdSesion());
-                        log("Sesión cerrada exitosamente para: " + cliente.getCorreoUsuario());
-                    } catch (SQLException e) {
-                        logError("Error al cerrar sesión de cliente desconectado: " + e.getMessage());
-                    }
-                }
-                
-                clientesConectados.remove(cliente);
-                log("Cliente removido de la lista en verificarClientes: " + cliente.getDireccionIP());
-                try {
-                    if (!socket.isClosed()) {
-                        socket.close();
-                    }
-                } catch (IOException e) {
-                    logError("Error cerrando socket: " + e.getMessage());
-                }
-            }
-        }
+    public int getNumeroClientes() {
+        return clientesPorId.size();
     }
     
     /**
-     * Inicia el verificador de clientes que ejecuta verificarClientes periódicamente
+     * Busca un cliente por su ID de conexión
+     * @return Cliente, o null si no está conectado
      */
-    public void iniciarVerificadorClientes() {
-        Thread verificador = new Thread(() -> {
-            while (running) {
-                try {
-                    // Verificar cada 5 segundos
-                    Thread.sleep(5000);
-                    verificarClientes();
-                } catch (InterruptedException e) {
-                    if (running) {
-                        logError("Verificador de clientes interrumpido: " + e.getMessage());
-                    }
-                    break;
-                }
+    public ClienteConectado buscarPorIdConexion(long idConexion) {
+        return clientesPorId.get(idConexion);
+    }
+    
+    /**
+     * Obtiene todas las conexiones de un usuario
+     * @param correo Correo del usuario
+     * @return Copia de la lista de conexiones del usuario (vacía si no tiene)
+     */
+    public List<ClienteConectado> getClientesDeUsuario(String correo) {
+        Set<ClienteConectado> clientes = correo != null ? clientesPorCorreo.get(clave(correo)) : null;
+        return clientes != null ? new ArrayList<>(clientes) : Collections.<ClienteConectado>emptyList();
+    }
+    
+    /**
+     * Cierra las conexiones de un usuario cuya sesión fue reemplazada por un
+     * nuevo login (cierre de sesión forzado). Cada conexión se cierra con el
+     * cierre de su transporte, que la finaliza y la quita del registro.
+     * @param correo Correo del usuario
+     * @param actual Conexión que inició la sesión nueva; no se cierra
+     * @return Número de conexiones cerradas
+     */
+    public int cerrarSesionesDesplazadas(String correo, ClienteConectado actual) {
+        int cerradas = 0;
+        for (ClienteConectado cliente : getClientesDeUsuario(correo)) {
+            if (cliente == actual || !cliente.isSesionActiva()) {
+                continue;
             }
-        });
-        verificador.setDaemon(true);
-        verificador.start();
-        log("Verificador de clientes iniciado correctamente");
+            // Su sesión ya no existe en la BD: al finalizar la conexión no hay que cerrarla
+            cliente.setIdSesion(null);
+            cliente.setInformacionCliente("Cliente sin identificar (sesión iniciada en otra conexión)");
+            cliente.cerrar();
+            cerradas++;
+        }
+        if (cerradas > 0) {
+            Log.info("Se cerraron " + cerradas + " conexiones con la sesión anterior del usuario " + correo);
+        }
+        return cerradas;
     }
     
     /**
-     * Detiene el verificador de clientes y cierra todas las conexiones
+     * Actualiza el índice por correo cuando cambia el usuario de un cliente registrado
      */
-    public void detenerVerificador() {
-        running = false;
+    void indexarCorreo(ClienteConectado cliente, String anterior, String nuevo) {
+        if (anterior != null) {
+            // Quitar el conjunto del mapa cuando queda vacío
+            clientesPorCorreo.computeIfPresent(clave(anterior), (correo, clientes) -> {
+                clientes.remove(cliente);
+                return clientes.isEmpty() ? null : clientes;
+            });
+        }
+        if (nuevo != null) {
+            clientesPorCorreo.compute(clave(nuevo), (correo, clientes) -> {
+                Set<ClienteConectado> conjunto = clientes != null ? clientes : ConcurrentHashMap.newKeySet();
+                conjunto.add(cliente);
+                return conjunto;
+            });
+        }
+    }
+    
+    private static String clave(String correo) {
+        return correo.toLowerCase(Locale.ROOT);
     }
     
     /**
@@ -127,7 +132,7 @@ public class GestorClientes {
     public int cerrarTodasLasConexiones() {
         int sesionesTotales = 0;
         
-        for (ClienteConectado cliente : clientesConectados) {
+        for (ClienteConectado cliente : clientesPorId.values()) {
             sesionesTotales++;
             
             // Cerrar el socket del cliente
@@ -137,22 +142,13 @@ public class GestorClientes {
                     socket.close();
                 }
             } catch (IOException e) {
-                logError("Error al cerrar socket de cliente durante apagado: " + e.getMessage());
+                Log.error("Error al cerrar socket de cliente durante apagado: " + e.getMessage());
             }
         }
         
-        clientesConectados.clear();
+        for (ClienteConectado cliente : clientesPorId.values()) {
+            removerCliente(cliente);
+        }
         return sesionesTotales;
     }
-    
-    // Helper methods for logging with timestamps
-    private void log(String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        System.out.println("[" + sdf.format(new Date()) + "] " + message);
-    }
-    
-    private void logError(String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        System.err.println("[" + sdf.format(new Date()) + "] ERROR: " + message);
-    }
 }
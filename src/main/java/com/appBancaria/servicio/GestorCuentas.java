@@ -1,20 +1,96 @@
 package com.appBancaria.servicio;
 
+import com.appBancaria.config.Configuracion;
 import com.appBancaria.db.DBConexion;
+import com.appBancaria.log.Log;
 import com.appBancaria.modelo.Cliente;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GestorCuentas {
+    // Límite de transacciones por página del historial y filas que el driver trae por viaje
+    private static final int HISTORIAL_TAMANO_MAXIMO = Configuracion.getInt("HISTORIAL_MAX_PAGE_SIZE", 500);
+    private static final int HISTORIAL_FETCH_SIZE = Configuracion.getInt("HISTORIAL_FETCH_SIZE", 100);
+    
+    // Sesiones activas en memoria para validar tokens sin consultar la BD
+    private final CacheSesiones cacheSesiones = new CacheSesiones(
+            Configuracion.getBoolean("SESSION_CACHE_ENABLED", true),
+            Configuracion.getInt("SESSION_CACHE_MAX", 100000));
+    
+    // Commit agrupado de consignaciones (deshabilitado por defecto)
+    private final AgrupadorConsignaciones agrupadorConsignaciones = new AgrupadorConsignaciones(
+            Configuracion.getBoolean("GROUP_COMMIT_ENABLED", false),
+            Configuracion.getInt("GROUP_COMMIT_MAX_BATCH", 64),
+            Configuracion.getLong("GROUP_COMMIT_WAIT_MS", 2),
+            Configuracion.getLong("GROUP_COMMIT_RESULT_TIMEOUT_MS", 30000),
+            this::consignarLote,
+            this::consignarIndividual);
+    
+    // Números de cuenta reservados por bloques de una secuencia de la BD
+    private final AsignadorNumerosCuenta asignadorNumerosCuenta = new AsignadorNumerosCuenta(
+            Configuracion.getInt("ACCOUNT_NUMBER_BLOCK_SIZE", 100));
+    
+    // Índices únicos de correo e identificación de clientes: se crean al registrar el primer
+    // cliente. null si aún no se intentó; false si no se pudieron crear (p. ej. hay duplicados)
+    private static final String[] CREAR_INDICES_CLIENTES = {
+            "CREATE UNIQUE INDEX IF NOT EXISTS clientes_correo_unico ON clientes (correo_electronico)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS clientes_identificacion_unica ON clientes (numero_identificacion)"
+    };
+    private final ReentrantLock bloqueoIndicesClientes = new ReentrantLock();
+    private volatile Boolean indicesClientes;
+    
+    // Hash de contraseñas en un pool propio con cola acotada
+    private final VerificadorContrasenas verificadorContrasenas = new VerificadorContrasenas(
+            Configuracion.getInt("PASSWORD_HASH_ITERATIONS", 120000),
+            Configuracion.getInt("PASSWORD_HASH_THREADS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Configuracion.getInt("PASSWORD_HASH_QUEUE", 64));
+    
+    // Cuentas de destino con muchas consignaciones, cuyo saldo se actualiza por lotes
+    private final CuentasCalientes cuentasCalientes = new CuentasCalientes(
+            CuentasCalientes.leerNumeros(Configuracion.get("HOT_ACCOUNTS", "")),
+            Configuracion.getLong("HOT_ACCOUNTS_FLUSH_MS", 100));
+    
+    // Saldos consultados recientemente; cada consignación invalida el de su cuenta al confirmarse
+    private final CacheSaldos cacheSaldos = new CacheSaldos(
+            Configuracion.getBoolean("BALANCE_CACHE_ENABLED", true),
+            Configuracion.getInt("BALANCE_CACHE_MAX", 10000));
+    
+    // Con réplicas de lectura: tras consignar, las lecturas de la sesión van a la
+    // primaria durante este tiempo para que vea su propia consignación (0 desactiva)
+    private static final long LEER_ESCRITURAS_MS = Configuracion.getLong("READ_YOUR_WRITES_MS", 5000);
+    // Sesiones que consignaron hace poco e instante (ms) hasta el que leen de la primaria
+    private final ConcurrentHashMap<String, Long> escriturasRecientes = new ConcurrentHashMap<>();
     
     public double consultarSaldo(String numeroCuenta) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
-        
+        if (cuentasCalientes.esCaliente(numeroCuenta)) {
+            CuentasCalientes.Cuenta cuenta = cuentasCalientes.obtener(numeroCuenta);
+            if (cuenta == null) {
+                throw new SQLException("Cuenta no encontrada");
+            }
+            return cuenta.saldo();
+        }
+        Double enCache = cacheSaldos.obtener(numeroCuenta);
+        if (enCache != null) {
+            return enCache;
+        }
+        // La versión se lee antes de consultar: si la cuenta recibe una consignación
+        // mientras tanto, el saldo leído no se guarda
+        long version = cacheSaldos.getVersion(numeroCuenta);
         String query = "SELECT saldo FROM cuentas WHERE numero_cuenta = ?";
         try (Connection conn = DBConexion.getInstance().getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
@@ -23,7 +99,9 @@ public class GestorCuentas {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return rs.getDouble("saldo");
+                double saldo = rs.getDouble("saldo");
+                cacheSaldos.guardar(numeroCuenta, saldo, version);
+                return saldo;
             } else {
                 throw new SQLException("Cuenta no encontrada");
             }
@@ -31,10 +109,13 @@ public class GestorCuentas {
     }
     
     public double consultarSaldo(int identificacion) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
-        
-        String query = "SELECT saldo FROM cuentas WHERE cliente_id = (SELECT id FROM clientes WHERE numero_identificacion = ?)";
+        String numeroCuenta = cacheSaldos.cuentaDeIdentificacion(identificacion);
+        if (numeroCuenta != null) {
+            return consultarSaldo(numeroCuenta);
+        }
+        // Primera consulta de esta identificación: se guarda su cuenta, y el saldo
+        // se guardará en la siguiente consulta (aquí no se conocía la cuenta para leer su versión)
+        String query = "SELECT numero_cuenta, saldo FROM cuentas WHERE cliente_id = (SELECT id FROM clientes WHERE numero_identificacion = ?)";
         try (Connection conn = DBConexion.getInstance().getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
@@ -42,7 +123,8 @@ public class GestorCuentas {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return rs.getDouble("saldo");
+                cacheSaldos.guardarIdentificacion(identificacion, rs.getString("numero_cuenta"));
+                return saldoActual(rs.getString("numero_cuenta"), rs.getDouble("saldo"));
             } else {
                 throw new SQLException("Cliente no encontrado");
             }
@@ -50,10 +132,10 @@ public class GestorCuentas {
     }
     
     public String crearCuenta(Cliente cliente) throws SQLException {
-        System.out.println("Iniciando proceso de creación de cuenta para " + cliente.getNombre());
+        Log.debug("Iniciando proceso de creación de cuenta para " + cliente.getNombre());
         
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
+        // El hash se calcula antes de tomar una conexión del pool
+        String hashContrasena = verificadorContrasenas.hashear(cliente.getContrasena());
         
         // Obtenemos una nueva conexión específicamente para esta operación
         Connection conn = null;
@@ -61,110 +143,100 @@ public class GestorCuentas {
         boolean autoCommitOriginal = true;
         
         try {
-            System.out.println("Solicitando conexión a la base de datos...");
+            Log.debug("Solicitando conexión a la base de datos...");
             conn = DBConexion.getInstance().getConnection();
             
             if (conn == null) {
-                System.err.println("Error: La conexión es nula");
+                Log.error("Error: La conexión es nula");
                 throw new SQLException("No se pudo establecer conexión con la base de datos");
             }
             
             // Guardamos el estado original del autoCommit
             autoCommitOriginal = conn.getAutoCommit();
             
+            // La secuencia de números de cuenta y los índices únicos se crean (la primera vez) fuera de la transacción
+            asignadorNumerosCuenta.preparar(conn);
+            boolean conIndicesUnicos = prepararIndicesClientes(conn);
+            
             // Desactivamos el autocommit para la transacción
-            System.out.println("Desactivando autoCommit...");
+            Log.debug("Desactivando autoCommit...");
             conn.setAutoCommit(false);
             
             // Verificar si la conexión está activa
             if (conn.isClosed()) {
-                System.err.println("Error: La conexión está cerrada");
+                Log.error("Error: La conexión está cerrada");
                 throw new SQLException("La conexión a la base de datos está cerrada");
             }
             
-            // Verificamos primero si ya existe un cliente con ese correo o identificación
-            System.out.println("Verificando si el cliente ya existe...");
-            String checkExistingQuery = "SELECT COUNT(*) FROM clientes WHERE correo_electronico = ? OR numero_identificacion = ?";
-            PreparedStatement checkStmt = conn.prepareStatement(checkExistingQuery);
-            checkStmt.setString(1, cliente.getCorreo());
-            checkStmt.setInt(2, cliente.getIdentificacion());
-            ResultSet checkRs = checkStmt.executeQuery();
-            checkRs.next();
-            int count = checkRs.getInt(1);
-            checkRs.close();
-            checkStmt.close();
-            
-            if (count > 0) {
-                throw new SQLException("Ya existe un cliente con ese correo o número de identificación");
+            // Sin los índices únicos se verifica antes si ya existe un cliente con ese correo o identificación
+            if (!conIndicesUnicos) {
+                String checkExistingQuery = "SELECT 1 FROM clientes WHERE correo_electronico = ? OR numero_identificacion = ? LIMIT 1";
+                try (PreparedStatement checkStmt = conn.prepareStatement(checkExistingQuery)) {
+                    checkStmt.setString(1, cliente.getCorreo());
+                    checkStmt.setInt(2, cliente.getIdentificacion());
+                    try (ResultSet checkRs = checkStmt.executeQuery()) {
+                        if (checkRs.next()) {
+                            throw new SQLException("Ya existe un cliente con ese correo o número de identificación");
+                        }
+                    }
+                }
             }
             
-            // Insertar cliente en la tabla clientes
-            System.out.println("Insertando nuevo cliente en la base de datos...");
+            // Insertar cliente en la tabla clientes; con los índices únicos de correo e
+            // identificación, ON CONFLICT detecta los duplicados sin una consulta previa
+            Log.debug("Insertando nuevo cliente en la base de datos...");
             String insertCliente = "INSERT INTO clientes (nombre_completo, correo_electronico, numero_identificacion, contrasena) " +
-                                   "VALUES (?, ?, ?, ?) RETURNING id";
-            PreparedStatement stmtCliente = conn.prepareStatement(insertCliente);
-            stmtCliente.setString(1, cliente.getNombre());
-            stmtCliente.setString(2, cliente.getCorreo());
-            stmtCliente.setInt(3, cliente.getIdentificacion());
-            stmtCliente.setString(4, cliente.getContrasena());
-            
-            ResultSet rsCliente = stmtCliente.executeQuery();
-            int clienteId = 0;
-            if (rsCliente.next()) {
-                clienteId = rsCliente.getInt("id");
-                System.out.println("Cliente insertado con ID: " + clienteId);
-            } else {
-                throw new SQLException("No se pudo crear el cliente en la base de datos");
+                                   "VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING RETURNING id";
+            int clienteId;
+            try (PreparedStatement stmtCliente = conn.prepareStatement(insertCliente)) {
+                stmtCliente.setString(1, cliente.getNombre());
+                stmtCliente.setString(2, cliente.getCorreo());
+                stmtCliente.setInt(3, cliente.getIdentificacion());
+                stmtCliente.setString(4, hashContrasena);
+                try (ResultSet rsCliente = stmtCliente.executeQuery()) {
+                    if (!rsCliente.next()) {
+                        throw new SQLException("Ya existe un cliente con ese correo o número de identificación");
+                    }
+                    clienteId = rsCliente.getInt("id");
+                    Log.debug("Cliente insertado con ID: " + clienteId);
+                }
             }
-            rsCliente.close();
-            stmtCliente.close();
-            
-            // Generar número de cuenta único
-            System.out.println("Generando número de cuenta...");
-            numeroCuenta = String.valueOf(100000 + (int)(Math.random() * 900000));
             
-            // Verificar que el número de cuenta no exista
-            String checkCuentaQuery = "SELECT COUNT(*) FROM cuentas WHERE numero_cuenta = ?";
-            PreparedStatement checkCuentaStmt = conn.prepareStatement(checkCuentaQuery);
-            checkCuentaStmt.setString(1, numeroCuenta);
-            ResultSet checkCuentaRs = checkCuentaStmt.executeQuery();
-            checkCuentaRs.next();
-            int cuentaCount = checkCuentaRs.getInt(1);
-            checkCuentaRs.close();
-            checkCuentaStmt.close();
-            
-            if (cuentaCount > 0) {
-                // En el improbable caso de que ya exista, generamos otro
-                numeroCuenta = String.valueOf(100000 + (int)(Math.random() * 900000));
+            // Insertar nueva cuenta con un número del asignador. Los números del asignador
+            // no se repiten; la condición solo evita chocar con cuentas creadas antes con
+            // números aleatorios, en cuyo caso se toma el siguiente
+            String insertCuenta = "INSERT INTO cuentas (numero_cuenta, cliente_id, saldo) " +
+                                  "SELECT ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM cuentas WHERE numero_cuenta = ?)";
+            try (PreparedStatement stmtCuenta = conn.prepareStatement(insertCuenta)) {
+                int insertadas = 0;
+                while (insertadas == 0) {
+                    numeroCuenta = asignadorNumerosCuenta.siguiente(conn);
+                    Log.debug("Insertando nueva cuenta con número: " + numeroCuenta);
+                    stmtCuenta.setString(1, numeroCuenta);
+                    stmtCuenta.setInt(2, clienteId);
+                    stmtCuenta.setDouble(3, 0.0); // Saldo inicial
+                    stmtCuenta.setString(4, numeroCuenta);
+                    insertadas = stmtCuenta.executeUpdate();
+                }
             }
             
-            // Insertar nueva cuenta
-            System.out.println("Insertando nueva cuenta con número: " + numeroCuenta);
-            String insertCuenta = "INSERT INTO cuentas (numero_cuenta, cliente_id, saldo) VALUES (?, ?, ?)";
-            PreparedStatement stmtCuenta = conn.prepareStatement(insertCuenta);
-            stmtCuenta.setString(1, numeroCuenta);
-            stmtCuenta.setInt(2, clienteId);
-            stmtCuenta.setDouble(3, 0.0); // Saldo inicial
-            stmtCuenta.executeUpdate();
-            stmtCuenta.close();
-            
             // Confirmar la transacción
-            System.out.println("Confirmando transacción...");
+            Log.debug("Confirmando transacción...");
             conn.commit();
-            System.out.println("Transacción completada - Cuenta creada exitosamente");
+            Log.debug("Transacción completada - Cuenta creada exitosamente");
             
             return numeroCuenta;
             
         } catch (SQLException e) {
-            System.err.println("Error durante la creación de cuenta: " + e.getMessage());
+            Log.error("Error durante la creación de cuenta: " + e.getMessage());
             
             // Intentar hacer rollback
             if (conn != null) {
                 try {
-                    System.out.println("Haciendo rollback de la transacción...");
+                    Log.debug("Haciendo rollback de la transacción...");
                     conn.rollback();
                 } catch (SQLException ex) {
-                    System.err.println("Error al hacer rollback: " + ex.getMessage());
+                    Log.error("Error al hacer rollback: " + ex.getMessage());
                 }
             }
             
@@ -175,197 +247,303 @@ public class GestorCuentas {
             if (conn != null && !conn.isClosed()) {
                 try {
                     conn.setAutoCommit(autoCommitOriginal);
-                    System.out.println("AutoCommit restaurado a: " + autoCommitOriginal);
+                    Log.debug("AutoCommit restaurado a: " + autoCommitOriginal);
                 } catch (SQLException e) {
-                    System.err.println("Error al restaurar autoCommit: " + e.getMessage());
+                    Log.error("Error al restaurar autoCommit: " + e.getMessage());
                 }
             }
+            // Devolver la conexión al pool
+            if (conn != null) {
+                conn.close();
+            }
         }
     }
 
-    public Map<String, Object> consignarCuenta(String idSesion, String numCuentaDestino, double monto) throws SQLException {
-        String queryOrigen = "SELECT c.numero_cuenta FROM cuentas c " +
-                             "JOIN clientes cl ON c.cliente_id = cl.id " +
-                             "WHERE cl.id_sesion = ?";
-        String queryDestino = "SELECT saldo FROM cuentas WHERE numero_cuenta = ?";
-        String updateDestino = "UPDATE cuentas SET saldo = saldo + ? WHERE numero_cuenta = ?";
-        String insertTransaccion = "INSERT INTO transacciones (tipo_transaccion, monto, cuenta_origen_id, cuenta_destino_id) VALUES (?, ?, (SELECT id FROM cuentas WHERE numero_cuenta = ?), (SELECT id FROM cuentas WHERE numero_cuenta = ?))";
-        Map<String, Object> resultado = new HashMap<>();
-        
-        Connection conn = null;
-        PreparedStatement stmtOrigen = null;
-        PreparedStatement stmtDestino = null;
-        PreparedStatement stmtUpdateDestino = null;
-        PreparedStatement stmtInsertTransaccion = null;
-        ResultSet rsOrigen = null;
-        ResultSet rsDestino = null;
-        
+    /**
+     * Crea los índices únicos de correo e identificación de clientes si no existen.
+     * Se intenta una sola vez: si la tabla ya tiene duplicados no se pueden crear,
+     * se registra el error y crearCuenta verifica los duplicados con una consulta.
+     * @param conn Conexión en autocommit de quien registra el cliente
+     * @return true si los índices existen
+     */
+    private boolean prepararIndicesClientes(Connection conn) throws SQLException {
+        Boolean creados = indicesClientes;
+        if (creados != null) {
+            return creados;
+        }
+        bloqueoIndicesClientes.lock();
         try {
-            // Limpiar prepared statements antes de comenzar
-            DBConexion.getInstance().cleanPreparedStatements();
-            
-            conn = DBConexion.getInstance().getConnection();
-            conn.setAutoCommit(false);
-            
-            // Obtener cuenta de origen usando el ID de sesión
-            String numCuentaOrigen;
-            stmtOrigen = conn.prepareStatement(queryOrigen);
-            stmtOrigen.setString(1, idSesion);
-            rsOrigen = stmtOrigen.executeQuery();
-            if (!rsOrigen.next()) {
-                throw new SQLException("No se encontró una cuenta asociada a la sesión activa");
-            }
-            numCuentaOrigen = rsOrigen.getString("numero_cuenta");
-            
-            // Verificar que la cuenta de destino exista
-            double saldoAnterior = 0.0;
-            double saldoNuevo = 0.0;
-            stmtDestino = conn.prepareStatement(queryDestino);
-            stmtDestino.setString(1, numCuentaDestino);
-            rsDestino = stmtDestino.executeQuery();
-            if (!rsDestino.next()) {
-                throw new SQLException("Cuenta de destino no encontrada");
-            }
-            saldoAnterior = rsDestino.getDouble("saldo");
-            
-            // Actualizar el saldo de la cuenta de destino
-            stmtUpdateDestino = conn.prepareStatement(updateDestino);
-            stmtUpdateDestino.setDouble(1, monto);
-            stmtUpdateDestino.setString(2, numCuentaDestino);
-            stmtUpdateDestino.executeUpdate();
-            
-            // Cerrar el ResultSet y el PreparedStatement anteriores
-            if (rsDestino != null) rsDestino.close();
-            if (stmtDestino != null) stmtDestino.close();
-            
-            // Obtener el saldo actualizado
-            stmtDestino = conn.prepareStatement(queryDestino);
-            stmtDestino.setString(1, numCuentaDestino);
-            rsDestino = stmtDestino.executeQuery();
-            if (rsDestino.next()) {
-                saldoNuevo = rsDestino.getDouble("saldo");
-            }
-            
-            // Insertar registro en la tabla de transacciones
-            stmtInsertTransaccion = conn.prepareStatement(insertTransaccion);
-            stmtInsertTransaccion.setString(1, "consignacion");
-            stmtInsertTransaccion.setDouble(2, monto);
-            stmtInsertTransaccion.setString(3, numCuentaOrigen);
-            stmtInsertTransaccion.setString(4, numCuentaDestino);
-            stmtInsertTransaccion.executeUpdate();
-            
-            conn.commit();
-            
-            // Preparar la respuesta
-            resultado.put("exito", true);
-            resultado.put("mensaje", "Consignación exitosa");
-            resultado.put("saldoAnterior", saldoAnterior);
-            resultado.put("saldoNuevo", saldoNuevo);
-            resultado.put("monto", monto);
-            resultado.put("numeroCuentaDestino", numCuentaDestino);
-            resultado.put("numeroCuentaOrigen", numCuentaOrigen);
-            
-            return resultado;
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    System.err.println("Error durante rollback: " + ex.getMessage());
+            if (indicesClientes == null) {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String crearIndice : CREAR_INDICES_CLIENTES) {
+                        stmt.execute(crearIndice);
+                    }
+                    indicesClientes = true;
+                } catch (SQLException e) {
+                    // 23505: hay clientes repetidos; cualquier otro error puede ser pasajero
+                    if (!"23505".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    indicesClientes = false;
+                    Log.error("No se pudieron crear los índices únicos de clientes porque hay correos o "
+                            + "identificaciones repetidos; los duplicados se verificarán con una consulta: "
+                            + e.getMessage());
                 }
             }
-            resultado.put("exito", false);
-            resultado.put("mensaje", "Error en la consignación: " + e.getMessage());
-            throw e;
+            return indicesClientes;
         } finally {
-            // Cerrar todos los recursos en orden inverso
-            if (rsDestino != null) try { rsDestino.close(); } catch (SQLException e) { }
-            if (rsOrigen != null) try { rsOrigen.close(); } catch (SQLException e) { }
-            if (stmtInsertTransaccion != null) try { stmtInsertTransaccion.close(); } catch (SQLException e) { }
-            if (stmtUpdateDestino != null) try { stmtUpdateDestino.close(); } catch (SQLException e) { }
-            if (stmtDestino != null) try { stmtDestino.close(); } catch (SQLException e) { }
-            if (stmtOrigen != null) try { stmtOrigen.close(); } catch (SQLException e) { }
-            
-            // Restaurar autoCommit
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    System.err.println("Error restaurando autoCommit: " + e.getMessage());
+            bloqueoIndicesClientes.unlock();
+        }
+    }
+    
+    /**
+     * Consigna un monto desde la cuenta de la sesión a una cuenta de destino.
+     * Con GROUP_COMMIT_ENABLED se confirma en una transacción compartida con
+     * las consignaciones que lleguen a la vez.
+     * @return Mapa con el resultado, los saldos anterior y nuevo y ambas cuentas
+     * @throws SQLException si alguna de las cuentas no existe o hay un error con la base de datos
+     */
+    public Map<String, Object> consignarCuenta(String idSesion, String numCuentaDestino, double monto) throws SQLException {
+        Map<String, Object> resultado = cuentasCalientes.esCaliente(numCuentaDestino)
+                ? consignarCuentaCaliente(idSesion, numCuentaDestino, monto)
+                : agrupadorConsignaciones.consignar(idSesion, numCuentaDestino, monto);
+        registrarEscritura(idSesion);
+        return resultado;
+    }
+    
+    /**
+     * Consignación a una cuenta caliente: registra el movimiento y su monto
+     * pendiente en cuentas_delta sin tocar la fila de la cuenta de destino, y
+     * acumula el monto en memoria
+     */
+    private Map<String, Object> consignarCuentaCaliente(String idSesion, String numCuentaDestino, double monto) throws SQLException {
+        CuentasCalientes.Cuenta destino = cuentasCalientes.obtener(numCuentaDestino);
+        if (destino == null) {
+            throw new SQLException("Cuenta de destino no encontrada");
+        }
+        long centavos = CuentasCalientes.aCentavos(monto);
+        double montoCentavos = centavos / 100.0;
+        
+        String registro =
+                "WITH origen AS (" +
+                "    SELECT c.id, c.numero_cuenta FROM cuentas c " +
+                "    JOIN clientes cl ON c.cliente_id = cl.id " +
+                "    WHERE cl.id_sesion = ?" +
+                "), transaccion AS (" +
+                "    INSERT INTO transacciones (tipo_transaccion, monto, cuenta_origen_id, cuenta_destino_id) " +
+                "    SELECT 'consignacion', ?, o.id, ? FROM origen o" +
+                "), delta AS (" +
+                "    INSERT INTO cuentas_delta (cuenta_id, monto) " +
+                "    SELECT ?, ? FROM origen RETURNING id" +
+                ") " +
+                "SELECT o.numero_cuenta, d.id AS id_delta FROM origen o CROSS JOIN delta d";
+        
+        String numCuentaOrigen;
+        long idDelta;
+        try (Connection conn = DBConexion.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(registro)) {
+            stmt.setString(1, idSesion);
+            stmt.setDouble(2, montoCentavos);
+            stmt.setInt(3, destino.id);
+            stmt.setInt(4, destino.id);
+            stmt.setDouble(5, montoCentavos);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No se encontró una cuenta asociada a la sesión activa");
                 }
+                numCuentaOrigen = rs.getString("numero_cuenta");
+                idDelta = rs.getLong("id_delta");
             }
         }
+        
+        // Solo se acumula una vez confirmados el movimiento y su fila pendiente
+        double saldoNuevo = destino.acumular(idDelta, centavos);
+        return resultadoConsignacion(saldoNuevo - montoCentavos, saldoNuevo, montoCentavos, numCuentaDestino, numCuentaOrigen);
     }
-
+    
     /**
-     * Autentica a un usuario y genera un token JWT si las credenciales son correctas
-     * @param correo Correo del usuario
-     * @param contrasena Contraseña del usuario
-     * @return Mapa con el token JWT y otros datos de sesión, o null si la autenticación falla
-     * @throws SQLException si ocurre un error con la base de datos
+     * Saldo de una cuenta a partir del leído en la tabla; en las cuentas
+     * calientes incluye lo acumulado que aún no se ha pasado a la tabla
      */
-    public Map<String, Object> autenticarUsuario(String correo, String contrasena) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
+    private double saldoActual(String numeroCuenta, double saldoTabla) throws SQLException {
+        if (!cuentasCalientes.esCaliente(numeroCuenta)) {
+            return saldoTabla;
+        }
+        CuentasCalientes.Cuenta cuenta = cuentasCalientes.obtener(numeroCuenta);
+        return cuenta != null ? cuenta.saldo() : saldoTabla;
+    }
+    
+    private Map<String, Object> consignarIndividual(String idSesion, String numCuentaDestino, double monto) throws SQLException {
+        // Una sola sentencia (un viaje a la BD, atómica aunque haya autoCommit):
+        // - origen: cuenta del cliente dueño de la sesión
+        // - destino: suma el monto (solo si existe la cuenta de origen); el UPDATE
+        //   bloquea la fila y RETURNING ve el saldo ya actualizado
+        // - transaccion: registra el movimiento con los id de ambas cuentas
+        // Siempre devuelve una fila; las columnas nulas indican qué cuenta no existe
+        String consignacion =
+                "WITH origen AS (" +
+                "    SELECT c.id, c.numero_cuenta FROM cuentas c " +
+                "    JOIN clientes cl ON c.cliente_id = cl.id " +
+                "    WHERE cl.id_sesion = ?" +
+                "), destino AS (" +
+                "    UPDATE cuentas SET saldo = saldo + ? " +
+                "    WHERE numero_cuenta = ? AND EXISTS (SELECT 1 FROM origen) " +
+                "    RETURNING id, saldo - ? AS saldo_anterior, saldo AS saldo_nuevo" +
+                "), transaccion AS (" +
+                "    INSERT INTO transacciones (tipo_transaccion, monto, cuenta_origen_id, cuenta_destino_id) " +
+                "    SELECT 'consignacion', ?, o.id, d.id FROM origen o CROSS JOIN destino d" +
+                ") " +
+                "SELECT (SELECT numero_cuenta FROM origen LIMIT 1) AS numero_cuenta_origen, " +
+                "       d.saldo_anterior, d.saldo_nuevo " +
+                "FROM (SELECT 1) uno LEFT JOIN destino d ON true";
         
-        String query = "SELECT id FROM clientes WHERE correo_electronico = ? AND contrasena = ?";
         try (Connection conn = DBConexion.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            
-            stmt.setString(1, correo);
-            stmt.setString(2, contrasena);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                int clienteId = rs.getInt("id");
-                
-                // Generar JWT y sessionId
-                Map<String, String> tokenInfo = JWTUtil.generarToken(clienteId);
-                String jwt = tokenInfo.get("token");
-                String sessionId = tokenInfo.get("sessionId");
-                
-                // Actualizar el id_sesion en la base de datos
-                actualizarIdSesion(clienteId, sessionId);
-                
-                // Crear respuesta con token JWT
-                Map<String, Object> respuesta = new HashMap<>();
-                respuesta.put("idUsuario", clienteId);
-                respuesta.put("token", jwt);
-                respuesta.put("idSesion", sessionId);
-                
-                // Limpiar prepared statements después de la autenticación exitosa
-                DBConexion.getInstance().cleanPreparedStatements();
-                
-                return respuesta;
-            } else {
-                return null;
+             PreparedStatement stmt = conn.prepareStatement(consignacion)) {
+            stmt.setString(1, idSesion);
+            stmt.setDouble(2, monto);
+            stmt.setString(3, numCuentaDestino);
+            stmt.setDouble(4, monto);
+            stmt.setDouble(5, monto);
+            
+            // La sentencia se confirma al ejecutarse (autoCommit): el saldo en caché se descarta
+            // aunque se pierda la respuesta o falle la lectura del resultado
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getString("numero_cuenta_origen") == null) {
+                    throw new SQLException("No se encontró una cuenta asociada a la sesión activa");
+                }
+                String numCuentaOrigen = rs.getString("numero_cuenta_origen");
+                double saldoNuevo = rs.getDouble("saldo_nuevo");
+                if (rs.wasNull()) {
+                    throw new SQLException("Cuenta de destino no encontrada");
+                }
+                double saldoAnterior = rs.getDouble("saldo_anterior");
+                return resultadoConsignacion(saldoAnterior, saldoNuevo, monto, numCuentaDestino, numCuentaOrigen);
+            } finally {
+                cacheSaldos.invalidar(numCuentaDestino);
             }
         }
     }
-
+    
     /**
-     * Actualiza el id_sesion de un cliente en la base de datos
-     * @param clienteId ID del cliente
-     * @param sessionId ID de sesión
-     * @throws SQLException si ocurre un error con la base de datos
+     * Aplica varias consignaciones en una sola transacción: bloquea las cuentas
+     * de destino (en orden de id, para no provocar interbloqueos), suma a cada
+     * una el total de sus consignaciones y registra los movimientos con
+     * sentencias por lotes. Las consignaciones con una cuenta inexistente
+     * reciben su error y no impiden confirmar el resto.
      */
-    private void actualizarIdSesion(int clienteId, String sessionId) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
+    private void consignarLote(List<AgrupadorConsignaciones.Pendiente> lote) throws SQLException {
+        Set<String> sesiones = new LinkedHashSet<>();
+        Set<String> cuentasDestino = new LinkedHashSet<>();
+        for (AgrupadorConsignaciones.Pendiente pendiente : lote) {
+            sesiones.add(pendiente.idSesion);
+            cuentasDestino.add(pendiente.numeroCuentaDestino);
+        }
         
-        String update = "UPDATE clientes SET id_sesion = ? WHERE id = ?";
-        try (Connection conn = DBConexion.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(update)) {
-            
-            stmt.setString(1, sessionId);
-            stmt.setInt(2, clienteId);
-            stmt.executeUpdate();
+        String queryOrigenes = "SELECT cl.id_sesion, c.id, c.numero_cuenta FROM cuentas c " +
+                "JOIN clientes cl ON c.cliente_id = cl.id WHERE cl.id_sesion = ANY(?)";
+        String queryDestinos = "SELECT id, numero_cuenta, saldo FROM cuentas " +
+                "WHERE numero_cuenta = ANY(?) ORDER BY id FOR UPDATE";
+        String updateSaldo = "UPDATE cuentas SET saldo = saldo + ? WHERE id = ?";
+        String insertTransaccion = "INSERT INTO transacciones (tipo_transaccion, monto, cuenta_origen_id, cuenta_destino_id) " +
+                "VALUES ('consignacion', ?, ?, ?)";
+        
+        try (Connection conn = DBConexion.getInstance().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Integer> idOrigen = new HashMap<>();
+                Map<String, String> numeroOrigen = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(queryOrigenes)) {
+                    stmt.setArray(1, conn.createArrayOf("varchar", sesiones.toArray()));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            idOrigen.put(rs.getString("id_sesion"), rs.getInt("id"));
+                            numeroOrigen.put(rs.getString("id_sesion"), rs.getString("numero_cuenta"));
+                        }
+                    }
+                }
+                
+                Map<String, Integer> idDestino = new HashMap<>();
+                Map<String, Double> saldoDestino = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(queryDestinos)) {
+                    stmt.setArray(1, conn.createArrayOf("varchar", cuentasDestino.toArray()));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            idDestino.put(rs.getString("numero_cuenta"), rs.getInt("id"));
+                            saldoDestino.put(rs.getString("numero_cuenta"), rs.getDouble("saldo"));
+                        }
+                    }
+                }
+                
+                // Cada consignación ve el saldo que dejó la anterior a la misma cuenta
+                Map<Integer, Double> totalPorCuenta = new LinkedHashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(insertTransaccion)) {
+                    for (AgrupadorConsignaciones.Pendiente pendiente : lote) {
+                        String destino = pendiente.numeroCuentaDestino;
+                        if (!idOrigen.containsKey(pendiente.idSesion)) {
+                            pendiente.setError(new SQLException("No se encontró una cuenta asociada a la sesión activa"));
+                            continue;
+                        }
+                        if (!idDestino.containsKey(destino)) {
+                            pendiente.setError(new SQLException("Cuenta de destino no encontrada"));
+                            continue;
+                        }
+                        double saldoAnterior = saldoDestino.get(destino);
+                        double saldoNuevo = saldoAnterior + pendiente.monto;
+                        saldoDestino.put(destino, saldoNuevo);
+                        totalPorCuenta.merge(idDestino.get(destino), pendiente.monto, Double::sum);
+                        
+                        stmt.setDouble(1, pendiente.monto);
+                        stmt.setInt(2, idOrigen.get(pendiente.idSesion));
+                        stmt.setInt(3, idDestino.get(destino));
+                        stmt.addBatch();
+                        pendiente.setResultado(resultadoConsignacion(saldoAnterior, saldoNuevo, pendiente.monto,
+                                destino, numeroOrigen.get(pendiente.idSesion)));
+                    }
+                    stmt.executeBatch();
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(updateSaldo)) {
+                    for (Map.Entry<Integer, Double> total : totalPorCuenta.entrySet()) {
+                        stmt.setDouble(1, total.getValue());
+                        stmt.setInt(2, total.getKey());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            // Si el commit falla no se sabe si quedó confirmado: el lote no debe reintentarse,
+            // y el saldo en caché se descarta igual para que la consulta del usuario lea la BD
+            try {
+                conn.commit();
+            } catch (SQLException e) {
+                throw new AgrupadorConsignaciones.ResultadoIncierto(e);
+            } finally {
+                for (String destino : cuentasDestino) {
+                    cacheSaldos.invalidar(destino);
+                }
+            }
         }
     }
+    
+    private static Map<String, Object> resultadoConsignacion(double saldoAnterior, double saldoNuevo, double monto,
+                                                             String numCuentaDestino, String numCuentaOrigen) {
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("exito", true);
+        resultado.put("mensaje", "Consignación exitosa");
+        resultado.put("saldoAnterior", saldoAnterior);
+        resultado.put("saldoNuevo", saldoNuevo);
+        resultado.put("monto", monto);
+        resultado.put("numeroCuentaDestino", numCuentaDestino);
+        resultado.put("numeroCuentaOrigen", numCuentaOrigen);
+        return resultado;
+    }
 
     public void cerrarSesion(String correo, String idSesion) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
+        cacheSesiones.invalidar(idSesion);
+        escriturasRecientes.remove(idSesion);
         
         String update = "UPDATE clientes SET id_sesion = NULL WHERE correo_electronico = ? AND id_sesion = ?";
         try (Connection conn = DBConexion.getInstance().getConnection();
@@ -381,71 +559,130 @@ public class GestorCuentas {
         }
     }
 
-    public boolean verificarSesionActiva(String correo) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
+    /**
+     * Obtiene una página del historial de transacciones recibidas por el cliente,
+     * ordenado por fecha_hora e id. La paginación es por keyset: el cursor codifica
+     * la última transacción devuelta, así que cada página cuesta lo mismo sin
+     * importar cuántos movimientos tenga la cuenta.
+     * @param idSesion ID de sesión del cliente
+     * @param tamanoPagina Transacciones por página (se ajusta al rango permitido)
+     * @param cursor Cursor devuelto en la página anterior, o null para la primera página
+     * @return Mapa con "transacciones" (lista ordenada) y "siguienteCursor" (null si no hay más)
+     * @throws SQLException si ocurre un error con la base de datos o el cursor no es válido
+     */
+    public Map<String, Object> obtenerHistorialTransacciones(String idSesion, int tamanoPagina, String cursor) throws SQLException {
+        int tamano = Math.max(1, Math.min(tamanoPagina, HISTORIAL_TAMANO_MAXIMO));
+        Object[] posicion = cursor != null && !cursor.isEmpty() ? decodificarCursorHistorial(cursor) : null;
         
-        String query = "SELECT id_sesion FROM clientes WHERE correo_electronico = ?";
-        try (Connection conn = DBConexion.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            
-            stmt.setString(1, correo);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                // Si id_sesion no es null, entonces hay una sesión activa
-                return rs.getString("id_sesion") != null;
-            } else {
-                return false;
-            }
+        Map<String, Object> historial = leer(idSesion, conn -> leerHistorial(conn, idSesion, tamano, posicion));
+        if (historial == null) {
+            throw new SQLException("No se encontró un cliente con el ID de sesión proporcionado.");
         }
+        return historial;
     }
-
-    public Map<String, Object> obtenerHistorialTransacciones(String idSesion) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
-        
+    
+    /**
+     * Lee una página del historial en la conexión dada
+     * @return Página del historial, o null si no hay un cliente con esa sesión
+     */
+    private Map<String, Object> leerHistorial(Connection conn, String idSesion, int tamano, Object[] posicion) throws SQLException {
         String queryCliente = "SELECT id FROM clientes WHERE id_sesion = ?";
-        String queryTransacciones = "SELECT t.tipo_transaccion, t.fecha_hora, t.monto, c.numero_cuenta AS cuenta_origen, " +
-                                    "c2.numero_cuenta AS cuenta_destino, cl.numero_identificacion AS identificacion_origen " +
-                                    "FROM transacciones t " +
-                                    "JOIN cuentas c ON t.cuenta_origen_id = c.id " +
-                                    "JOIN cuentas c2 ON t.cuenta_destino_id = c2.id " +
-                                    "JOIN clientes cl ON c.cliente_id = cl.id " +
-                                    "WHERE c2.cliente_id = ? " +
-                                    "ORDER BY t.fecha_hora ASC";
-        Map<String, Object> historial = new HashMap<>();
+        String columnas = "SELECT t.id, t.tipo_transaccion, t.fecha_hora, t.monto, c.numero_cuenta AS cuenta_origen, " +
+                          "c2.numero_cuenta AS cuenta_destino, cl.numero_identificacion AS identificacion_origen " +
+                          "FROM transacciones t " +
+                          "JOIN cuentas c ON t.cuenta_origen_id = c.id " +
+                          "JOIN cuentas c2 ON t.cuenta_destino_id = c2.id " +
+                          "JOIN clientes cl ON c.cliente_id = cl.id " +
+                          "WHERE c2.cliente_id = ? ";
+        String orden = "ORDER BY t.fecha_hora ASC, t.id ASC LIMIT ?";
+        String queryTransacciones = posicion == null
+                ? columnas + orden
+                : columnas + "AND (t.fecha_hora, t.id) > (?, ?) " + orden;
         
-        try (Connection conn = DBConexion.getInstance().getConnection();
-             PreparedStatement stmtCliente = conn.prepareStatement(queryCliente);
-             PreparedStatement stmtTransacciones = conn.prepareStatement(queryTransacciones)) {
-            
+        List<Map<String, Object>> transacciones = new ArrayList<>(Math.min(tamano, 64));
+        String siguienteCursor = null;
+        
+        // El driver de PostgreSQL solo respeta el fetch size dentro de una transacción;
+        // así las filas llegan por bloques en lugar de cargarse todas en memoria
+        conn.setAutoCommit(false);
+        
+        int clienteId;
+        try (PreparedStatement stmtCliente = conn.prepareStatement(queryCliente)) {
             // Obtener el ID del cliente a partir del ID de sesión
             stmtCliente.setString(1, idSesion);
-            ResultSet rsCliente = stmtCliente.executeQuery();
-            if (!rsCliente.next()) {
-                throw new SQLException("No se encontró un cliente con el ID de sesión proporcionado.");
+            try (ResultSet rsCliente = stmtCliente.executeQuery()) {
+                if (!rsCliente.next()) {
+                    return null;
+                }
+                clienteId = rsCliente.getInt("id");
             }
-            int clienteId = rsCliente.getInt("id");
-            
-            // Obtener las transacciones en las que el cliente es el destinatario
-            stmtTransacciones.setInt(1, clienteId);
-            ResultSet rsTransacciones = stmtTransacciones.executeQuery();
-            
-            while (rsTransacciones.next()) {
-                Map<String, Object> transaccion = new HashMap<>();
-                transaccion.put("tipo_transaccion", rsTransacciones.getString("tipo_transaccion"));
-                transaccion.put("fecha_hora", rsTransacciones.getTimestamp("fecha_hora"));
-                transaccion.put("monto", rsTransacciones.getDouble("monto"));
-                transaccion.put("cuenta_origen", rsTransacciones.getString("cuenta_origen"));
-                transaccion.put("cuenta_destino", rsTransacciones.getString("cuenta_destino"));
-                transaccion.put("identificacion_origen", rsTransacciones.getString("identificacion_origen"));
-                historial.put(String.valueOf(rsTransacciones.getRow()), transaccion);
+        }
+        
+        // Obtener las transacciones en las que el cliente es el destinatario
+        try (PreparedStatement stmtTransacciones = conn.prepareStatement(queryTransacciones)) {
+            stmtTransacciones.setFetchSize(Math.min(tamano + 1, HISTORIAL_FETCH_SIZE));
+            int indice = 1;
+            stmtTransacciones.setInt(indice++, clienteId);
+            if (posicion != null) {
+                stmtTransacciones.setTimestamp(indice++, (Timestamp) posicion[0]);
+                stmtTransacciones.setLong(indice++, (Long) posicion[1]);
+            }
+            // Se pide una fila de más para saber si hay otra página
+            stmtTransacciones.setInt(indice, tamano + 1);
+            
+            try (ResultSet rsTransacciones = stmtTransacciones.executeQuery()) {
+                Timestamp ultimaFecha = null;
+                long ultimoId = 0;
+                while (rsTransacciones.next()) {
+                    if (transacciones.size() == tamano) {
+                        siguienteCursor = codificarCursorHistorial(ultimaFecha, ultimoId);
+                        break;
+                    }
+                    ultimaFecha = rsTransacciones.getTimestamp("fecha_hora");
+                    ultimoId = rsTransacciones.getLong("id");
+                    
+                    Map<String, Object> transaccion = new HashMap<>();
+                    transaccion.put("tipo_transaccion", rsTransacciones.getString("tipo_transaccion"));
+                    transaccion.put("fecha_hora", ultimaFecha);
+                    transaccion.put("monto", rsTransacciones.getDouble("monto"));
+                    transaccion.put("cuenta_origen", rsTransacciones.getString("cuenta_origen"));
+                    transaccion.put("cuenta_destino", rsTransacciones.getString("cuenta_destino"));
+                    transaccion.put("identificacion_origen", rsTransacciones.getString("identificacion_origen"));
+                    transacciones.add(transaccion);
+                }
             }
         }
+        conn.commit();
+        
+        Map<String, Object> historial = new HashMap<>();
+        historial.put("transacciones", transacciones);
+        historial.put("siguienteCursor", siguienteCursor);
+        historial.put("tamanoPagina", tamano);
         return historial;
     }
     
+    /**
+     * El cursor es opaco para el cliente: codifica en Base64 la fecha (ms y nanos) y el id de la última transacción
+     */
+    private static String codificarCursorHistorial(Timestamp fecha, long id) {
+        String valor = fecha.getTime() + ":" + fecha.getNanos() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static Object[] decodificarCursorHistorial(String cursor) throws SQLException {
+        try {
+            String[] partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (partes.length != 3) {
+                throw new IllegalArgumentException("formato");
+            }
+            Timestamp fecha = new Timestamp(Long.parseLong(partes[0]));
+            fecha.setNanos(Integer.parseInt(partes[1]));
+            return new Object[] {fecha, Long.parseLong(partes[2])};
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Cursor de historial inválido");
+        }
+    }
+    
     /**
      * Obtiene la información completa de un cliente a partir de su ID de sesión
      * @param idSesion ID de sesión del cliente
@@ -453,9 +690,14 @@ public class GestorCuentas {
      * @throws SQLException si ocurre un error con la base de datos
      */
     public Map<String, Object> obtenerInformacionCliente(String idSesion) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
-        
+        return informacionEncontrada(leer(idSesion, conn -> leerInformacionCliente(conn, idSesion)));
+    }
+    
+    /**
+     * Lee la información del cliente de una sesión en la conexión dada
+     * @return Mapa con la información del cliente, o null si no hay un cliente con esa sesión
+     */
+    private Map<String, Object> leerInformacionCliente(Connection conn, String idSesion) throws SQLException {
         String query = "SELECT cl.id, cl.nombre_completo, cl.correo_electronico, cl.numero_identificacion, " +
                       "c.numero_cuenta, c.saldo " +
                       "FROM clientes cl " +
@@ -464,8 +706,7 @@ public class GestorCuentas {
                       
         Map<String, Object> informacion = new HashMap<>();
         
-        try (Connection conn = DBConexion.getInstance().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
             
             stmt.setString(1, idSesion);
             ResultSet rs = stmt.executeQuery();
@@ -476,12 +717,79 @@ public class GestorCuentas {
                 informacion.put("correo", rs.getString("correo_electronico"));
                 informacion.put("identificacion", rs.getString("numero_identificacion"));
                 informacion.put("numeroCuenta", rs.getString("numero_cuenta"));
-                informacion.put("saldo", rs.getDouble("saldo"));
+                informacion.put("saldo", saldoActual(rs.getString("numero_cuenta"), rs.getDouble("saldo")));
                 return informacion;
-            } else {
-                throw new SQLException("No se encontró la información del cliente con el ID de sesión proporcionado.");
+            }
+            return null;
+        }
+    }
+    
+    private static Map<String, Object> informacionEncontrada(Map<String, Object> informacion) throws SQLException {
+        if (informacion == null) {
+            throw new SQLException("No se encontró la información del cliente con el ID de sesión proporcionado.");
+        }
+        return informacion;
+    }
+    
+    /**
+     * Lectura de solo consulta sobre una conexión
+     */
+    @FunctionalInterface
+    private interface Lectura<T> {
+        T leer(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * Ejecuta una lectura en una réplica si hay réplicas y la sesión no consignó
+     * hace poco; si la réplica falla o no encuentra la sesión (puede ir atrasada,
+     * por ejemplo justo después del login) la lectura se repite en la primaria.
+     * @param lectura Devuelve null si no encontró la sesión
+     */
+    private <T> T leer(String idSesion, Lectura<T> lectura) throws SQLException {
+        DBConexion db = DBConexion.getInstance();
+        if (db.tieneReplicas() && !escrituraReciente(idSesion)) {
+            try (Connection conn = db.getConnectionLectura()) {
+                T resultado = lectura.leer(conn);
+                if (resultado != null) {
+                    return resultado;
+                }
+            } catch (SQLException e) {
+                Log.advertencia("Lectura fallida en réplica, se repite en la primaria: " + e.getMessage());
             }
         }
+        try (Connection conn = db.getConnection()) {
+            return lectura.leer(conn);
+        }
+    }
+    
+    /**
+     * Tras una consignación, las lecturas de la sesión van a la primaria durante READ_YOUR_WRITES_MS
+     */
+    private void registrarEscritura(String idSesion) {
+        if (LEER_ESCRITURAS_MS <= 0 || idSesion == null || !DBConexion.getInstance().tieneReplicas()) {
+            return;
+        }
+        long ahora = System.currentTimeMillis();
+        escriturasRecientes.put(idSesion, ahora + LEER_ESCRITURAS_MS);
+        // Las sesiones que no vuelven a leer no se quitan al consultar; se limpian aquí de vez en cuando
+        if (escriturasRecientes.size() > 10000) {
+            escriturasRecientes.values().removeIf(hasta -> hasta < ahora);
+        }
+    }
+    
+    private boolean escrituraReciente(String idSesion) {
+        if (idSesion == null) {
+            return false;
+        }
+        Long hasta = escriturasRecientes.get(idSesion);
+        if (hasta == null) {
+            return false;
+        }
+        if (hasta < System.currentTimeMillis()) {
+            escriturasRecientes.remove(idSesion, hasta);
+            return false;
+        }
+        return true;
     }
     
     /**
@@ -492,23 +800,172 @@ public class GestorCuentas {
      * @throws SQLException si ocurre un error con la base de datos
      */
     public Map<String, Object> autenticarYObtenerInformacionCliente(String correo, String contrasena) throws SQLException {
-        // Limpiar prepared statements antes de comenzar
-        DBConexion.getInstance().cleanPreparedStatements();
-        
-        Map<String, Object> infoAutenticacion = autenticarUsuario(correo, contrasena);
-        if (infoAutenticacion != null) {
-            // Limpiar prepared statements entre operaciones
-            DBConexion.getInstance().cleanPreparedStatements();
-            
-            String idSesion = (String) infoAutenticacion.get("idSesion");
-            Map<String, Object> infoCliente = obtenerInformacionCliente(idSesion);
-            
-            // Agregar el token JWT a la información del cliente
-            infoCliente.put("token", infoAutenticacion.get("token"));
+        String idSesion = JWTUtil.nuevoIdSesion();
+        Map<String, Object> infoCliente = null;
+        // Si la contraseña guardada cambió entre la verificación y el UPDATE, se lee y verifica otra vez
+        for (int intento = 0; intento < 2 && infoCliente == null; intento++) {
+            // 1. Leer el hash guardado y verificarlo en el pool de hashes, sin retener una conexión
+            String queryCredenciales = "SELECT id, contrasena FROM clientes WHERE correo_electronico = ?";
+            int idCredenciales = 0;
+            String guardado = null;
+            try (Connection conn = DBConexion.getInstance().getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(queryCredenciales)) {
+                stmt.setString(1, correo);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        idCredenciales = rs.getInt("id");
+                        guardado = rs.getString("contrasena");
+                    }
+                }
+            }
+            VerificadorContrasenas.Verificacion verificacion = verificadorContrasenas.verificar(contrasena, guardado);
+            if (!verificacion.valida) {
+                return null;
+            }
             
-            return infoCliente;
-        } else {
+            // 2. Asignar la sesión y leer el perfil
+            infoCliente = iniciarSesion(idSesion, idCredenciales, guardado, verificacion.hashNuevo);
+        }
+        if (infoCliente == null) {
             return null;
         }
+        boolean sesionAnterior = (Boolean) infoCliente.remove("sesionAnterior");
+        int clienteId = (Integer) infoCliente.remove("clienteId");
+        
+        // Guardar la nueva sesión en caché hasta que expire su token (desplaza la anterior)
+        cacheSesiones.registrarLogin(idSesion, infoCliente,
+                System.currentTimeMillis() + JWTUtil.getTiempoExpiracion());
+        
+        // Agregar el token JWT a la información del cliente
+        infoCliente.put("token", JWTUtil.generarToken(clienteId, idSesion).get("token"));
+        infoCliente.put("sesionAnteriorInvalidada", sesionAnterior);
+        
+        return infoCliente;
+    }
+    
+    /**
+     * Una sola sentencia: asigna la nueva sesión (y el hash actualizado, si lo hay) y
+     * devuelve el perfil con la cuenta. El alias "anterior" es la fila antes del UPDATE,
+     * así se sabe si había una sesión activa sin otra consulta.
+     * Sin hash nuevo, la condición sobre la contraseña descarta el login si cambió
+     * después de verificarla. Con hash nuevo no se exige: varios logins simultáneos
+     * del mismo usuario calculan cada uno su hash nuevo y el primero que se guarda
+     * cambiaría la contraseña que comparan los demás.
+     * @return Perfil con "clienteId" y "sesionAnterior", o null si no se actualizó ninguna fila
+     */
+    private Map<String, Object> iniciarSesion(String idSesion, int idCliente, String guardado, String hashNuevo)
+            throws SQLException {
+        String login = "UPDATE clientes cl SET id_sesion = ?, contrasena = COALESCE(?, cl.contrasena) " +
+                       "FROM clientes anterior LEFT JOIN cuentas c ON c.cliente_id = anterior.id " +
+                       "WHERE anterior.id = cl.id AND cl.id = ? AND cl.contrasena = COALESCE(?, cl.contrasena) " +
+                       "RETURNING cl.id, cl.nombre_completo, cl.correo_electronico, cl.numero_identificacion, " +
+                       "c.numero_cuenta, c.saldo, anterior.id_sesion AS sesion_anterior";
+        
+        Map<String, Object> infoCliente = new HashMap<>();
+        try (Connection conn = DBConexion.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(login)) {
+            
+            stmt.setString(1, idSesion);
+            stmt.setString(2, hashNuevo);
+            stmt.setInt(3, idCliente);
+            stmt.setString(4, hashNuevo == null ? guardado : null);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                if (rs.getString("numero_cuenta") == null) {
+                    throw new SQLException("No se encontró la información del cliente con el ID de sesión proporcionado.");
+                }
+                infoCliente.put("clienteId", rs.getInt("id"));
+                infoCliente.put("sesionAnterior", rs.getString("sesion_anterior") != null);
+                infoCliente.put("idSesion", idSesion);
+                infoCliente.put("nombre", rs.getString("nombre_completo"));
+                infoCliente.put("correo", rs.getString("correo_electronico"));
+                infoCliente.put("identificacion", rs.getString("numero_identificacion"));
+                infoCliente.put("numeroCuenta", rs.getString("numero_cuenta"));
+                infoCliente.put("saldo", saldoActual(rs.getString("numero_cuenta"), rs.getDouble("saldo")));
+            }
+        }
+        return infoCliente;
+    }
+    
+    /**
+     * Obtiene los datos de identidad de una sesión activa, primero desde la caché
+     * de sesiones y, si no está, desde la base de datos
+     * @param idSesion ID de sesión del cliente
+     * @param expiraEn Instante (ms) en que expira el token de la sesión
+     * @return Mapa inmutable con idSesion, nombre, correo, identificacion y numeroCuenta
+     * @throws SQLException si la sesión no existe o hay un error con la base de datos
+     */
+    public Map<String, Object> obtenerSesion(String idSesion, long expiraEn) throws SQLException {
+        Map<String, Object> identidad = cacheSesiones.obtener(idSesion);
+        if (identidad != null) {
+            return identidad;
+        }
+        long version = cacheSesiones.getVersion();
+        // Siempre en la primaria: una réplica atrasada podría aceptar una sesión ya cerrada o reemplazada
+        Map<String, Object> informacion;
+        try (Connection conn = DBConexion.getInstance().getConnection()) {
+            informacion = informacionEncontrada(leerInformacionCliente(conn, idSesion));
+        }
+        return cacheSesiones.guardar(idSesion, informacion, expiraEn, version);
+    }
+    
+    /**
+     * Obtiene las estadísticas de la caché de sesiones
+     * @return Mapa con aciertos, fallos y sesiones en caché
+     */
+    public Map<String, Object> getEstadisticasCacheSesiones() {
+        return cacheSesiones.getEstadisticas();
+    }
+    
+    /**
+     * Obtiene las estadísticas de la caché de saldos
+     * @return Mapa con aciertos, fallos, tasa de aciertos e invalidaciones
+     */
+    public Map<String, Object> getEstadisticasCacheSaldos() {
+        return cacheSaldos.getEstadisticas();
+    }
+    
+    /**
+     * Obtiene las estadísticas del commit agrupado de consignaciones
+     * @return Mapa con lotes, consignaciones y tamaño de los lotes
+     */
+    public Map<String, Object> getEstadisticasCommitAgrupado() {
+        return agrupadorConsignaciones.getEstadisticas();
+    }
+    
+    /**
+     * Obtiene las estadísticas de las cuentas calientes
+     * @return Mapa con las pasadas al saldo y lo pendiente por cuenta
+     */
+    public Map<String, Object> getEstadisticasCuentasCalientes() {
+        return cuentasCalientes.getEstadisticas();
+    }
+    
+    /**
+     * Obtiene las estadísticas del asignador de números de cuenta
+     * @return Mapa con números asignados y bloques reservados
+     */
+    public Map<String, Object> getEstadisticasNumerosCuenta() {
+        return asignadorNumerosCuenta.getEstadisticas();
+    }
+    
+    /**
+     * Obtiene las estadísticas del pool de hashes de contraseñas
+     * @return Mapa con hashes calculados, rechazos y tiempos de cálculo y de cola
+     */
+    public Map<String, Object> getEstadisticasContrasenas() {
+        return verificadorContrasenas.getEstadisticas();
+    }
+    
+    /**
+     * Aplica las consignaciones pendientes, pasa al saldo lo acumulado en las
+     * cuentas calientes y detiene el pool de hashes de contraseñas
+     */
+    public void detener() {
+        agrupadorConsignaciones.detener();
+        cuentasCalientes.detener();
+        verificadorContrasenas.detener();
     }
 }
@@ -1,5 +1,6 @@
 package com.appBancaria.servicio;
 
+import com.appBancaria.config.Configuracion;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
@@ -7,10 +8,19 @@ import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JWTUtil {
     // Clave secreta para firmar el token JWT
@@ -18,18 +28,88 @@ public class JWTUtil {
     // Tiempo de expiración del token (1 hora en milisegundos)
     private static final long EXPIRATION_TIME = 3600000;
     
+    // El algoritmo y el verificador son inmutables y seguros entre hilos: se crean una sola vez
+    private static final Algorithm ALGORITMO = Algorithm.HMAC256(SECRET_KEY);
+    private static final JWTVerifier VERIFICADOR = JWT.require(ALGORITMO).build();
+    
+    // Caché de tokens ya verificados, indexada por el SHA-256 del token, válida hasta su "exp"
+    private static final int MAX_TOKENS_CACHE = Configuracion.getInt("TOKEN_CACHE_MAX", 10000);
+    private static final ConcurrentHashMap<String, TokenVerificado> tokensVerificados = new ConcurrentHashMap<>();
+    // Huellas en el orden en que se guardaron. Todos los tokens duran lo mismo, así que es
+    // también el orden en que expiran: al llenarse se descarta la más antigua sin recorrer la caché
+    private static final ConcurrentLinkedQueue<String> ordenTokens = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger tokensEnOrden = new AtomicInteger();
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+    private static final AtomicLong aciertosCache = new AtomicLong();
+    private static final AtomicLong fallosCache = new AtomicLong();
+    
+    /**
+     * Claims de un token cuya firma ya fue verificada
+     */
+    private static class TokenVerificado {
+        private final int userId;
+        private final String sessionId;
+        private final Date iat;
+        private final Date exp;
+        
+        TokenVerificado(int userId, String sessionId, Date iat, Date exp) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.iat = iat;
+            this.exp = exp;
+        }
+        
+        Map<String, Object> aClaims() {
+            Map<String, Object> claims = new HashMap<>();
+            claims.put("userId", userId);
+            claims.put("sessionId", sessionId);
+            claims.put("iat", iat);
+            claims.put("exp", exp);
+            return claims;
+        }
+    }
+    
+    /**
+     * Obtiene la duración de los tokens generados
+     * @return Tiempo de expiración en milisegundos
+     */
+    public static long getTiempoExpiracion() {
+        return EXPIRATION_TIME;
+    }
+    
     /**
      * Genera un token JWT para el usuario autenticado
      * @param userId ID del usuario en la base de datos
      * @return Token JWT generado y sessionId
      */
     public static Map<String, String> generarToken(int userId) {
+        return generarToken(userId, nuevoIdSesion());
+    }
+    
+    /**
+     * Genera un sessionId único para una nueva sesión
+     * @return sessionId
+     */
+    public static String nuevoIdSesion() {
+        return UUID.randomUUID().toString();
+    }
+    
+    /**
+     * Genera un token JWT para una sesión cuyo sessionId ya se conoce
+     * @param userId ID del usuario en la base de datos
+     * @param sessionId ID de la sesión
+     * @return Token JWT generado y sessionId
+     */
+    public static Map<String, String> generarToken(int userId, String sessionId) {
         Map<String, String> resultado = new HashMap<>();
         
         try {
-            // Generar un sessionId único
-            String sessionId = UUID.randomUUID().toString();
-            
             // Calcular fechas de emisión y expiración
             Date now = new Date();
             Date expiryDate = new Date(now.getTime() + EXPIRATION_TIME);
@@ -40,7 +120,7 @@ public class JWTUtil {
                     .withClaim("sessionId", sessionId)
                     .withIssuedAt(now)
                     .withExpiresAt(expiryDate)
-                    .sign(Algorithm.HMAC256(SECRET_KEY));
+                    .sign(ALGORITMO);
             
             resultado.put("token", token);
             resultado.put("sessionId", sessionId);
@@ -52,24 +132,76 @@ public class JWTUtil {
     }
     
     /**
-     * Valida un token JWT y devuelve la información contenida
+     * Valida un token JWT y devuelve la información contenida.
+     * Si el token ya fue verificado y no ha expirado se responde desde la caché
+     * sin repetir la verificación de la firma.
      * @param token Token JWT a validar
      * @return Mapa con la información del token, null si el token es inválido
      */
     public static Map<String, Object> validarToken(String token) {
+        String huella = huella(token);
+        TokenVerificado verificado = tokensVerificados.get(huella);
+        if (verificado != null) {
+            if (verificado.exp.getTime() > System.currentTimeMillis()) {
+                aciertosCache.incrementAndGet();
+                return verificado.aClaims();
+            }
+            tokensVerificados.remove(huella, verificado);
+        }
+        fallosCache.incrementAndGet();
+        
         try {
-            JWTVerifier verifier = JWT.require(Algorithm.HMAC256(SECRET_KEY)).build();
-            DecodedJWT jwt = verifier.verify(token);
+            DecodedJWT jwt = VERIFICADOR.verify(token);
             
-            Map<String, Object> claims = new HashMap<>();
-            claims.put("userId", jwt.getClaim("userId").asInt());
-            claims.put("sessionId", jwt.getClaim("sessionId").asString());
-            claims.put("iat", jwt.getIssuedAt());
-            claims.put("exp", jwt.getExpiresAt());
+            verificado = new TokenVerificado(
+                    jwt.getClaim("userId").asInt(),
+                    jwt.getClaim("sessionId").asString(),
+                    jwt.getIssuedAt(),
+                    jwt.getExpiresAt());
+            if (verificado.exp != null) {
+                guardarEnCache(huella, verificado);
+            }
             
-            return claims;
+            return verificado.aClaims();
         } catch (JWTVerificationException exception) {
             return null;
         }
     }
-}
\ No newline at end of file
+    
+    private static void guardarEnCache(String huella, TokenVerificado verificado) {
+        if (tokensVerificados.put(huella, verificado) != null) {
+            return;
+        }
+        ordenTokens.add(huella);
+        // Cada token nuevo desplaza a lo sumo uno, el próximo en expirar
+        if (tokensEnOrden.incrementAndGet() > MAX_TOKENS_CACHE) {
+            String masAntigua = ordenTokens.poll();
+            if (masAntigua != null) {
+                tokensEnOrden.decrementAndGet();
+                tokensVerificados.remove(masAntigua);
+            }
+        }
+    }
+    
+    private static String huella(String token) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+    
+    /**
+     * Obtiene las estadísticas de la caché de tokens verificados
+     * @return Mapa con aciertos, fallos y tokens en caché
+     */
+    public static Map<String, Object> getEstadisticasCache() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long aciertos = aciertosCache.get();
+        long total = aciertos + fallosCache.get();
+        estadisticas.put("tokens", tokensVerificados.size());
+        estadisticas.put("aciertos", aciertos);
+        estadisticas.put("fallos", fallosCache.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : aciertos / (double) total);
+        return estadisticas;
+    }
+}
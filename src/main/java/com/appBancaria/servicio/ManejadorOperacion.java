@@ -0,0 +1,20 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.RespuestaDTO;
+
+/**
+ * Lógica de una operación del protocolo (login, consulta_saldo, ...).
+ * La autenticación, las métricas y el manejo de errores los hace el servidor
+ * antes y después de llamar al manejador, según lo declarado en su {@link Operacion}.
+ */
+@FunctionalInterface
+interface ManejadorOperacion {
+
+    /**
+     * Atiende una solicitud
+     * @param contexto Solicitud, cliente y, si la operación requiere autenticación, el token ya validado
+     * @return Respuesta de la operación
+     * @throws Exception si la operación falla; el servidor la convierte en la respuesta de error de la operación
+     */
+    RespuestaDTO manejar(ContextoOperacion contexto) throws Exception;
+}
@@ -0,0 +1,214 @@
+package com.appBancaria.servicio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Descripción de una operación registrada en {@link RegistroOperaciones}:
+ * su manejador y lo que el servidor debe hacer alrededor de él
+ * (autenticación, respuesta de error, tiempo máximo esperado) junto con sus métricas.
+ * Se configura de forma encadenada al registrarla, por ejemplo:
+ * <pre>
+ * Operacion.de("consulta_saldo", this::consultarSaldo)
+ *         .autenticada("consulta de saldo")
+ *         .soloLectura()
+ *         .errores(400, "Error: ", "Error processing saldo request: ");
+ * </pre>
+ */
+final class Operacion {
+    static final long TIMEOUT_PREDETERMINADO_MS = 5000;
+    static final String MENSAJE_TOKEN_INVALIDO = "Token inválido, expirado o sesión no coincidente";
+
+    private final String nombre;
+    private final ManejadorOperacion manejador;
+    private boolean requiereAutenticacion;
+    private String accion;
+    private String mensajeTokenInvalido = MENSAJE_TOKEN_INVALIDO;
+    private boolean soloLectura;
+    private boolean cambiaSesion;
+    private long timeoutMs = TIMEOUT_PREDETERMINADO_MS;
+    private int codigoError = 500;
+    private String prefijoError = "Error interno del servidor: ";
+    private String prefijoLogError;
+    private boolean detalleErrorEnDatos;
+
+    // Métricas
+    private final AtomicLong solicitudes = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong excepciones = new AtomicLong();
+    private final AtomicLong excedidas = new AtomicLong();
+    private final AtomicLong tiempoTotalNanos = new AtomicLong();
+    private final AtomicLong tiempoMaximoNanos = new AtomicLong();
+
+    private Operacion(String nombre, ManejadorOperacion manejador) {
+        this.nombre = nombre;
+        this.manejador = manejador;
+        this.accion = nombre;
+        this.prefijoLogError = "Error en " + nombre + ": ";
+    }
+
+    /**
+     * Crea una operación que no requiere autenticación, con escritura y errores 500
+     * @param nombre Nombre de la operación (tipoOperacion, en minúsculas)
+     * @param manejador Lógica de la operación
+     */
+    static Operacion de(String nombre, ManejadorOperacion manejador) {
+        return new Operacion(nombre, manejador);
+    }
+
+    /**
+     * La operación requiere un token válido en datos.token
+     * @param accion Descripción para el log de intentos con token inválido
+     */
+    Operacion autenticada(String accion) {
+        this.requiereAutenticacion = true;
+        this.accion = accion;
+        return this;
+    }
+
+    /**
+     * Mensaje de la respuesta 401 cuando el token no es válido
+     */
+    Operacion mensajeTokenInvalido(String mensaje) {
+        this.mensajeTokenInvalido = mensaje;
+        return this;
+    }
+
+    /**
+     * La operación no modifica datos: puede atenderse en paralelo con otras de la misma conexión o lote
+     */
+    Operacion soloLectura() {
+        this.soloLectura = true;
+        return this;
+    }
+
+    /**
+     * La operación inicia o cierra una sesión: dentro de un lote, los tokens ya
+     * validados dejan de darse por buenos después de ejecutarla
+     */
+    Operacion cambiaSesion() {
+        this.cambiaSesion = true;
+        return this;
+    }
+
+    /**
+     * Tiempo máximo esperado; las ejecuciones que lo superan se registran en el log y en las métricas
+     */
+    Operacion timeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Respuesta cuando el manejador lanza una excepción
+     * @param codigo Código de la respuesta
+     * @param prefijo Prefijo del mensaje de la respuesta (se le agrega el mensaje de la excepción)
+     * @param prefijoLog Prefijo del mensaje de error en el log
+     */
+    Operacion errores(int codigo, String prefijo, String prefijoLog) {
+        this.codigoError = codigo;
+        this.prefijoError = prefijo;
+        this.prefijoLogError = prefijoLog;
+        return this;
+    }
+
+    /**
+     * Las respuestas de error incluyen además el mensaje de la excepción en datos.error
+     */
+    Operacion detalleErrorEnDatos() {
+        this.detalleErrorEnDatos = true;
+        return this;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public ManejadorOperacion getManejador() {
+        return manejador;
+    }
+
+    public boolean isRequiereAutenticacion() {
+        return requiereAutenticacion;
+    }
+
+    public String getAccion() {
+        return accion;
+    }
+
+    public String getMensajeTokenInvalido() {
+        return mensajeTokenInvalido;
+    }
+
+    public boolean isSoloLectura() {
+        return soloLectura;
+    }
+
+    public boolean isCambiaSesion() {
+        return cambiaSesion;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public int getCodigoError() {
+        return codigoError;
+    }
+
+    public String getPrefijoError() {
+        return prefijoError;
+    }
+
+    public String getPrefijoLogError() {
+        return prefijoLogError;
+    }
+
+    public boolean isDetalleErrorEnDatos() {
+        return detalleErrorEnDatos;
+    }
+
+    /**
+     * Registra una ejecución de la operación
+     * @param codigo Código de la respuesta
+     * @param excepcion true si el manejador lanzó una excepción
+     * @param nanos Duración de la ejecución
+     * @return true si la ejecución superó el tiempo máximo de la operación
+     */
+    boolean registrarEjecucion(int codigo, boolean excepcion, long nanos) {
+        solicitudes.incrementAndGet();
+        if (codigo >= 400) {
+            errores.incrementAndGet();
+        }
+        if (excepcion) {
+            excepciones.incrementAndGet();
+        }
+        tiempoTotalNanos.addAndGet(nanos);
+        tiempoMaximoNanos.accumulateAndGet(nanos, Math::max);
+        if (nanos > timeoutMs * 1_000_000L) {
+            excedidas.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Obtiene una instantánea de las métricas de la operación
+     * @return Mapa con las métricas
+     */
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        long total = solicitudes.get();
+        estadisticas.put("solicitudes", total);
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("excepciones", excepciones.get());
+        estadisticas.put("excedidas", excedidas.get());
+        estadisticas.put("tiempoPromedioMs", total == 0 ? 0.0 :
+                tiempoTotalNanos.get() / (double) total / 1_000_000.0);
+        estadisticas.put("tiempoMaximoMs", tiempoMaximoNanos.get() / 1_000_000.0);
+        estadisticas.put("soloLectura", soloLectura);
+        estadisticas.put("timeoutMs", timeoutMs);
+        return estadisticas;
+    }
+}
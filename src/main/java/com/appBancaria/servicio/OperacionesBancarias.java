@@ -0,0 +1,299 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.ConsignaDTO;
+import com.appBancaria.dto.ConsultaSaldoDTO;
+import com.appBancaria.dto.HistorialDTO;
+import com.appBancaria.dto.LoginDTO;
+import com.appBancaria.dto.RespuestaDTO;
+import com.appBancaria.dto.SaldoDTO;
+import com.appBancaria.log.Log;
+import com.appBancaria.modelo.Cliente;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manejadores de las operaciones bancarias del protocolo.
+ * Cada manejador recibe la solicitud ya autenticada (si su operación lo
+ * requiere); las excepciones que lanzan se convierten en la respuesta de
+ * error declarada al registrarlos.
+ */
+class OperacionesBancarias {
+    private final GestorCuentas gestorCuentas;
+    // Conexiones del servidor, para cerrar las de una sesión reemplazada por un nuevo login
+    private final GestorClientes gestorClientes;
+    // Transacciones por página cuando la solicitud de historial no indica tamanoPagina
+    private final int tamanoPaginaHistorial;
+
+    OperacionesBancarias(GestorCuentas gestorCuentas, GestorClientes gestorClientes, int tamanoPaginaHistorial) {
+        this.gestorCuentas = gestorCuentas;
+        this.gestorClientes = gestorClientes;
+        this.tamanoPaginaHistorial = tamanoPaginaHistorial;
+    }
+
+    /**
+     * Registra todas las operaciones bancarias
+     * @param registro Registro del servidor
+     */
+    void registrarEn(RegistroOperaciones registro) {
+        registro.registrar(Operacion.de("ping", this::ping)
+                .soloLectura()
+                .timeout(100));
+        registro.registrar(Operacion.de("consulta_saldo", this::consultarSaldo)
+                .autenticada("consulta de saldo")
+                .soloLectura()
+                .timeout(2000)
+                .errores(400, "Error: ", "Error processing saldo request: "));
+        registro.registrar(Operacion.de("crear_cuenta", this::crearCuenta)
+                .errores(400, "Error al crear cuenta: ", "Error creating account: "));
+        registro.registrar(Operacion.de("registrar_usuario", this::crearCuenta)
+                .errores(400, "Error al crear cuenta: ", "Error creating account: "));
+        registro.registrar(Operacion.de("consigna_cuenta", this::consignar)
+                .autenticada("consignación")
+                .errores(400, "Error en la consignación: ", "Error en consignación: ")
+                .detalleErrorEnDatos());
+        registro.registrar(Operacion.de("login", this::login)
+                .cambiaSesion()
+                .errores(500, "Error en la autenticación: ", "Error durante la autenticación: "));
+        registro.registrar(Operacion.de("logout", this::logout)
+                .autenticada("logout")
+                .cambiaSesion()
+                .errores(500, "Error al cerrar sesión: ", "Error al cerrar sesión: "));
+        registro.registrar(Operacion.de("historial_transacciones", this::historial)
+                .autenticada("obtener historial")
+                .soloLectura()
+                .errores(500, "Error al obtener historial de transacciones: ", "Error al obtener historial: "));
+        registro.registrar(Operacion.de("obtener_informacion_cliente", this::informacionCliente)
+                .autenticada("obtener información de cliente")
+                .soloLectura()
+                .timeout(2000)
+                .errores(500, "Error al obtener información del cliente: ", "Error al obtener información del cliente: "));
+        registro.registrar(Operacion.de("validar_token", this::validarToken)
+                .autenticada("validar token JWT")
+                .mensajeTokenInvalido("Token inválido o expirado")
+                .soloLectura()
+                .timeout(2000)
+                .errores(500, "Error al validar token: ", "Error al validar token JWT: "));
+    }
+
+    private RespuestaDTO ping(ContextoOperacion contexto) {
+        // Con datos.latido el cliente pide que el servidor le envíe latidos cuando esté inactivo
+        Object latido = contexto.getDato("latido");
+        if (latido instanceof Boolean) {
+            contexto.getClienteConectado().setLatido((Boolean) latido);
+        }
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("pong");
+        respuesta.setDatos(new HashMap<>());
+        Log.info("Ping request processed successfully");
+        return respuesta;
+    }
+
+    private RespuestaDTO consultarSaldo(ContextoOperacion contexto) throws Exception {
+        RespuestaDTO respuesta = new RespuestaDTO();
+        ConsultaSaldoDTO datosConsulta = contexto.getCarga(ConsultaSaldoDTO.class, ConsultaSaldoDTO::new);
+
+        // Extraer la información del cliente autenticado para verificación
+        Map<String, Object> infoCliente = contexto.getInfoCliente();
+        String clienteNumeroCuenta = (String) infoCliente.get("numeroCuenta");
+        String clienteIdentificacion = (String) infoCliente.get("identificacion");
+
+        // Verificar que el usuario solo pueda consultar sus propias cuentas
+        if (datosConsulta.getNumeroCuenta() != null) {
+            String numeroCuenta = datosConsulta.getNumeroCuenta();
+            Log.info("Processing saldo request for account: " + numeroCuenta);
+
+            // Verificar que el número de cuenta coincida con el del usuario autenticado
+            if (!numeroCuenta.equals(clienteNumeroCuenta)) {
+                respuesta.setCodigo(403);
+                respuesta.setMensaje("No tienes permiso para consultar esta cuenta");
+                Log.info("Intento de consulta de cuenta ajena: " + numeroCuenta + " por usuario con cuenta: " + clienteNumeroCuenta);
+                return respuesta;
+            }
+
+            // Consultar saldo solo si la cuenta pertenece al usuario
+            double saldo = gestorCuentas.consultarSaldo(numeroCuenta);
+            respuesta.setCodigo(200);
+            respuesta.setMensaje("Consulta de saldo exitosa");
+            respuesta.setDatos(new SaldoDTO(saldo));
+            Log.info("Saldo request successful for account: " + numeroCuenta);
+
+        } else if (datosConsulta.getIdentificacion() != null) {
+            int identificacion = datosConsulta.getIdentificacion();
+            Log.info("Processing saldo request for ID: " + identificacion);
+
+            // Verificar que la identificación coincida con la del usuario autenticado
+            if (!String.valueOf(identificacion).equals(clienteIdentificacion)) {
+                respuesta.setCodigo(403);
+                respuesta.setMensaje("No tienes permiso para consultar esta identificación");
+                Log.info("Intento de consulta de identificación ajena: " + identificacion + " por usuario con identificación: " + clienteIdentificacion);
+                return respuesta;
+            }
+
+            // Consultar saldo solo si la identificación pertenece al usuario
+            double saldo = gestorCuentas.consultarSaldo(identificacion);
+            respuesta.setCodigo(200);
+            respuesta.setMensaje("Consulta de saldo exitosa");
+            respuesta.setDatos(new SaldoDTO(saldo));
+            Log.info("Saldo request successful for ID: " + identificacion);
+        } else {
+            // Si no se proporciona ni número de cuenta ni identificación, consultar usando la información del token
+            double saldo = gestorCuentas.consultarSaldo(clienteNumeroCuenta);
+            respuesta.setCodigo(200);
+            respuesta.setMensaje("Consulta de saldo exitosa");
+            respuesta.setDatos(new SaldoDTO(saldo));
+            Log.info("Saldo request successful using token information for account: " + clienteNumeroCuenta);
+        }
+        return respuesta;
+    }
+
+    private RespuestaDTO crearCuenta(ContextoOperacion contexto) throws Exception {
+        Map<String, Object> datosCliente = contexto.getSolicitud().getDatos();
+        Cliente nuevoCliente = new Cliente();
+        nuevoCliente.setNombre((String) datosCliente.get("nombre"));
+        nuevoCliente.setIdentificacion(((Number) datosCliente.get("identificacion")).intValue());
+        nuevoCliente.setCorreo((String) datosCliente.get("correo"));
+        nuevoCliente.setContrasena((String) datosCliente.get("contrasena"));
+
+        Log.info("Attempting to create account for: " + nuevoCliente.getNombre() + " with email: " + nuevoCliente.getCorreo());
+        String numeroCuenta = gestorCuentas.crearCuenta(nuevoCliente);
+
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(201);
+        respuesta.setMensaje("Cuenta creada exitosamente");
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("numeroCuenta", numeroCuenta);
+        datos.put("titular", nuevoCliente.getNombre());
+        respuesta.setDatos(datos);
+        Log.info("Account successfully created for: " + nuevoCliente.getNombre() + " with account number: " + numeroCuenta);
+        return respuesta;
+    }
+
+    private RespuestaDTO consignar(ContextoOperacion contexto) throws Exception {
+        ConsignaDTO datosConsignacion = contexto.getCarga(ConsignaDTO.class, ConsignaDTO::new);
+        String sessionId = contexto.getIdSesion();
+        String numeroCuentaDestino = datosConsignacion.getNumeroCuentaDestino();
+        double monto = datosConsignacion.getMonto();
+
+        // Usar el sessionId extraído del token para realizar la consignación
+        Map<String, Object> resultadoConsignacion = gestorCuentas.consignarCuenta(
+            sessionId,
+            numeroCuentaDestino,
+            monto
+        );
+
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Consignación procesada");
+        respuesta.setDatos(resultadoConsignacion);
+        Log.info("Consignación exitosa desde sessionId: " + sessionId);
+        return respuesta;
+    }
+
+    private RespuestaDTO login(ContextoOperacion contexto) throws Exception {
+        RespuestaDTO respuesta = new RespuestaDTO();
+        LoginDTO datosLogin = contexto.getCarga(LoginDTO.class, LoginDTO::new);
+        String correo = datosLogin.getCorreo();
+        String contrasena = datosLogin.getContrasena();
+
+        // Ya no bloqueamos el login si hay una sesión activa
+        // Simplemente autenticamos y generamos un nuevo token
+
+        // Usar el método de autenticación con JWT
+        Map<String, Object> infoCliente = gestorCuentas.autenticarYObtenerInformacionCliente(correo, contrasena);
+        if (infoCliente != null) {
+            // Actualizar la información del cliente en el objeto ClienteConectado
+            String nombreCliente = (String) infoCliente.get("nombre");
+            String idSesion = (String) infoCliente.get("idSesion");
+
+            // Guardar información de sesión en el ClienteConectado
+            ClienteConectado clienteConectado = contexto.getClienteConectado();
+            clienteConectado.setInformacionCliente(nombreCliente + " (" + correo + ")");
+            clienteConectado.setCorreoUsuario(correo);
+            clienteConectado.setIdSesion(idSesion);
+
+            respuesta.setCodigo(200);
+            respuesta.setMensaje("Autenticación exitosa");
+            respuesta.setDatos(infoCliente);
+
+            Log.info("Usuario autenticado exitosamente con JWT: " + nombreCliente);
+
+            // El login ya informa si reemplazó una sesión activa anterior; las
+            // conexiones que la tenían se cierran
+            if (Boolean.TRUE.equals(infoCliente.get("sesionAnteriorInvalidada"))) {
+                Log.info("Se ha invalidado una sesión anterior del usuario: " + correo);
+                gestorClientes.cerrarSesionesDesplazadas(correo, clienteConectado);
+            }
+        } else {
+            respuesta.setCodigo(401);
+            respuesta.setMensaje("Correo o contraseña incorrectos");
+            Log.info("Intento de autenticación fallido para: " + correo);
+        }
+        return respuesta;
+    }
+
+    private RespuestaDTO logout(ContextoOperacion contexto) throws Exception {
+        String correo = (String) contexto.getDato("correo");
+        String sessionId = contexto.getIdSesion();
+
+        // Cerrar sesión usando el correo y sessionId
+        gestorCuentas.cerrarSesion(correo, sessionId);
+
+        // Actualizar la información del cliente cuando cierra sesión
+        ClienteConectado clienteConectado = contexto.getClienteConectado();
+        clienteConectado.setInformacionCliente("Cliente sin identificar (sesión cerrada)");
+
+        clienteConectado.setIdSesion(null);
+
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Sesión cerrada exitosamente");
+        Log.info("Sesión cerrada para usuario: " + correo);
+        return respuesta;
+    }
+
+    private RespuestaDTO historial(ContextoOperacion contexto) throws Exception {
+        HistorialDTO datosHistorial = contexto.getCarga(HistorialDTO.class, HistorialDTO::new);
+        String sessionId = contexto.getIdSesion();
+
+        // Paginación opcional: tamanoPagina y el cursor devuelto en la página anterior
+        Integer tamanoPagina = datosHistorial.getTamanoPagina();
+
+        // Usar el sessionId extraído del token
+        Map<String, Object> historial = gestorCuentas.obtenerHistorialTransacciones(sessionId,
+                tamanoPagina != null ? tamanoPagina : tamanoPaginaHistorial,
+                datosHistorial.getCursor());
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Historial de transacciones obtenido exitosamente");
+        respuesta.setDatos(historial);
+        Log.info("Historial de transacciones obtenido para sessionId: " + sessionId);
+        return respuesta;
+    }
+
+    private RespuestaDTO informacionCliente(ContextoOperacion contexto) throws Exception {
+        String sessionId = contexto.getIdSesion();
+
+        // Usar el sessionId extraído del token
+        Map<String, Object> informacionCliente = gestorCuentas.obtenerInformacionCliente(sessionId);
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Información del cliente obtenida exitosamente");
+        respuesta.setDatos(informacionCliente);
+        Log.info("Información de cliente obtenida para sessionId: " + sessionId);
+        return respuesta;
+    }
+
+    private RespuestaDTO validarToken(ContextoOperacion contexto) throws Exception {
+        // La caché de sesiones no guarda el saldo, así que se consulta la información completa
+        Map<String, Object> infoCliente = gestorCuentas.obtenerInformacionCliente(contexto.getIdSesion());
+
+        RespuestaDTO respuesta = new RespuestaDTO();
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Token válido");
+        respuesta.setDatos(infoCliente);
+        Log.info("Token JWT validado exitosamente");
+        return respuesta;
+    }
+}
@@ -0,0 +1,78 @@
+package com.appBancaria.servicio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de las operaciones que atiende el servidor, por nombre.
+ * Cada nombre recibido se resuelve una sola vez: las variantes en
+ * mayúsculas ("LOGIN", "Consulta_Saldo") se guardan como alias para no
+ * normalizar el nombre en cada solicitud.
+ */
+final class RegistroOperaciones {
+    // Límite de alias guardados, para que nombres arbitrarios no hagan crecer el mapa
+    private static final int MAX_ALIAS = 256;
+
+    private final Map<String, Operacion> operaciones = new LinkedHashMap<>();
+    private final Map<String, Operacion> resueltas = new ConcurrentHashMap<>();
+
+    /**
+     * Registra una operación; debe hacerse antes de empezar a atender solicitudes
+     * @param operacion Operación a registrar
+     * @throws IllegalStateException si ya hay una operación con el mismo nombre
+     */
+    void registrar(Operacion operacion) {
+        if (operaciones.containsKey(operacion.getNombre())) {
+            throw new IllegalStateException("Operación registrada dos veces: " + operacion.getNombre());
+        }
+        operaciones.put(operacion.getNombre(), operacion);
+        resueltas.put(operacion.getNombre(), operacion);
+    }
+
+    /**
+     * Obtiene la operación con un nombre, sin distinguir mayúsculas
+     * @param tipoOperacion Nombre recibido en la solicitud
+     * @return Operación, o null si no está registrada
+     */
+    Operacion resolver(String tipoOperacion) {
+        if (tipoOperacion == null) {
+            return null;
+        }
+        Operacion operacion = resueltas.get(tipoOperacion);
+        if (operacion == null) {
+            operacion = operaciones.get(tipoOperacion.toLowerCase());
+            if (operacion != null && resueltas.size() < MAX_ALIAS) {
+                resueltas.put(tipoOperacion, operacion);
+            }
+        }
+        return operacion;
+    }
+
+    /**
+     * Indica si una operación es de solo lectura
+     * @param tipoOperacion Nombre recibido en la solicitud
+     * @return false si la operación no existe o modifica datos
+     */
+    boolean esSoloLectura(String tipoOperacion) {
+        Operacion operacion = resolver(tipoOperacion);
+        return operacion != null && operacion.isSoloLectura();
+    }
+
+    boolean cambiaSesion(String tipoOperacion) {
+        Operacion operacion = resolver(tipoOperacion);
+        return operacion != null && operacion.isCambiaSesion();
+    }
+
+    /**
+     * Obtiene las métricas de todas las operaciones registradas
+     * @return Mapa nombre de operación -> métricas
+     */
+    Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        for (Operacion operacion : operaciones.values()) {
+            estadisticas.put(operacion.getNombre(), operacion.getEstadisticas());
+        }
+        return estadisticas;
+    }
+}
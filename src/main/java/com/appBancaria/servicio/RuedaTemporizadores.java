@@ -0,0 +1,172 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.log.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rueda de temporizadores (hashed timer wheel).
+ * Los temporizadores se guardan en la ranura del tick en que vencen, así que
+ * programar y cancelar cuestan O(1) y en cada tick solo se revisa una ranura:
+ * el trabajo es proporcional a los temporizadores que vencen, no al total.
+ * Las acciones se ejecutan en el hilo de la rueda, por lo que deben ser cortas.
+ */
+final class RuedaTemporizadores {
+    private final long tickNanos;
+    private final Temporizador[] ranuras;
+    private final int mascara;
+    private final ReentrantLock bloqueo = new ReentrantLock();
+    private final Thread hilo;
+    // Tick que se procesará a continuación; protegido por "bloqueo"
+    private long tickActual;
+    private volatile boolean activa = true;
+
+    /**
+     * @param tickMs Duración de un tick (resolución de los temporizadores)
+     * @param ranuras Número de ranuras (se redondea a potencia de 2)
+     * @param nombreHilo Nombre del hilo de la rueda
+     */
+    RuedaTemporizadores(long tickMs, int ranuras, String nombreHilo) {
+        int tamano = Integer.highestOneBit(Math.max(2, ranuras) * 2 - 1);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.ranuras = new Temporizador[tamano];
+        this.mascara = tamano - 1;
+        this.hilo = new Thread(this::girar, nombreHilo);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Programa una acción
+     * @param retrasoMs Tiempo hasta que se ejecute (se redondea hacia arriba al tick)
+     * @param accion Acción a ejecutar en el hilo de la rueda
+     * @return Temporizador, que puede cancelarse
+     */
+    Temporizador programar(long retrasoMs, Runnable accion) {
+        long ticks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(retrasoMs) + tickNanos - 1) / tickNanos);
+        Temporizador temporizador = new Temporizador(accion);
+        bloqueo.lock();
+        try {
+            long vence = tickActual + ticks;
+            temporizador.rondas = (ticks - 1) / ranuras.length;
+            insertar(temporizador, (int) (vence & mascara));
+        } finally {
+            bloqueo.unlock();
+        }
+        return temporizador;
+    }
+
+    /**
+     * Detiene la rueda; los temporizadores pendientes no se ejecutan
+     */
+    void detener() {
+        activa = false;
+        hilo.interrupt();
+    }
+
+    private void girar() {
+        long siguienteTick = System.nanoTime() + tickNanos;
+        List<Temporizador> vencidos = new ArrayList<>();
+        while (activa) {
+            long espera = siguienteTick - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException e) {
+                    if (!activa) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            siguienteTick += tickNanos;
+
+            bloqueo.lock();
+            try {
+                tickActual++;
+                int indice = (int) (tickActual & mascara);
+                Temporizador actual = ranuras[indice];
+                while (actual != null) {
+                    Temporizador siguiente = actual.siguiente;
+                    if (actual.rondas > 0) {
+                        actual.rondas--;
+                    } else {
+                        quitar(actual);
+                        vencidos.add(actual);
+                    }
+                    actual = siguiente;
+                }
+            } finally {
+                bloqueo.unlock();
+            }
+
+            for (Temporizador temporizador : vencidos) {
+                try {
+                    temporizador.accion.run();
+                } catch (RuntimeException e) {
+                    Log.error("Error en un temporizador: " + e.getMessage());
+                }
+            }
+            vencidos.clear();
+        }
+    }
+
+    private void insertar(Temporizador temporizador, int indice) {
+        temporizador.ranura = indice;
+        temporizador.siguiente = ranuras[indice];
+        if (ranuras[indice] != null) {
+            ranuras[indice].anterior = temporizador;
+        }
+        ranuras[indice] = temporizador;
+    }
+
+    private void quitar(Temporizador temporizador) {
+        if (temporizador.anterior != null) {
+            temporizador.anterior.siguiente = temporizador.siguiente;
+        } else {
+            ranuras[temporizador.ranura] = temporizador.siguiente;
+        }
+        if (temporizador.siguiente != null) {
+            temporizador.siguiente.anterior = temporizador.anterior;
+        }
+        temporizador.anterior = null;
+        temporizador.siguiente = null;
+        temporizador.ranura = -1;
+    }
+
+    /**
+     * Temporizador programado en la rueda
+     */
+    final class Temporizador {
+        private final Runnable accion;
+        // Enlaces de la lista de su ranura; protegidos por "bloqueo"
+        private Temporizador anterior;
+        private Temporizador siguiente;
+        private int ranura = -1;
+        private long rondas;
+
+        private Temporizador(Runnable accion) {
+            this.accion = accion;
+        }
+
+        /**
+         * Cancela el temporizador si aún no venció
+         * @return true si se canceló antes de ejecutarse
+         */
+        boolean cancelar() {
+            bloqueo.lock();
+            try {
+                if (ranura < 0) {
+                    return false;
+                }
+                quitar(this);
+                return true;
+            } finally {
+                bloqueo.unlock();
+            }
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package com.appBancaria.servicio;
 
+import com.appBancaria.dto.AdaptadoresDTO;
+import com.appBancaria.dto.ConToken;
 import com.appBancaria.dto.RespuestaDTO;
 import com.appBancaria.dto.SolicitudDTO;
-import com.appBancaria.modelo.Cliente;
 import com.appBancaria.db.DBConexion;
+import com.appBancaria.config.Configuracion;
+import com.appBancaria.protocolo.ProtocoloBinario;
+import com.appBancaria.log.Log;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
@@ -17,28 +27,64 @@ import java.net.SocketException;
 import com.google.gson.Gson;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Servidor {
     private final int PORT;
     private ServerSocket serverSocket;
     private boolean running = true;
-    private final Gson gson = new Gson();
+    // Gson compartido con los adaptadores de los DTO registrados una sola vez
+    private final Gson gson = AdaptadoresDTO.crearGson();
     private final GestorCuentas gestorCuentas = new GestorCuentas();
     private final GestorClientes gestorClientes;
+    // Ejecutor que atiende a cada cliente conectado ("plataforma" o "virtual")
+    private final String modoEjecucion = Configuracion.get("SERVER_EXECUTOR_MODE", Ejecutores.MODO_PLATAFORMA);
+    private ExecutorService ejecutorClientes;
+    // Transporte de red: "bloqueante" (un hilo por conexión) o "nio" (selector + trabajadores)
+    private final String transporte = Configuracion.get("SERVER_TRANSPORT", "bloqueante");
+    private TransporteNIO transporteNIO;
+    // Limita las solicitudes procesadas a la vez para no saturar la base de datos
+    private final ControlAdmision controlAdmision = new ControlAdmision(
+            Configuracion.getInt("SERVER_MAX_CONCURRENT", 20),
+            Configuracion.getInt("SERVER_MAX_QUEUE", 100),
+            Configuracion.getLong("SERVER_QUEUE_TIMEOUT_MS", 1000));
+    // Procesa las solicitudes que no se atienden en el hilo de la conexión
+    // (transporte NIO y solicitudes con idSolicitud que se atienden en paralelo)
+    private ExecutorService ejecutorSolicitudes;
+    private VigilanteConexiones vigilanteConexiones;
+    
+    // Máximo de operaciones que puede traer una solicitud "lote"
+    private final int maxOperacionesLote = Configuracion.getInt("LOTE_MAX_OPERACIONES", 50);
+    // Operaciones que atiende el servidor. Las de solo lectura, con idSolicitud,
+    // pueden atenderse en paralelo dentro de una misma conexión o lote; el resto
+    // se atiende siempre en orden
+    private final RegistroOperaciones registroOperaciones = new RegistroOperaciones();
     
     // Constructor que permite especificar el puerto
     public Servidor(int port) {
         this.PORT = port;
-        this.gestorClientes = new GestorClientes(gestorCuentas);
+        this.gestorClientes = new GestorClientes();
+        registrarOperaciones();
     }
     
     // Constructor predeterminado
     public Servidor() {
-        this.PORT = 12345;
-        this.gestorClientes = new GestorClientes(gestorCuentas);
+        this(12345);
+    }
+
+    private void registrarOperaciones() {
+        new OperacionesBancarias(gestorCuentas, gestorClientes, Configuracion.getInt("HISTORIAL_PAGE_SIZE", 50))
+                .registrarEn(registroOperaciones);
+        registroOperaciones.registrar(Operacion.de("lote", this::procesarLote)
+                .timeout(30000));
     }
     
     // Método para obtener la lista de clientes conectados
@@ -46,30 +92,55 @@ public class Servidor {
         return gestorClientes.getClientesConectados();
     }
     
+    // Método para obtener las estadísticas del control de admisión (cola y rechazos)
+    public Map<String, Object> getEstadisticasAdmision() {
+        return controlAdmision.getEstadisticas();
+    }
+    
+    // Método para obtener las métricas de cada operación (solicitudes, errores, tiempos)
+    public Map<String, Object> getEstadisticasOperaciones() {
+        return registroOperaciones.getEstadisticas();
+    }
+    
     public void iniciar() {
         try {
             // Test database connection before starting the server
-            DBConexion.getInstance().getConnection();
-            log("Database connection established successfully!");
+            try (Connection conexionPrueba = DBConexion.getInstance().getConnection()) {
+                if (!conexionPrueba.isValid(5)) {
+                    throw new SQLException("The database did not answer the connection test");
+                }
+                Log.info("Database connection established successfully!");
+            }
             
             iniciarServidor();
-            
-            // Iniciar temporizador para verificar clientes periódicamente
-            gestorClientes.iniciarVerificadorClientes();
         } catch (SQLException e) {
-            logError("Failed to connect to database: " + e.getMessage());
+            Log.error("Failed to connect to database: " + e.getMessage());
             return; // Don't start server if database connection fails
         }
     }
 
     private void iniciarServidor() {
+        ejecutorSolicitudes = Ejecutores.trabajadores(modoEjecucion,
+                Configuracion.getInt("SERVER_WORKERS", 16), "trabajador-");
+        // Cierra las conexiones sin actividad (clientes caídos o conexiones medio abiertas)
+        vigilanteConexiones = new VigilanteConexiones(
+                Configuracion.getLong("SERVER_IDLE_TIMEOUT_MS", 300000),
+                Configuracion.getLong("SERVER_HEARTBEAT_MS", 0),
+                ejecutorSolicitudes);
+        if ("nio".equalsIgnoreCase(transporte)) {
+            iniciarServidorNIO();
+            return;
+        }
+        
         new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
+                    ejecutorClientes = Ejecutores.hiloPorTarea(modoEjecucion, "cliente-");
                     serverSocket = new ServerSocket(PORT);
-                    log("Server started on port " + PORT);
-                    log("Waiting for client connections...");
+                    Log.info("Server started on port " + PORT + " (hilos " +
+                            (Ejecutores.usaHilosVirtuales(modoEjecucion) ? "virtuales" : "de plataforma") + ")");
+                    Log.info("Waiting for client connections...");
 
                     while (running) {
                         Socket clientSocket = serverSocket.accept();
@@ -77,25 +148,38 @@ public class Servidor {
                         ClienteConectado clienteConectado = new ClienteConectado(clientSocket);
                         gestorClientes.agregarCliente(clienteConectado);
                         
-                        // Create a new thread for each client
-                        new Thread(new ClientHandler(clientSocket, clienteConectado)).start();
+                        // Atender a cada cliente en su propio hilo (de plataforma o virtual)
+                        ejecutorClientes.execute(new ClientHandler(clientSocket, clienteConectado));
                     }
                 } catch (IOException ex) {
                     if (running) {
-                        logError("Server error: " + ex.getMessage());
-                        ex.printStackTrace();
+                        Log.error("Server error: " + ex.getMessage(), ex);
                     } else {
-                        log("Server socket closed");
+                        Log.info("Server socket closed");
                     }
                 }
             }
         }).start();
     }
 
+    private void iniciarServidorNIO() {
+        try {
+            transporteNIO = new TransporteNIO(this, gestorClientes, PORT,
+                    Configuracion.getInt("SERVER_NIO_IO_THREADS", 2), ejecutorSolicitudes);
+            transporteNIO.iniciar();
+            Log.info("Waiting for client connections...");
+        } catch (IOException ex) {
+            Log.error("Server error: " + ex.getMessage(), ex);
+        }
+    }
+
     private class ClientHandler implements Runnable {
         private Socket clientSocket;
         private BufferedReader in;
         private PrintWriter out;
+        // Flujos del protocolo binario, si el cliente lo negoció
+        private DataInputStream entradaBinaria;
+        private DataOutputStream salidaBinaria;
         private ClienteConectado clienteConectado;
 
         public ClientHandler(Socket socket, ClienteConectado clienteConectado) {
@@ -106,463 +190,576 @@ public class Servidor {
         @Override
         public void run() {
             try {
-                log("New client connected: " + clientSocket.getInetAddress());
+                Log.info("New client connected: " + clientSocket.getInetAddress());
+                
+                // El primer byte decide el protocolo: el byte de negociación binaria o el inicio de una línea JSON
+                BufferedInputStream entrada = new BufferedInputStream(clientSocket.getInputStream());
+                entrada.mark(1);
+                int primerByte = entrada.read();
+                boolean binario = primerByte == (ProtocoloBinario.HANDSHAKE & 0xFF);
+                if (!binario && primerByte >= 0) {
+                    entrada.reset();
+                }
                 
-                // Initialize input/output streams
-                in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
+                // Las solicitudes sin idSolicitud se atienden en este mismo hilo, como siempre
+                DespachadorConexion.Respondedor respondedor;
+                if (binario) {
+                    entradaBinaria = new DataInputStream(entrada);
+                    salidaBinaria = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+                    escribirBytes(new byte[] {ProtocoloBinario.HANDSHAKE});
+                    respondedor = (solicitud, respuesta) -> escribirBytes(serializarBinario(solicitud, respuesta));
+                    Log.info("Cliente " + clientSocket.getInetAddress() + " usa el protocolo binario");
+                } else {
+                    // Initialize input/output streams
+                    in = new BufferedReader(new InputStreamReader(entrada));
+                    out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
+                    // PrintWriter sincroniza println, así que las respuestas no se intercalan
+                    respondedor = (solicitud, respuesta) -> out.println(serializarJson(respuesta));
+                }
+                DespachadorConexion despachador = new DespachadorConexion(Servidor.this, clienteConectado,
+                        ejecutorSolicitudes, respondedor, true);
+                // Cerrar el socket desbloquea la lectura de este hilo, que termina la conexión
+                clienteConectado.setCierre(this::cerrarSocket);
+                vigilarConexion(clienteConectado, this::cerrarSocket, respondedor);
                 
                 // Keep processing requests while the connection is alive
                 while (!clientSocket.isClosed()) {
                     try {
-                        // Process client request
-                        RespuestaDTO respuesta = procesarSolicitud();
-                        
-                        // Si la respuesta es null, significa que el cliente se ha desconectado
-                        if (respuesta == null) {
-                            log("Cliente desconectado o error de lectura: " + clientSocket.getInetAddress());
-                            break;
+                        boolean congestionada;
+                        if (binario) {
+                            byte[] trama = ProtocoloBinario.leerTrama(entradaBinaria);
+                            if (trama == null) {
+                                Log.info("Cliente desconectado o error de lectura: " + clientSocket.getInetAddress());
+                                break;
+                            }
+                            clienteConectado.registrarActividad();
+                            congestionada = recibirTrama(despachador, trama);
+                        } else {
+                            // Leer la solicitud del cliente
+                            String jsonRequest = in.readLine();
+                            
+                            // Si jsonRequest es null, el cliente se ha desconectado
+                            if (jsonRequest == null) {
+                                Log.info("Cliente desconectado o error de lectura: " + clientSocket.getInetAddress());
+                                break;
+                            }
+                            clienteConectado.registrarActividad();
+                            congestionada = despachador.recibir(jsonRequest);
                         }
                         
-                        // Send response back to client
-                        out.println(gson.toJson(respuesta));
+                        // Process client request and send response back to client
+                        if (congestionada) {
+                            // Demasiadas solicitudes en curso: dejar de leer hasta que avancen
+                            despachador.esperarDescongestion();
+                        }
                         
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
                     } catch (SocketException se) {
                         // Si hay un problema con el socket, rompemos el bucle
-                        log("Socket error con cliente " + clientSocket.getInetAddress() + ": " + se.getMessage());
+                        Log.info("Socket error con cliente " + clientSocket.getInetAddress() + ": " + se.getMessage());
                         break;
                     } catch (IOException ioe) {
                         // Si hay un error de I/O, rompemos el bucle
-                        log("Error I/O con cliente " + clientSocket.getInetAddress() + ": " + ioe.getMessage());
+                        Log.info("Error I/O con cliente " + clientSocket.getInetAddress() + ": " + ioe.getMessage());
                         break;
-                    } catch (Exception e) {
-                        // Log del error pero continuamos el bucle para otras solicitudes
-                        logError("Error procesando solicitud del cliente " + clientSocket.getInetAddress() + ": " + e.getMessage());
-                        // Si el error es grave, podríamos enviar una respuesta de error al cliente
-                        RespuestaDTO errorResponse = new RespuestaDTO();
-                        errorResponse.setCodigo(500);
-                        errorResponse.setMensaje("Error interno del servidor: " + e.getMessage());
-                        out.println(gson.toJson(errorResponse));
                     }
                 }
                 
             } catch (IOException e) {
-                log("Error de conexión con cliente: " + clientSocket.getInetAddress());
-                logError("Detalles: " + e.getMessage());
+                Log.info("Error de conexión con cliente: " + clientSocket.getInetAddress());
+                Log.error("Detalles: " + e.getMessage());
             } finally {
+                finalizarConexion(clienteConectado);
                 try {
-                    // Cerrar sesión si el cliente tenía una sesión activa
-                    if (clienteConectado.isSesionActiva() && clienteConectado.getCorreoUsuario() != null && clienteConectado.getIdSesion() != null) {
-                        try {
-                            log("Cerrando sesión de cliente desconectado: " + clienteConectado.getCorreoUsuario());
-                            gestorCuentas.cerrarSesion(clienteConectado.getCorreoUsuario(), clienteConectado.getIdSesion());
-                            log("Sesión cerrada exitosamente para: " + clienteConectado.getCorreoUsuario());
-                        } catch (SQLException ex) {
-                            logError("Error al cerrar sesión en cierre de cliente: " + ex.getMessage());
-                        }
-                    }
-                    
-                    // Eliminar el cliente de la lista cuando se desconecta
-                    gestorClientes.removerCliente(clienteConectado);
-                    log("Cliente removido de la lista de conexiones activas: " + clienteConectado.getDireccionIP());
-                    
                     if (out != null) out.close();
                     if (in != null) in.close();
+                    if (salidaBinaria != null) salidaBinaria.close();
                     if (clientSocket != null && !clientSocket.isClosed()) clientSocket.close();
                 } catch (IOException e) {
-                    logError("Error closing client connection: " + e.getMessage());
+                    Log.error("Error closing client connection: " + e.getMessage());
                 }
             }
         }
 
-        public RespuestaDTO procesarSolicitud() throws IOException {
-            // Leer la solicitud del cliente
-            String jsonRequest = in.readLine();
-            
-            // Si jsonRequest es null, el cliente se ha desconectado
-            if (jsonRequest == null) {
-                return null;
+        private boolean recibirTrama(DespachadorConexion despachador, byte[] trama) {
+            SolicitudDTO solicitud;
+            try {
+                solicitud = decodificarBinario(trama, 0, trama.length);
+            } catch (IOException e) {
+                Log.error("Trama inválida del cliente " + clienteConectado.getDireccionIP() + ": " + e.getMessage());
+                return despachador.recibirInvalida("Invalid request format");
             }
+            return despachador.recibir(solicitud);
+        }
 
-            SolicitudDTO solicitud = gson.fromJson(jsonRequest, SolicitudDTO.class);
-            if (solicitud == null || solicitud.getTipoOperacion() == null) {
-                // Handle invalid request format
-                RespuestaDTO errorResponse = new RespuestaDTO();
-                errorResponse.setCodigo(400);
-                errorResponse.setMensaje("Invalid request format");
-                return errorResponse;
+        private void cerrarSocket() {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                Log.error("Error closing client connection: " + e.getMessage());
             }
-            log("Request received: " + solicitud.getTipoOperacion());
-            
-            RespuestaDTO respuesta = new RespuestaDTO();
-            
-            switch (solicitud.getTipoOperacion().toLowerCase()) {
-
-                case "ping":
-                    // Nueva implementación para responder al ping
-                    respuesta.setCodigo(200);
-                    respuesta.setMensaje("pong");
-                    // Puedes incluir un mapa vacío o datos adicionales si lo deseas
-                    respuesta.setDatos(new HashMap<>());
-                    log("Ping request processed successfully");
-                    break;
-
-                case "consulta_saldo":
-                    try {
-                        // Verificar el token JWT primero
-                        String token = (String) solicitud.getDatos().get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo == null) {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
-                            log("Intento de consulta de saldo con token inválido");
-                            return respuesta;
-                        }
-                        
-                        String sessionId = (String) tokenInfo.get("sessionId");
-                        Map<String, Object> infoCliente = (Map<String, Object>) tokenInfo.get("infoCliente");
-                        
-                        // Extraer la información del cliente autenticado para verificación
-                        String clienteNumeroCuenta = (String) infoCliente.get("numeroCuenta");
-                        String clienteIdentificacion = (String) infoCliente.get("identificacion");
-                        
-                        // Verificar que el usuario solo pueda consultar sus propias cuentas
-                        if (solicitud.getDatos().containsKey("numeroCuenta")) {
-                            String numeroCuenta = (String) solicitud.getDatos().get("numeroCuenta");
-                            log("Processing saldo request for account: " + numeroCuenta);
-                            
-                            // Verificar que el número de cuenta coincida con el del usuario autenticado
-                            if (!numeroCuenta.equals(clienteNumeroCuenta)) {
-                                respuesta.setCodigo(403);
-                                respuesta.setMensaje("No tienes permiso para consultar esta cuenta");
-                                log("Intento de consulta de cuenta ajena: " + numeroCuenta + " por usuario con cuenta: " + clienteNumeroCuenta);
-                                return respuesta;
-                            }
-                            
-                            // Consultar saldo solo si la cuenta pertenece al usuario
-                            double saldo = gestorCuentas.consultarSaldo(numeroCuenta);
-                            respuesta.setCodigo(200);
-                            respuesta.setMensaje("Consulta de saldo exitosa");
-                            Map<String, Object> datos = new HashMap<>();
-                            datos.put("saldo", saldo);
-                            respuesta.setDatos(datos);
-                            log("Saldo request successful for account: " + numeroCuenta);
-                            
-                        } else if (solicitud.getDatos().containsKey("identificacion")) {
-                            int identificacion = ((Number) solicitud.getDatos().get("identificacion")).intValue();
-                            log("Processing saldo request for ID: " + identificacion);
-                            
-                            // Verificar que la identificación coincida con la del usuario autenticado
-                            if (!String.valueOf(identificacion).equals(clienteIdentificacion)) {
-                                respuesta.setCodigo(403);
-                                respuesta.setMensaje("No tienes permiso para consultar esta identificación");
-                                log("Intento de consulta de identificación ajena: " + identificacion + " por usuario con identificación: " + clienteIdentificacion);
-                                return respuesta;
-                            }
-                            
-                            // Consultar saldo solo si la identificación pertenece al usuario
-                            double saldo = gestorCuentas.consultarSaldo(identificacion);
-                            respuesta.setCodigo(200);
-                            respuesta.setMensaje("Consulta de saldo exitosa");
-                            Map<String, Object> datos = new HashMap<>();
-                            datos.put("saldo", saldo);
-                            respuesta.setDatos(datos);
-                            log("Saldo request successful for ID: " + identificacion);
-                        } else {
-                            // Si no se proporciona ni número de cuenta ni identificación, consultar usando la información del token
-                            double saldo = gestorCuentas.consultarSaldo(clienteNumeroCuenta);
-                            respuesta.setCodigo(200);
-                            respuesta.setMensaje("Consulta de saldo exitosa");
-                            Map<String, Object> datos = new HashMap<>();
-                            datos.put("saldo", saldo);
-                            respuesta.setDatos(datos);
-                            log("Saldo request successful using token information for account: " + clienteNumeroCuenta);
-                        }
-                    } catch (Exception e) {
-                        respuesta.setCodigo(400);
-                        respuesta.setMensaje("Error: " + e.getMessage());
-                        logError("Error processing saldo request: " + e.getMessage());
-                    }
-                    break;
+        }
 
-                case "crear_cuenta":
-                case "registrar_usuario":
-                    try {
-                        Map<String, Object> datosCliente = solicitud.getDatos();
-                        Cliente nuevoCliente = new Cliente();
-                        nuevoCliente.setNombre((String) datosCliente.get("nombre"));
-                        nuevoCliente.setIdentificacion(((Number) datosCliente.get("identificacion")).intValue());
-                        nuevoCliente.setCorreo((String) datosCliente.get("correo"));
-                        nuevoCliente.setContrasena((String) datosCliente.get("contrasena"));
-                        
-                        log("Attempting to create account for: " + nuevoCliente.getNombre() + " with email: " + nuevoCliente.getCorreo());
-                        String numeroCuenta = gestorCuentas.crearCuenta(nuevoCliente);
-                        
-                        respuesta.setCodigo(201);
-                        respuesta.setMensaje("Cuenta creada exitosamente");
-                        Map<String, Object> datos = new HashMap<>();
-                        datos.put("numeroCuenta", numeroCuenta);
-                        datos.put("titular", nuevoCliente.getNombre());
-                        respuesta.setDatos(datos);
-                        log("Account successfully created for: " + nuevoCliente.getNombre() + " with account number: " + numeroCuenta);
-                    } catch (Exception e) {
-                        respuesta.setCodigo(400);
-                        respuesta.setMensaje("Error al crear cuenta: " + e.getMessage());
-                        logError("Error creating account: " + e.getMessage());
-                    }
-                    break;
+        private void escribirBytes(byte[] bytes) {
+            // Las respuestas pueden escribirse desde varios hilos (solicitudes en paralelo)
+            synchronized (salidaBinaria) {
+                try {
+                    salidaBinaria.write(bytes);
+                    salidaBinaria.flush();
+                } catch (IOException e) {
+                    Log.info("Error I/O con cliente " + clientSocket.getInetAddress() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
 
-                case "consigna_cuenta":
-                    try {
-                        Map<String, Object> datosConsignacion = solicitud.getDatos();
-                        
-                        // Verificar el token JWT
-                        String token = (String) datosConsignacion.get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo == null) {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
-                            log("Intento de consignación con token inválido");
-                            return respuesta;
-                        }
-                        
-                        String sessionId = (String) tokenInfo.get("sessionId");
-                        String numeroCuentaDestino = (String) datosConsignacion.get("numeroCuentaDestino");
-                        double monto = ((Number) datosConsignacion.get("monto")).doubleValue();
-
-                        // Usar el sessionId extraído del token para realizar la consignación
-                        Map<String, Object> resultadoConsignacion = gestorCuentas.consignarCuenta(
-                            sessionId, 
-                            numeroCuentaDestino, 
-                            monto
-                        );
-
-                        respuesta.setCodigo(200);
-                        respuesta.setMensaje("Consignación procesada");
-                        respuesta.setDatos(resultadoConsignacion);
-                        log("Consignación exitosa desde sessionId: " + sessionId);
-                    } catch (Exception e) {
-                        respuesta.setCodigo(400);
-                        respuesta.setMensaje("Error en la consignación: " + e.getMessage());
-                        Map<String, Object> datosError = new HashMap<>();
-                        datosError.put("error", e.getMessage());
-                        respuesta.setDatos(datosError);
-                        logError("Error en consignación: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Convierte una línea JSON recibida de un cliente en una solicitud
+     * @param jsonRequest Línea recibida
+     * @param clienteConectado Cliente que envió la línea
+     * @return Solicitud, o null si la línea está vacía
+     */
+    SolicitudDTO parsearSolicitud(String jsonRequest, ClienteConectado clienteConectado) {
+        try {
+            return gson.fromJson(jsonRequest, SolicitudDTO.class);
+        } catch (RuntimeException e) {
+            Log.error("Error procesando solicitud del cliente " + clienteConectado.getDireccionIP() + ": " + e.getMessage());
+            throw e;
+        }
+    }
 
-                case "login":
-                    try {
-                        String correo = (String) solicitud.getDatos().get("correo");
-                        String contrasena = (String) solicitud.getDatos().get("contrasena");
+    /**
+     * Indica si una solicitud debe atenderse en orden respecto de las demás de su conexión.
+     * Solo las operaciones de solo lectura que traen idSolicitud pueden atenderse en paralelo.
+     * @param solicitud Solicitud ya parseada
+     * @return true si la solicitud debe esperar a las anteriores
+     */
+    boolean requiereOrden(SolicitudDTO solicitud) {
+        return solicitud.getIdSolicitud() == null
+                || !registroOperaciones.esSoloLectura(solicitud.getTipoOperacion());
+    }
 
-                        // Ya no bloqueamos el login si hay una sesión activa
-                        // Simplemente autenticamos y generamos un nuevo token
-                        
-                        // Usar el método de autenticación con JWT
-                        Map<String, Object> infoCliente = gestorCuentas.autenticarYObtenerInformacionCliente(correo, contrasena);
-                        if (infoCliente != null) {
-                            // Actualizar la información del cliente en el objeto ClienteConectado
-                            String nombreCliente = (String) infoCliente.get("nombre");
-                            String idSesion = (String) infoCliente.get("idSesion");
-                            
-                            // Guardar información de sesión en el ClienteConectado
-                            clienteConectado.setInformacionCliente(nombreCliente + " (" + correo + ")");
-                            clienteConectado.setCorreoUsuario(correo);
-                            clienteConectado.setIdSesion(idSesion);
-                            
-                            respuesta.setCodigo(200);
-                            respuesta.setMensaje("Autenticación exitosa");
-                            respuesta.setDatos(infoCliente);
-                            
-                            log("Usuario autenticado exitosamente con JWT: " + nombreCliente);
-                            
-                            // Si había una sesión activa anterior, ha sido sobrescrita automáticamente
-                            // en el método actualizarIdSesion de GestorCuentas
-                            boolean teniaSessionActiva = gestorCuentas.verificarSesionActiva(correo);
-                            if (teniaSessionActiva) {
-                                log("Se ha invalidado una sesión anterior del usuario: " + correo);
-                            }
-                        } else {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Correo o contraseña incorrectos");
-                            log("Intento de autenticación fallido para: " + correo);
-                        }
-                    } catch (Exception e) {
-                        respuesta.setCodigo(500);
-                        respuesta.setMensaje("Error en la autenticación: " + e.getMessage());
-                        logError("Error durante la autenticación: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Crea una respuesta de error
+     * @param codigo Código de la respuesta
+     * @param mensaje Mensaje de error
+     * @param idSolicitud ID de la solicitud a la que responde (puede ser null)
+     * @return Respuesta de error
+     */
+    RespuestaDTO respuestaError(int codigo, String mensaje, String idSolicitud) {
+        RespuestaDTO error = new RespuestaDTO();
+        error.setCodigo(codigo);
+        error.setMensaje(mensaje);
+        error.setIdSolicitud(idSolicitud);
+        return error;
+    }
 
-                case "logout":
-                    try {
-                        String correo = (String) solicitud.getDatos().get("correo");
-                        
-                        // Verificar el token JWT
-                        String token = (String) solicitud.getDatos().get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo == null) {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
-                            log("Intento de logout con token inválido");
-                            return respuesta;
-                        }
-                        
-                        String sessionId = (String) tokenInfo.get("sessionId");
-                        
-                        // Cerrar sesión usando el correo y sessionId
-                        gestorCuentas.cerrarSesion(correo, sessionId);
-                        
-                        // Actualizar la información del cliente cuando cierra sesión
-                        clienteConectado.setInformacionCliente("Cliente sin identificar (sesión cerrada)");
-                        
-                        clienteConectado.setIdSesion(null);
-                        
-                        respuesta.setCodigo(200);
-                        respuesta.setMensaje("Sesión cerrada exitosamente");
-                        log("Sesión cerrada para usuario: " + correo);
-                    } catch (Exception e) {
-                        respuesta.setCodigo(500);
-                        respuesta.setMensaje("Error al cerrar sesión: " + e.getMessage());
-                        logError("Error al cerrar sesión: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Serializa una respuesta para el protocolo JSON
+     * @param respuesta Respuesta a enviar
+     * @return Respuesta en formato JSON (sin salto de línea)
+     */
+    String serializarJson(RespuestaDTO respuesta) {
+        return gson.toJson(respuesta);
+    }
 
-                case "historial_transacciones":
-                    try {
-                        // Verificar el token JWT
-                        String token = (String) solicitud.getDatos().get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo == null) {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
-                            log("Intento de obtener historial con token inválido");
-                            return respuesta;
-                        }
-                        
-                        String sessionId = (String) tokenInfo.get("sessionId");
-                        
-                        // Usar el sessionId extraído del token
-                        Map<String, Object> historial = gestorCuentas.obtenerHistorialTransacciones(sessionId);
-                        respuesta.setCodigo(200);
-                        respuesta.setMensaje("Historial de transacciones obtenido exitosamente");
-                        respuesta.setDatos(historial);
-                        log("Historial de transacciones obtenido para sessionId: " + sessionId);
-                    } catch (Exception e) {
-                        respuesta.setCodigo(500);
-                        respuesta.setMensaje("Error al obtener historial de transacciones: " + e.getMessage());
-                        logError("Error al obtener historial: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Serializa una respuesta como trama del protocolo binario
+     * @param solicitud Solicitud respondida (puede ser null)
+     * @param respuesta Respuesta a enviar
+     * @return Trama completa, con el prefijo de longitud
+     */
+    byte[] serializarBinario(SolicitudDTO solicitud, RespuestaDTO respuesta) {
+        return ProtocoloBinario.codificarRespuesta(solicitud != null ? solicitud.getTipoOperacion() : null, respuesta, gson);
+    }
 
-                case "obtener_informacion_cliente":
-                    try {
-                        // Verificar el token JWT
-                        String token = (String) solicitud.getDatos().get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo == null) {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
-                            log("Intento de obtener información de cliente con token inválido");
-                            return respuesta;
-                        }
-                        
-                        String sessionId = (String) tokenInfo.get("sessionId");
-                        
-                        // Usar el sessionId extraído del token
-                        Map<String, Object> informacionCliente = gestorCuentas.obtenerInformacionCliente(sessionId);
-                        respuesta.setCodigo(200);
-                        respuesta.setMensaje("Información del cliente obtenida exitosamente");
-                        respuesta.setDatos(informacionCliente);
-                        log("Información de cliente obtenida para sessionId: " + sessionId);
-                    } catch (Exception e) {
-                        respuesta.setCodigo(500);
-                        respuesta.setMensaje("Error al obtener información del cliente: " + e.getMessage());
-                        logError("Error al obtener información del cliente: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Decodifica una trama del protocolo binario
+     * @param datos Buffer con la trama
+     * @param desde Posición donde empieza el contenido (después de la longitud)
+     * @param longitud Longitud del contenido
+     * @return Solicitud decodificada
+     * @throws IOException si la trama está mal formada
+     */
+    SolicitudDTO decodificarBinario(byte[] datos, int desde, int longitud) throws IOException {
+        try {
+            return ProtocoloBinario.decodificarSolicitud(datos, desde, longitud, gson);
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
-                case "validar_token":
-                    try {
-                        String token = (String) solicitud.getDatos().get("token");
-                        Map<String, Object> tokenInfo = validarYObtenerInfoToken(token);
-                        
-                        if (tokenInfo != null) {
-                            String sessionId = (String) tokenInfo.get("sessionId");
-                            // Información del cliente ya se obtuvo en validarYObtenerInfoToken()
-                            Map<String, Object> infoCliente = (Map<String, Object>) tokenInfo.get("infoCliente");
-                            
-                            respuesta.setCodigo(200);
-                            respuesta.setMensaje("Token válido");
-                            respuesta.setDatos(infoCliente);
-                            log("Token JWT validado exitosamente");
-                        } else {
-                            respuesta.setCodigo(401);
-                            respuesta.setMensaje("Token inválido o expirado");
-                            log("Intento de validar token JWT inválido");
-                        }
-                    } catch (Exception e) {
-                        respuesta.setCodigo(500);
-                        respuesta.setMensaje("Error al validar token: " + e.getMessage());
-                        logError("Error al validar token JWT: " + e.getMessage());
-                    }
-                    break;
+    /**
+     * Procesa una solicitud de un cliente y devuelve la respuesta.
+     * Es el punto de entrada común para todos los transportes y protocolos.
+     * @param solicitud Solicitud recibida
+     * @param clienteConectado Cliente que envió la solicitud
+     * @return Respuesta con el mismo idSolicitud de la solicitud
+     */
+    RespuestaDTO atenderSolicitud(SolicitudDTO solicitud, ClienteConectado clienteConectado) {
+        // Si el servidor está saturado se responde de inmediato sin procesar la solicitud
+        if (!controlAdmision.adquirir()) {
+            Log.info("Solicitud rechazada por saturación de " + clienteConectado.getDireccionIP());
+            return respuestaError(503, "Servidor ocupado, intente de nuevo más tarde", solicitud.getIdSolicitud());
+        }
+        
+        RespuestaDTO respuesta;
+        try {
+            respuesta = procesarSolicitud(solicitud, clienteConectado);
+        } catch (Exception e) {
+            // Log del error pero continuamos atendiendo otras solicitudes
+            Log.error("Error procesando solicitud del cliente " + clienteConectado.getDireccionIP() + ": " + e.getMessage());
+            respuesta = new RespuestaDTO();
+            respuesta.setCodigo(500);
+            respuesta.setMensaje("Error interno del servidor: " + e.getMessage());
+        } finally {
+            controlAdmision.liberar();
+        }
+        respuesta.setIdSolicitud(solicitud.getIdSolicitud());
+        return respuesta;
+    }
 
-                default:
-                    respuesta.setCodigo(400);
-                    respuesta.setMensaje("Operación no soportada");
-                    log("Unsupported operation: " + solicitud.getTipoOperacion());
-                    break;
+    /**
+     * Empieza a vigilar la inactividad de una conexión (y a enviarle latidos si los pide)
+     * @param clienteConectado Cliente de la conexión
+     * @param cerrar Cierra la conexión; debe poder llamarse desde cualquier hilo
+     * @param respondedor Envía mensajes por la conexión
+     */
+    void vigilarConexion(ClienteConectado clienteConectado, Runnable cerrar, DespachadorConexion.Respondedor respondedor) {
+        if (vigilanteConexiones != null) {
+            vigilanteConexiones.vigilar(clienteConectado, cerrar, respondedor);
+        }
+    }
+
+    /**
+     * Libera los recursos asociados a un cliente que se desconectó:
+     * cierra su sesión activa y lo elimina de la lista de conexiones
+     * @param clienteConectado Cliente desconectado
+     */
+    void finalizarConexion(ClienteConectado clienteConectado) {
+        if (vigilanteConexiones != null) {
+            vigilanteConexiones.dejarDeVigilar(clienteConectado);
+        }
+        
+        // Cerrar sesión si el cliente tenía una sesión activa
+        if (clienteConectado.isSesionActiva() && clienteConectado.getCorreoUsuario() != null && clienteConectado.getIdSesion() != null) {
+            try {
+                Log.info("Cerrando sesión de cliente desconectado: " + clienteConectado.getCorreoUsuario());
+                gestorCuentas.cerrarSesion(clienteConectado.getCorreoUsuario(), clienteConectado.getIdSesion());
+                Log.info("Sesión cerrada exitosamente para: " + clienteConectado.getCorreoUsuario());
+            } catch (SQLException ex) {
+                Log.error("Error al cerrar sesión en cierre de cliente: " + ex.getMessage());
             }
-            
+        }
+        
+        // Eliminar el cliente de la lista cuando se desconecta
+        gestorClientes.removerCliente(clienteConectado);
+        Log.info("Cliente removido de la lista de conexiones activas: " + clienteConectado.getDireccionIP());
+    }
+
+    private RespuestaDTO procesarSolicitud(SolicitudDTO solicitud, ClienteConectado clienteConectado) {
+        return procesarSolicitud(solicitud, clienteConectado, null);
+    }
+
+    /**
+     * Procesa una solicitud con el manejador registrado para su operación.
+     * Aquí se hacen, una sola vez para todas las operaciones, la validación
+     * del token, las métricas por operación y la conversión de excepciones
+     * en la respuesta de error de cada operación.
+     * @param solicitud Solicitud a procesar
+     * @param clienteConectado Cliente que envió la solicitud
+     * @param tokensLote Tokens ya validados dentro del lote en curso, o null fuera de un lote
+     * @return Respuesta de la operación
+     */
+    private RespuestaDTO procesarSolicitud(SolicitudDTO solicitud, ClienteConectado clienteConectado,
+                                           Map<String, Map<String, Object>> tokensLote) {
+        Log.info("Request received: " + solicitud.getTipoOperacion());
+        
+        Operacion operacion = registroOperaciones.resolver(solicitud.getTipoOperacion());
+        if (operacion == null) {
+            Log.info("Unsupported operation: " + solicitud.getTipoOperacion());
+            return respuestaError(400, "Operación no soportada", null);
+        }
+        
+        long inicio = System.nanoTime();
+        RespuestaDTO respuesta;
+        boolean excepcion = false;
+        try {
+            Map<String, Object> tokenInfo = null;
+            if (operacion.isRequiereAutenticacion()) {
+                // Verificar el token JWT antes de ejecutar la operación
+                tokenInfo = validarToken(tokenDe(solicitud), tokensLote);
+                if (tokenInfo == null) {
+                    Log.info("Intento de " + operacion.getAccion() + " con token inválido");
+                    respuesta = respuestaError(401, operacion.getMensajeTokenInvalido(), null);
+                    operacion.registrarEjecucion(401, false, System.nanoTime() - inicio);
+                    return respuesta;
+                }
+            }
+            respuesta = operacion.getManejador().manejar(
+                    new ContextoOperacion(solicitud, clienteConectado, tokenInfo, tokensLote));
+        } catch (VerificadorContrasenas.Saturado e) {
+            // El pool de hashes de contraseñas está lleno: igual que la saturación del servidor
+            respuesta = respuestaError(503, e.getMessage(), null);
+        } catch (Exception e) {
+            excepcion = true;
+            Log.error(operacion.getPrefijoLogError() + e.getMessage());
+            respuesta = respuestaError(operacion.getCodigoError(), operacion.getPrefijoError() + e.getMessage(), null);
+            if (operacion.isDetalleErrorEnDatos()) {
+                Map<String, Object> datosError = new HashMap<>();
+                datosError.put("error", e.getMessage());
+                respuesta.setDatos(datosError);
+            }
+        }
+        
+        long duracion = System.nanoTime() - inicio;
+        if (operacion.registrarEjecucion(respuesta.getCodigo(), excepcion, duracion)) {
+            Log.advertencia("La operación " + operacion.getNombre() + " tardó " + duracion / 1_000_000
+                    + " ms (máximo esperado " + operacion.getTimeoutMs() + " ms)");
+        }
+        return respuesta;
+    }
+
+    /**
+     * Obtiene el token de una solicitud, de sus datos tipados o de datos.token
+     */
+    private static String tokenDe(SolicitudDTO solicitud) {
+        ConToken conToken = solicitud.getCarga(ConToken.class);
+        if (conToken != null) {
+            return conToken.getToken();
+        }
+        Object token = solicitud.getDatos() != null ? solicitud.getDatos().get("token") : null;
+        return token instanceof String ? (String) token : null;
+    }
+
+    private RespuestaDTO procesarLote(ContextoOperacion contexto) {
+        if (contexto.getTokensLote() != null) {
+            return respuestaError(400, "Un lote no puede contener otro lote", null);
+        }
+        return procesarLote(contexto.getSolicitud(), contexto.getClienteConectado());
+    }
+
+    /**
+     * Procesa una solicitud "lote": varias operaciones en una sola solicitud.
+     * El token del lote se valida una sola vez y las operaciones que no traen
+     * token propio lo heredan. Las operaciones de solo lectura consecutivas se
+     * ejecutan en paralelo; las demás se ejecutan en orden. Las respuestas se
+     * devuelven en el mismo orden de las operaciones, en datos.respuestas.
+     * @param solicitud Solicitud con datos.operaciones (y opcionalmente datos.token)
+     * @param clienteConectado Cliente que envió la solicitud
+     * @return Respuesta con la lista de respuestas individuales
+     */
+    private RespuestaDTO procesarLote(SolicitudDTO solicitud, ClienteConectado clienteConectado) {
+        RespuestaDTO respuesta = new RespuestaDTO();
+        Object operaciones = solicitud.getDatos() != null ? solicitud.getDatos().get("operaciones") : null;
+        if (!(operaciones instanceof List) || ((List<?>) operaciones).isEmpty()) {
+            respuesta.setCodigo(400);
+            respuesta.setMensaje("El lote debe incluir una lista de operaciones");
+            return respuesta;
+        }
+        List<?> lista = (List<?>) operaciones;
+        if (lista.size() > maxOperacionesLote) {
+            respuesta.setCodigo(400);
+            respuesta.setMensaje("El lote excede el máximo de " + maxOperacionesLote + " operaciones");
+            return respuesta;
+        }
+        
+        String tokenLote = (String) solicitud.getDatos().get("token");
+        Map<String, Map<String, Object>> tokensValidados = new ConcurrentHashMap<>();
+        // Validar el token del lote antes de ejecutar cualquier operación
+        if (tokenLote != null && validarToken(tokenLote, tokensValidados) == null) {
+            respuesta.setCodigo(401);
+            respuesta.setMensaje("Token inválido, expirado o sesión no coincidente");
+            Log.info("Intento de ejecutar un lote con token inválido");
             return respuesta;
         }
+
+        List<SolicitudDTO> subSolicitudes = new ArrayList<>(lista.size());
+        for (Object operacion : lista) {
+            SolicitudDTO sub = gson.fromJson(gson.toJsonTree(operacion), SolicitudDTO.class);
+            if (sub != null && sub.getTipoOperacion() != null && tokenLote != null) {
+                Class<?> claseDatos = AdaptadoresDTO.claseDatos(sub.getTipoOperacion());
+                if (claseDatos != null) {
+                    if (sub.getCarga() == null) {
+                        sub.setCarga(gson.fromJson("{}", claseDatos));
+                    }
+                    ConToken conToken = sub.getCarga(ConToken.class);
+                    if (conToken != null && conToken.getToken() == null) {
+                        conToken.setToken(tokenLote);
+                    }
+                } else {
+                    Map<String, Object> datos = sub.getDatos() != null ? sub.getDatos() : new HashMap<>();
+                    if (!datos.containsKey("token")) {
+                        datos.put("token", tokenLote);
+                    }
+                    sub.setDatos(datos);
+                }
+            }
+            subSolicitudes.add(sub);
+        }
+        Log.info("Procesando lote de " + subSolicitudes.size() + " operaciones");
+        
+        RespuestaDTO[] respuestas = new RespuestaDTO[subSolicitudes.size()];
+        int i = 0;
+        while (i < subSolicitudes.size()) {
+            // Agrupar las operaciones de solo lectura consecutivas
+            int fin = i;
+            while (fin < subSolicitudes.size() && esConcurrente(subSolicitudes.get(fin))) {
+                fin++;
+            }
+            if (fin - i > 1) {
+                procesarEnParalelo(subSolicitudes, i, fin, respuestas, clienteConectado, tokensValidados);
+                i = fin;
+            } else {
+                respuestas[i] = procesarOperacionLote(subSolicitudes.get(i), clienteConectado, tokensValidados);
+                i++;
+            }
+        }
+        
+        Map<String, Object> datos = new HashMap<>();
+        datos.put("respuestas", Arrays.asList(respuestas));
+        respuesta.setCodigo(200);
+        respuesta.setMensaje("Lote procesado");
+        respuesta.setDatos(datos);
+        return respuesta;
+    }
+
+    private boolean esConcurrente(SolicitudDTO solicitud) {
+        return solicitud != null && registroOperaciones.esSoloLectura(solicitud.getTipoOperacion());
+    }
+
+    /**
+     * Ejecuta en paralelo las operaciones [desde, hasta) del lote. El hilo que llama
+     * ejecuta él mismo las que ningún trabajador haya tomado todavía, de modo que
+     * nunca espera por una tarea que no ha empezado (no hay bloqueo aunque el pool esté lleno).
+     * Cada operación enviada a un trabajador ocupa su propio turno de admisión, así un
+     * lote no supera SERVER_MAX_CONCURRENT; sin turnos libres se ejecuta en este hilo.
+     */
+    private void procesarEnParalelo(List<SolicitudDTO> subSolicitudes, int desde, int hasta, RespuestaDTO[] respuestas,
+                                    ClienteConectado clienteConectado, Map<String, Map<String, Object>> tokensValidados) {
+        List<FutureTask<RespuestaDTO>> tareas = new ArrayList<>(hasta - desde);
+        for (int j = desde; j < hasta; j++) {
+            SolicitudDTO sub = subSolicitudes.get(j);
+            // La primera la ejecuta este mismo hilo, con el turno del lote
+            boolean enTrabajador = j > desde && ejecutorSolicitudes != null && controlAdmision.intentarAdquirir();
+            AtomicBoolean turnoPendiente = new AtomicBoolean(enTrabajador);
+            FutureTask<RespuestaDTO> tarea = new FutureTask<>(() -> {
+                try {
+                    return procesarOperacionLote(sub, clienteConectado, tokensValidados);
+                } finally {
+                    if (turnoPendiente.getAndSet(false)) {
+                        controlAdmision.liberar();
+                    }
+                }
+            });
+            tareas.add(tarea);
+            if (enTrabajador) {
+                try {
+                    ejecutorSolicitudes.execute(tarea);
+                } catch (RejectedExecutionException e) {
+                    // Se ejecutará en este hilo, que ya tiene el turno del lote
+                    if (turnoPendiente.getAndSet(false)) {
+                        controlAdmision.liberar();
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < tareas.size(); j++) {
+            FutureTask<RespuestaDTO> tarea = tareas.get(j);
+            tarea.run();
+            try {
+                respuestas[desde + j] = tarea.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respuestas[desde + j] = respuestaErrorLote(subSolicitudes.get(desde + j), 500, "Error interno del servidor: interrumpido");
+            } catch (ExecutionException e) {
+                respuestas[desde + j] = respuestaErrorLote(subSolicitudes.get(desde + j), 500,
+                        "Error interno del servidor: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    private RespuestaDTO procesarOperacionLote(SolicitudDTO sub, ClienteConectado clienteConectado,
+                                               Map<String, Map<String, Object>> tokensValidados) {
+        if (sub == null || sub.getTipoOperacion() == null) {
+            return respuestaErrorLote(sub, 400, "Invalid request format");
+        }
+        RespuestaDTO respuesta;
+        try {
+            respuesta = procesarSolicitud(sub, clienteConectado, tokensValidados);
+        } catch (Exception e) {
+            Log.error("Error procesando operación de lote del cliente " + clienteConectado.getDireccionIP() + ": " + e.getMessage());
+            respuesta = respuestaErrorLote(sub, 500, "Error interno del servidor: " + e.getMessage());
+        }
+        // Un logout (o un login que reemplaza la sesión) invalida tokens ya validados en el lote;
+        // las siguientes operaciones los validan de nuevo
+        if (registroOperaciones.cambiaSesion(sub.getTipoOperacion())) {
+            tokensValidados.clear();
+        }
+        respuesta.setIdSolicitud(sub.getIdSolicitud());
+        return respuesta;
+    }
+
+    private RespuestaDTO respuestaErrorLote(SolicitudDTO sub, int codigo, String mensaje) {
+        return respuestaError(codigo, mensaje, sub != null ? sub.getIdSolicitud() : null);
     }
 
     public void detener() {
         try {
-            log("Stopping server...");
+            Log.info("Stopping server...");
             running = false;
             
-            log("Cerrando conexiones de clientes...");
-            gestorClientes.detenerVerificador();
+            Log.info("Cerrando conexiones de clientes...");
+            if (vigilanteConexiones != null) vigilanteConexiones.detener();
             int sesionesTotales = gestorClientes.cerrarTodasLasConexiones();
             
-            log("Total de conexiones: " + sesionesTotales);
+            Log.info("Total de conexiones: " + sesionesTotales);
             
             // Cerrar el socket del servidor
             if (serverSocket != null) serverSocket.close();
+            if (ejecutorClientes != null) ejecutorClientes.shutdownNow();
+            if (transporteNIO != null) transporteNIO.detener();
+            if (ejecutorSolicitudes != null) ejecutorSolicitudes.shutdownNow();
+            gestorCuentas.detener();
             
             // Cerrar la conexión a la base de datos
             DBConexion.getInstance().closeConnection();
-            log("Database connection closed");
-            log("Server stopped");
+            Log.info("Database connection closed");
+            Log.info("Server stopped");
         } catch (IOException e) {
-            logError("Error stopping server: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error stopping server: " + e.getMessage(), e);
         }
     }
 
-    private void log(String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        System.out.println("[" + sdf.format(new Date()) + "] " + message);
-    }
 
-    private void logError(String message) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        System.err.println("[" + sdf.format(new Date()) + "] ERROR: " + message);
+
+    /**
+     * Valida un token; dentro de un lote cada token distinto se valida una sola vez
+     * @param token Token JWT
+     * @param tokensLote Tokens ya validados en el lote en curso, o null fuera de un lote
+     * @return Información del token o null si no es válido
+     */
+    private Map<String, Object> validarToken(String token, Map<String, Map<String, Object>> tokensLote) {
+        if (tokensLote == null || token == null) {
+            return validarYObtenerInfoToken(token);
+        }
+        Map<String, Object> tokenInfo = tokensLote.get(token);
+        if (tokenInfo == null) {
+            tokenInfo = validarYObtenerInfoToken(token);
+            if (tokenInfo == null) {
+                return null;
+            }
+            tokensLote.putIfAbsent(token, tokenInfo);
+        }
+        return tokenInfo;
     }
 
     private Map<String, Object> validarYObtenerInfoToken(String token) {
         try {
             if (token == null || token.isEmpty()) {
-                logError("Token JWT nulo o vacío");
+                Log.error("Token JWT nulo o vacío");
                 return null;
             }
             
@@ -570,7 +767,7 @@ public class Servidor {
             Map<String, Object> tokenInfo = JWTUtil.validarToken(token);
             
             if (tokenInfo == null) {
-                logError("Token JWT inválido o expirado");
+                Log.error("Token JWT inválido o expirado");
                 return null;
             }
             
@@ -578,11 +775,12 @@ public class Servidor {
             String sessionId = (String) tokenInfo.get("sessionId");
             
             try {
-                // Verificar que el sessionId existe en la base de datos (coincidencia con id_sesion)
-                Map<String, Object> infoCliente = gestorCuentas.obtenerInformacionCliente(sessionId);
+                // Verificar que el sessionId corresponde a una sesión activa (caché o id_sesion en la BD)
+                Date expiracion = (Date) tokenInfo.get("exp");
+                Map<String, Object> infoCliente = gestorCuentas.obtenerSesion(sessionId, expiracion.getTime());
                 
                 if (infoCliente == null) {
-                    logError("No se encontró una sesión activa para el sessionId: " + sessionId);
+                    Log.error("No se encontró una sesión activa para el sessionId: " + sessionId);
                     return null;
                 }
                 
@@ -591,11 +789,11 @@ public class Servidor {
                 
                 return tokenInfo;
             } catch (SQLException e) {
-                logError("Error al validar el sessionId: " + e.getMessage());
+                Log.error("Error al validar el sessionId: " + e.getMessage());
                 return null;
             }
         } catch (Exception e) {
-            logError("Error al validar el token JWT: " + e.getMessage());
+            Log.error("Error al validar el token JWT: " + e.getMessage());
             return null;
         }
     }
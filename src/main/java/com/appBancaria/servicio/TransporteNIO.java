@@ -0,0 +1,530 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.RespuestaDTO;
+import com.appBancaria.dto.SolicitudDTO;
+import com.appBancaria.log.Log;
+import com.appBancaria.protocolo.ProtocoloBinario;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transporte no bloqueante del servidor basado en {@link Selector}.
+ * Un hilo acepta conexiones y las reparte entre unos pocos hilos de I/O; cada
+ * hilo de I/O lee con un buffer reutilizable, separa las líneas JSON por '\n'
+ * y entrega cada solicitud completa a un pool de trabajadores. El protocolo es
+ * el mismo del transporte bloqueante (una línea JSON por solicitud y por respuesta,
+ * o tramas de {@link ProtocoloBinario} si el cliente lo negocia con su primer byte)
+ * y el orden de las solicitudes lo decide {@link DespachadorConexion}.
+ */
+class TransporteNIO {
+    private static final int TAMANO_BUFFER = 16 * 1024;
+    // Tamaño máximo de una línea; evita que un cliente haga crecer el buffer sin límite
+    private static final int MAX_LINEA = 1024 * 1024;
+
+    private final Servidor servidor;
+    private final GestorClientes gestorClientes;
+    private final int puerto;
+    private final int hilosIO;
+    private final ExecutorService trabajadores;
+    // Mismo charset que usan InputStreamReader/PrintWriter en el transporte bloqueante
+    private final Charset charset = Charset.defaultCharset();
+    private final byte[] finDeLinea = System.lineSeparator().getBytes(charset);
+
+    private ServerSocketChannel canalServidor;
+    private BucleIO[] bucles;
+    private volatile boolean activo = false;
+
+    TransporteNIO(Servidor servidor, GestorClientes gestorClientes, int puerto, int hilosIO, ExecutorService trabajadores) {
+        this.servidor = servidor;
+        this.gestorClientes = gestorClientes;
+        this.puerto = puerto;
+        this.hilosIO = Math.max(1, hilosIO);
+        this.trabajadores = trabajadores;
+    }
+
+    /**
+     * Abre el puerto y arranca los hilos de aceptación y de I/O
+     * @throws IOException si no se puede abrir el puerto
+     */
+    void iniciar() throws IOException {
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto));
+        activo = true;
+
+        bucles = new BucleIO[hilosIO];
+        for (int i = 0; i < hilosIO; i++) {
+            bucles[i] = new BucleIO();
+            Thread hilo = new Thread(bucles[i], "nio-io-" + (i + 1));
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        Thread aceptador = new Thread(this::aceptarConexiones, "nio-aceptador");
+        aceptador.setDaemon(true);
+        aceptador.start();
+        Log.info("Servidor NIO iniciado en el puerto " + puerto + " con " + hilosIO + " hilos de I/O");
+    }
+
+    private void aceptarConexiones() {
+        int siguiente = 0;
+        while (activo) {
+            try {
+                SocketChannel canal = canalServidor.accept();
+                canal.configureBlocking(false);
+                canal.socket().setTcpNoDelay(true);
+
+                ClienteConectado clienteConectado = new ClienteConectado(canal.socket());
+                gestorClientes.agregarCliente(clienteConectado);
+                Log.info("New client connected: " + canal.socket().getInetAddress());
+
+                BucleIO bucle = bucles[siguiente];
+                siguiente = (siguiente + 1) % bucles.length;
+                ConexionNIO conexion = new ConexionNIO(canal, clienteConectado, bucle);
+                clienteConectado.setCierre(conexion::cerrar);
+                bucle.registrar(conexion);
+                servidor.vigilarConexion(clienteConectado, conexion::cerrar, conexion::responder);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (activo) {
+                    Log.error("Error aceptando conexión: " + e.getMessage());
+                }
+            }
+        }
+        Log.info("Server socket closed");
+    }
+
+    /**
+     * Detiene el transporte y cierra todas sus conexiones
+     */
+    void detener() {
+        activo = false;
+        try {
+            if (canalServidor != null) canalServidor.close();
+        } catch (IOException e) {
+            Log.error("Error cerrando el canal del servidor: " + e.getMessage());
+        }
+        if (bucles != null) {
+            for (BucleIO bucle : bucles) {
+                bucle.detener();
+            }
+        }
+    }
+
+    /**
+     * Hilo de I/O: atiende las lecturas y escrituras de las conexiones registradas en su selector
+     */
+    private class BucleIO implements Runnable {
+        private final Selector selector;
+        // Buffer de lectura compartido por todas las conexiones de este hilo
+        private final ByteBuffer lectura = ByteBuffer.allocate(TAMANO_BUFFER);
+        // Tareas enviadas desde otros hilos que deben ejecutarse en este
+        private final Queue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+
+        BucleIO() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void registrar(ConexionNIO conexion) {
+            conexion.ejecutarEnBucle(() -> {
+                try {
+                    conexion.clave = conexion.canal.register(selector, SelectionKey.OP_READ, conexion);
+                } catch (ClosedChannelException e) {
+                    conexion.cerrar();
+                }
+            });
+        }
+
+        void ejecutar(Runnable tarea) {
+            tareas.add(tarea);
+            selector.wakeup();
+        }
+
+        void detener() {
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (activo) {
+                try {
+                    selector.select();
+                    Runnable tarea;
+                    while ((tarea = tareas.poll()) != null) {
+                        try {
+                            tarea.run();
+                        } catch (RuntimeException e) {
+                            // Una tarea fallida no debe detener el hilo ni dejar colgadas sus demás conexiones
+                            Log.error("Error en una tarea del hilo de I/O: " + e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey clave = it.next();
+                        it.remove();
+                        ConexionNIO conexion = (ConexionNIO) clave.attachment();
+                        try {
+                            if (clave.isValid() && clave.isReadable()) {
+                                leer(conexion);
+                            }
+                            if (clave.isValid() && clave.isWritable()) {
+                                conexion.escribirPendiente();
+                            }
+                        } catch (IOException e) {
+                            Log.info("Error I/O con cliente " + conexion.cliente.getDireccionIP() + ": " + e.getMessage());
+                            conexion.cerrar();
+                        } catch (CancelledKeyException e) {
+                            // Otro hilo cerró la conexión mientras se atendía
+                            conexion.cerrar();
+                        } catch (RuntimeException e) {
+                            Log.error("Error inesperado con cliente " + conexion.cliente.getDireccionIP() + ": " + e);
+                            conexion.cerrar();
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.error("Error en el selector NIO: " + e.getMessage());
+                }
+            }
+
+            // Cerrar las conexiones que quedaron registradas en este hilo
+            for (SelectionKey clave : selector.keys()) {
+                if (clave.attachment() instanceof ConexionNIO) {
+                    ((ConexionNIO) clave.attachment()).cerrar();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Log.error("Error cerrando el selector NIO: " + e.getMessage());
+            }
+        }
+
+        private void leer(ConexionNIO conexion) throws IOException {
+            int leidos;
+            do {
+                lectura.clear();
+                leidos = conexion.canal.read(lectura);
+                if (leidos < 0) {
+                    Log.info("Cliente desconectado o error de lectura: " + conexion.cliente.getDireccionIP());
+                    conexion.cerrar();
+                    return;
+                }
+                lectura.flip();
+                if (leidos > 0) {
+                    conexion.cliente.registrarActividad();
+                }
+                conexion.procesarLectura(lectura);
+            } while (leidos == TAMANO_BUFFER && !conexion.lecturaPausada);
+        }
+    }
+
+    /**
+     * Estado de una conexión NIO: protocolo negociado, acumulado de la línea o
+     * trama incompleta, despachador de sus solicitudes y cola de respuestas por escribir
+     */
+    private class ConexionNIO {
+        private final SocketChannel canal;
+        private final ClienteConectado cliente;
+        private final BucleIO bucle;
+        private SelectionKey clave;
+
+        // null hasta recibir el primer byte; luego indica si la conexión usa el protocolo binario
+        private Boolean binario;
+
+        // Bytes de una línea o trama que aún no llega completa (solo se usa si hace falta)
+        private byte[] parcial = new byte[0];
+        private int parcialLongitud = 0;
+
+        // Reparte las solicitudes de esta conexión entre los trabajadores
+        private final DespachadorConexion despachador;
+        private volatile boolean lecturaPausada = false;
+
+        private final ArrayDeque<ByteBuffer> salida = new ArrayDeque<>();
+        private final AtomicBoolean cerrada = new AtomicBoolean(false);
+
+        ConexionNIO(SocketChannel canal, ClienteConectado cliente, BucleIO bucle) {
+            this.canal = canal;
+            this.cliente = cliente;
+            this.bucle = bucle;
+            this.despachador = new DespachadorConexion(servidor, cliente, trabajadores, this::responder, false);
+            this.despachador.setAlDescongestionar(() -> ejecutarEnBucle(this::reanudarLectura));
+        }
+
+        /**
+         * Procesa los bytes leídos según el protocolo de la conexión (hilo de I/O)
+         */
+        void procesarLectura(ByteBuffer buffer) throws IOException {
+            if (binario == null) {
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+                binario = buffer.get(buffer.position()) == ProtocoloBinario.HANDSHAKE;
+                if (binario) {
+                    buffer.get();
+                    enviarBytes(ByteBuffer.wrap(new byte[] {ProtocoloBinario.HANDSHAKE}));
+                    Log.info("Cliente " + cliente.getDireccionIP() + " usa el protocolo binario");
+                }
+            }
+            if (binario) {
+                extraerTramas(buffer);
+            } else {
+                extraerLineas(buffer);
+            }
+        }
+
+        /**
+         * Separa las líneas completas del buffer leído (hilo de I/O)
+         */
+        private void extraerLineas(ByteBuffer buffer) throws IOException {
+            byte[] datos = buffer.array();
+            int inicio = buffer.position();
+            int fin = buffer.limit();
+            for (int i = inicio; i < fin; i++) {
+                if (datos[i] == '\n') {
+                    String linea;
+                    if (parcialLongitud == 0) {
+                        linea = decodificar(datos, inicio, i - inicio);
+                    } else {
+                        acumular(datos, inicio, i - inicio);
+                        linea = decodificar(parcial, 0, parcialLongitud);
+                        parcialLongitud = 0;
+                    }
+                    encolar(linea);
+                    inicio = i + 1;
+                }
+            }
+            if (inicio < fin) {
+                acumular(datos, inicio, fin - inicio);
+            }
+        }
+
+        /**
+         * Separa las tramas completas del buffer leído (hilo de I/O)
+         */
+        private void extraerTramas(ByteBuffer buffer) throws IOException {
+            byte[] datos = buffer.array();
+            int inicio = buffer.position();
+            int fin = buffer.limit();
+            // Completar primero la trama que quedó a medias en la lectura anterior
+            while (parcialLongitud > 0 && inicio < fin) {
+                int tomar = Math.min(faltanteTrama(parcial, 0, parcialLongitud), fin - inicio);
+                acumular(datos, inicio, tomar);
+                inicio += tomar;
+                if (faltanteTrama(parcial, 0, parcialLongitud) == 0) {
+                    recibirTrama(parcial, 4, parcialLongitud - 4);
+                    parcialLongitud = 0;
+                }
+            }
+            // Las tramas completas se decodifican directamente desde el buffer de lectura
+            while (inicio < fin && faltanteTrama(datos, inicio, fin - inicio) == 0) {
+                int longitud = leerLongitud(datos, inicio);
+                recibirTrama(datos, inicio + 4, longitud);
+                inicio += 4 + longitud;
+            }
+            if (inicio < fin) {
+                acumular(datos, inicio, fin - inicio);
+            }
+        }
+
+        /**
+         * Bytes que faltan para completar la trama que empieza en desde (0 si está completa)
+         */
+        private int faltanteTrama(byte[] datos, int desde, int disponible) throws IOException {
+            if (disponible < 4) {
+                return 4 - disponible;
+            }
+            int longitud = leerLongitud(datos, desde);
+            ProtocoloBinario.validarLongitud(longitud);
+            return Math.max(0, 4 + longitud - disponible);
+        }
+
+        private int leerLongitud(byte[] datos, int desde) {
+            return ((datos[desde] & 0xFF) << 24) | ((datos[desde + 1] & 0xFF) << 16)
+                    | ((datos[desde + 2] & 0xFF) << 8) | (datos[desde + 3] & 0xFF);
+        }
+
+        private void recibirTrama(byte[] datos, int desde, int longitud) {
+            SolicitudDTO solicitud;
+            boolean congestionada;
+            try {
+                solicitud = servidor.decodificarBinario(datos, desde, longitud);
+                congestionada = despachador.recibir(solicitud);
+            } catch (IOException e) {
+                Log.error("Trama inválida del cliente " + cliente.getDireccionIP() + ": " + e.getMessage());
+                congestionada = despachador.recibirInvalida("Invalid request format");
+            }
+            pausarSiCongestionada(congestionada);
+        }
+
+        private void acumular(byte[] datos, int desde, int longitud) throws IOException {
+            int requerido = parcialLongitud + longitud;
+            if (requerido > MAX_LINEA) {
+                throw new IOException("Solicitud demasiado larga (más de " + MAX_LINEA + " bytes)");
+            }
+            if (requerido > parcial.length) {
+                byte[] nuevo = new byte[Math.max(requerido, Math.min(MAX_LINEA, parcial.length * 2 + 256))];
+                System.arraycopy(parcial, 0, nuevo, 0, parcialLongitud);
+                parcial = nuevo;
+            }
+            System.arraycopy(datos, desde, parcial, parcialLongitud, longitud);
+            parcialLongitud = requerido;
+        }
+
+        private String decodificar(byte[] datos, int desde, int longitud) {
+            // readLine() también descarta el '\r' de los saltos de línea "\r\n"
+            if (longitud > 0 && datos[desde + longitud - 1] == '\r') {
+                longitud--;
+            }
+            return new String(datos, desde, longitud, charset);
+        }
+
+        /**
+         * Entrega una solicitud al despachador; si la conexión queda congestionada
+         * se deja de leer del socket hasta que avance (hilo de I/O)
+         */
+        private void encolar(String linea) {
+            pausarSiCongestionada(despachador.recibir(linea));
+        }
+
+        private void pausarSiCongestionada(boolean congestionada) {
+            if (congestionada && !lecturaPausada) {
+                lecturaPausada = true;
+                cambiarInteres(0, SelectionKey.OP_READ);
+            }
+        }
+
+        private void reanudarLectura() {
+            lecturaPausada = false;
+            cambiarInteres(SelectionKey.OP_READ, 0);
+        }
+
+        /**
+         * Agrega y quita operaciones de interés de la clave (hilo de I/O). cerrar() puede
+         * cancelar la clave desde otro hilo en cualquier momento, así que una clave
+         * cancelada se ignora: la conexión ya se está cerrando.
+         */
+        private void cambiarInteres(int agregar, int quitar) {
+            SelectionKey actual = clave;
+            if (actual == null || !actual.isValid()) {
+                return;
+            }
+            try {
+                actual.interestOps((actual.interestOps() | agregar) & ~quitar);
+            } catch (CancelledKeyException e) {
+                // Cancelada entre la comprobación y el cambio
+            }
+        }
+
+        /**
+         * Ejecuta una tarea de esta conexión en su hilo de I/O; si falla se cierra solo esta conexión
+         */
+        private void ejecutarEnBucle(Runnable tarea) {
+            bucle.ejecutar(() -> {
+                try {
+                    tarea.run();
+                } catch (RuntimeException e) {
+                    Log.error("Error inesperado con cliente " + cliente.getDireccionIP() + ": " + e);
+                    cerrar();
+                }
+            });
+        }
+
+        /**
+         * Serializa una respuesta en el protocolo de la conexión y la envía
+         */
+        private void responder(SolicitudDTO solicitud, RespuestaDTO respuesta) {
+            if (binario) {
+                enviarBytes(ByteBuffer.wrap(servidor.serializarBinario(solicitud, respuesta)));
+            } else {
+                byte[] cuerpo = servidor.serializarJson(respuesta).getBytes(charset);
+                ByteBuffer buffer = ByteBuffer.allocate(cuerpo.length + finDeLinea.length);
+                buffer.put(cuerpo).put(finDeLinea);
+                buffer.flip();
+                enviarBytes(buffer);
+            }
+        }
+
+        /**
+         * Escribe bytes hacia el cliente; si el socket no los acepta completos, el
+         * resto se deja en cola para el hilo de I/O
+         */
+        void enviarBytes(ByteBuffer buffer) {
+            if (cerrada.get()) {
+                return;
+            }
+            try {
+                synchronized (salida) {
+                    if (salida.isEmpty()) {
+                        canal.write(buffer);
+                        if (!buffer.hasRemaining()) {
+                            return;
+                        }
+                    }
+                    salida.add(buffer);
+                }
+                ejecutarEnBucle(this::activarEscritura);
+            } catch (IOException e) {
+                Log.info("Error I/O con cliente " + cliente.getDireccionIP() + ": " + e.getMessage());
+                cerrar();
+            }
+        }
+
+        private void activarEscritura() {
+            cambiarInteres(SelectionKey.OP_WRITE, 0);
+        }
+
+        /**
+         * Vacía la cola de salida cuando el socket vuelve a aceptar datos (hilo de I/O)
+         */
+        void escribirPendiente() throws IOException {
+            synchronized (salida) {
+                while (!salida.isEmpty()) {
+                    ByteBuffer buffer = salida.peek();
+                    canal.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    salida.poll();
+                }
+            }
+            cambiarInteres(0, SelectionKey.OP_WRITE);
+        }
+
+        void cerrar() {
+            if (!cerrada.compareAndSet(false, true)) {
+                return;
+            }
+            if (clave != null) {
+                clave.cancel();
+            }
+            try {
+                canal.close();
+            } catch (IOException e) {
+                Log.error("Error closing client connection: " + e.getMessage());
+            }
+            // Cerrar la sesión implica ir a la BD, así que se hace fuera del hilo de I/O
+            try {
+                trabajadores.execute(() -> servidor.finalizarConexion(cliente));
+            } catch (RejectedExecutionException e) {
+                servidor.finalizarConexion(cliente);
+            }
+        }
+    }
+}
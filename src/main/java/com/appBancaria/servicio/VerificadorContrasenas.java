@@ -0,0 +1,253 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.log.Log;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash y verificación de contraseñas (PBKDF2 con HMAC-SHA256 y sal aleatoria).
+ * El hash es costoso a propósito, así que se calcula en un pool de hilos
+ * propio con una cola acotada: una avalancha de logins o registros no ocupa
+ * los hilos que atienden consultas y consignaciones, y si la cola se llena la
+ * solicitud se rechaza con {@link Saturado} en lugar de esperar sin límite.
+ *
+ * Formato guardado: pbkdf2-sha256$iteraciones$sal$hash (sal y hash en Base64).
+ * Las contraseñas guardadas en texto plano (anteriores a este formato) o con
+ * otro número de iteraciones se siguen aceptando y se indica un hash nuevo
+ * para reemplazarlas tras un login correcto.
+ */
+final class VerificadorContrasenas {
+    private static final String PREFIJO = "pbkdf2-sha256$";
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+    private static final int BYTES_SAL = 16;
+    private static final int BITS_HASH = 256;
+
+    /**
+     * Se lanza cuando la cola de hashes está llena
+     */
+    static final class Saturado extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        Saturado() {
+            super("Servidor ocupado, intente de nuevo más tarde");
+        }
+    }
+
+    /**
+     * Resultado de verificar una contraseña
+     */
+    static final class Verificacion {
+        final boolean valida;
+        // Hash que debe reemplazar al guardado, o null si no hace falta
+        final String hashNuevo;
+
+        Verificacion(boolean valida, String hashNuevo) {
+            this.valida = valida;
+            this.hashNuevo = hashNuevo;
+        }
+    }
+
+    private final int iteraciones;
+    private final ThreadPoolExecutor ejecutor;
+    private final SecureRandom aleatorio = new SecureRandom();
+    // Hash de referencia para que un correo inexistente tarde lo mismo que uno existente
+    private final String hashFicticio;
+
+    // Estadísticas (tiempos en nanosegundos)
+    private final AtomicLong hashes = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong actualizados = new AtomicLong();
+    private final AtomicLong tiempoHashTotal = new AtomicLong();
+    private final AtomicLong tiempoHashMaximo = new AtomicLong();
+    private final AtomicLong tiempoColaTotal = new AtomicLong();
+    private final AtomicLong tiempoColaMaximo = new AtomicLong();
+
+    /**
+     * @param iteraciones Costo del hash (iteraciones de PBKDF2)
+     * @param hilos Hilos dedicados a calcular hashes
+     * @param maxCola Hashes que pueden esperar un hilo libre antes de rechazar
+     */
+    VerificadorContrasenas(int iteraciones, int hilos, int maxCola) {
+        this.iteraciones = Math.max(1000, iteraciones);
+        int tamano = Math.max(1, hilos);
+        this.ejecutor = new ThreadPoolExecutor(tamano, tamano, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxCola)),
+                Ejecutores.fabricaPlataforma("hash-contrasena-", true));
+        this.hashFicticio = calcularHash("", this.iteraciones);
+    }
+
+    /**
+     * Calcula el hash de una contraseña nueva
+     * @throws Saturado si la cola de hashes está llena
+     */
+    String hashear(String contrasena) throws SQLException {
+        return ejecutar(() -> calcularHash(contrasena, iteraciones));
+    }
+
+    /**
+     * Verifica una contraseña contra el valor guardado
+     * @param contrasena Contraseña recibida
+     * @param guardado Valor guardado en la base de datos, o null si el usuario no existe
+     * @throws Saturado si la cola de hashes está llena
+     */
+    Verificacion verificar(String contrasena, String guardado) throws SQLException {
+        return ejecutar(() -> {
+            if (contrasena == null || guardado == null) {
+                comparar(contrasena != null ? contrasena : "", hashFicticio);
+                return new Verificacion(false, null);
+            }
+            if (!guardado.startsWith(PREFIJO)) {
+                // Contraseña en texto plano de antes del hash: se acepta y se reemplaza por su hash
+                boolean valida = MessageDigest.isEqual(
+                        contrasena.getBytes(StandardCharsets.UTF_8), guardado.getBytes(StandardCharsets.UTF_8));
+                return valida ? conHashNuevo(contrasena) : new Verificacion(false, null);
+            }
+            boolean valida = comparar(contrasena, guardado);
+            if (valida && iteracionesDe(guardado) != iteraciones) {
+                // Hash con otro costo: se recalcula con el configurado
+                return conHashNuevo(contrasena);
+            }
+            return new Verificacion(valida, null);
+        });
+    }
+
+    void detener() {
+        // Las solicitudes que seguían en cola se cancelan para que quien espera su resultado no se quede bloqueado
+        for (Runnable pendiente : ejecutor.shutdownNow()) {
+            if (pendiente instanceof Future) {
+                ((Future<?>) pendiente).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Obtiene una instantánea de las estadísticas de los hashes
+     * @return Mapa con hashes calculados, rechazos y tiempos de cálculo y de cola (ms)
+     */
+    Map<String, Object> getEstadisticas() {
+        long total = hashes.get();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("iteraciones", iteraciones);
+        estadisticas.put("hilos", ejecutor.getCorePoolSize());
+        estadisticas.put("enCola", ejecutor.getQueue().size());
+        estadisticas.put("hashes", total);
+        estadisticas.put("rechazados", rechazados.get());
+        estadisticas.put("actualizados", actualizados.get());
+        estadisticas.put("tiempoHashPromedioMs", total > 0 ? tiempoHashTotal.get() / 1_000_000.0 / total : 0.0);
+        estadisticas.put("tiempoHashMaximoMs", tiempoHashMaximo.get() / 1_000_000.0);
+        estadisticas.put("tiempoColaPromedioMs", total > 0 ? tiempoColaTotal.get() / 1_000_000.0 / total : 0.0);
+        estadisticas.put("tiempoColaMaximoMs", tiempoColaMaximo.get() / 1_000_000.0);
+        return estadisticas;
+    }
+
+    private Verificacion conHashNuevo(String contrasena) {
+        actualizados.incrementAndGet();
+        return new Verificacion(true, calcularHash(contrasena, iteraciones));
+    }
+
+    /**
+     * Ejecuta un cálculo en el pool de hashes y espera el resultado
+     */
+    private <T> T ejecutar(Callable<T> calculo) throws SQLException {
+        long encolado = System.nanoTime();
+        Future<T> futuro;
+        try {
+            futuro = ejecutor.submit(() -> {
+                long inicio = System.nanoTime();
+                try {
+                    return calculo.call();
+                } finally {
+                    long fin = System.nanoTime();
+                    registrarTiempo(tiempoColaTotal, tiempoColaMaximo, inicio - encolado);
+                    registrarTiempo(tiempoHashTotal, tiempoHashMaximo, fin - inicio);
+                    hashes.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rechazados.incrementAndGet();
+            Log.advertencia("Cola de hashes de contraseñas llena, solicitud rechazada");
+            throw new Saturado();
+        }
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            futuro.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Verificación de contraseña interrumpida", e);
+        } catch (CancellationException e) {
+            // El ejecutor se cerró (shutdownNow) con la solicitud en cola o en curso
+            throw new Saturado();
+        } catch (ExecutionException e) {
+            throw new SQLException("Error al calcular el hash de la contraseña: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void registrarTiempo(AtomicLong total, AtomicLong maximo, long nanos) {
+        total.addAndGet(nanos);
+        maximo.accumulateAndGet(nanos, Math::max);
+    }
+
+    private String calcularHash(String contrasena, int iteraciones) {
+        byte[] sal = new byte[BYTES_SAL];
+        aleatorio.nextBytes(sal);
+        byte[] hash = pbkdf2(contrasena, sal, iteraciones);
+        Base64.Encoder codificador = Base64.getEncoder().withoutPadding();
+        return PREFIJO + iteraciones + "$" + codificador.encodeToString(sal) + "$" + codificador.encodeToString(hash);
+    }
+
+    /**
+     * Compara en tiempo constante una contraseña con un hash guardado
+     */
+    private static boolean comparar(String contrasena, String guardado) {
+        String[] partes = guardado.substring(PREFIJO.length()).split("\\$");
+        if (partes.length != 3) {
+            return false;
+        }
+        try {
+            int iteraciones = Integer.parseInt(partes[0]);
+            byte[] sal = Base64.getDecoder().decode(partes[1]);
+            byte[] esperado = Base64.getDecoder().decode(partes[2]);
+            return MessageDigest.isEqual(pbkdf2(contrasena, sal, iteraciones), esperado);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static int iteracionesDe(String guardado) {
+        int fin = guardado.indexOf('$', PREFIJO.length());
+        try {
+            return Integer.parseInt(guardado.substring(PREFIJO.length(), fin));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] pbkdf2(String contrasena, byte[] sal, int iteraciones) {
+        PBEKeySpec spec = new PBEKeySpec(contrasena.toCharArray(), sal, iteraciones, BITS_HASH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITMO).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 no disponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
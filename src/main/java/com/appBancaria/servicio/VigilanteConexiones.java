@@ -0,0 +1,161 @@
+package com.appBancaria.servicio;
+
+import com.appBancaria.dto.RespuestaDTO;
+import com.appBancaria.dto.SolicitudDTO;
+import com.appBancaria.log.Log;
+import com.appBancaria.protocolo.ProtocoloBinario;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Detecta conexiones inactivas o muertas (por ejemplo un cajero que se apagó
+ * sin cerrar el socket, cuya conexión queda medio abierta).
+ * Cada conexión tiene un solo temporizador en una {@link RuedaTemporizadores}
+ * que vence cuando podría haber superado el tiempo de inactividad; al vencer
+ * se compara con la última actividad real y se cierra la conexión o se vuelve
+ * a programar. Así no hay que recorrer todas las conexiones periódicamente.
+ *
+ * Opcionalmente envía latidos: a las conexiones que los pidieron (ping con
+ * datos.latido = true) se les envía un mensaje "ping" con idSolicitud
+ * "latido" tras un tiempo sin actividad; el cliente debe responder con
+ * cualquier solicitud (normalmente un ping) antes del tiempo de inactividad.
+ * En el protocolo binario el latido es una trama PING con el id reservado
+ * {@link ProtocoloBinario#ID_LATIDO_BINARIO}.
+ */
+final class VigilanteConexiones {
+    static final String ID_LATIDO = ProtocoloBinario.ID_LATIDO;
+
+    private final long inactividadMs;
+    private final long latidoMs;
+    private final Executor ejecutor;
+    private final RuedaTemporizadores rueda;
+    private final Map<Long, Vigilancia> vigilancias = new ConcurrentHashMap<>();
+
+    /**
+     * @param inactividadMs Tiempo sin recibir datos tras el que se cierra la conexión (0 = nunca)
+     * @param latidoMs Tiempo sin recibir datos tras el que se envía un latido (0 = sin latidos)
+     * @param ejecutor Ejecutor donde se escriben los latidos, para no bloquear la rueda
+     */
+    VigilanteConexiones(long inactividadMs, long latidoMs, Executor ejecutor) {
+        this.inactividadMs = Math.max(0, inactividadMs);
+        this.latidoMs = Math.max(0, latidoMs);
+        this.ejecutor = ejecutor;
+        this.rueda = new RuedaTemporizadores(1000, 512, "vigilante-conexiones");
+    }
+
+    /**
+     * Empieza a vigilar una conexión
+     * @param cliente Cliente de la conexión
+     * @param cerrar Cierra la conexión (debe poder llamarse desde cualquier hilo)
+     * @param respondedor Envía mensajes por la conexión, para los latidos
+     */
+    void vigilar(ClienteConectado cliente, Runnable cerrar, DespachadorConexion.Respondedor respondedor) {
+        if (inactividadMs == 0 && latidoMs == 0) {
+            return;
+        }
+        Vigilancia vigilancia = new Vigilancia(cliente, cerrar, respondedor);
+        vigilancias.put(cliente.getIdConexion(), vigilancia);
+        vigilancia.programar(System.currentTimeMillis());
+    }
+
+    /**
+     * Deja de vigilar una conexión que se cerró
+     */
+    void dejarDeVigilar(ClienteConectado cliente) {
+        Vigilancia vigilancia = vigilancias.remove(cliente.getIdConexion());
+        if (vigilancia != null) {
+            vigilancia.cancelar();
+        }
+    }
+
+    void detener() {
+        rueda.detener();
+        vigilancias.clear();
+    }
+
+    /**
+     * Estado de vigilancia de una conexión
+     */
+    private final class Vigilancia {
+        private final ClienteConectado cliente;
+        private final Runnable cerrar;
+        private final DespachadorConexion.Respondedor respondedor;
+        // Solo los modifica el hilo de la rueda (y vigilar() antes de programar)
+        private long ultimoLatido;
+        private volatile RuedaTemporizadores.Temporizador temporizador;
+        private volatile boolean cancelada;
+
+        Vigilancia(ClienteConectado cliente, Runnable cerrar, DespachadorConexion.Respondedor respondedor) {
+            this.cliente = cliente;
+            this.cerrar = cerrar;
+            this.respondedor = respondedor;
+        }
+
+        /**
+         * Programa la siguiente revisión en el primer momento en que podría
+         * tocar un latido o el cierre por inactividad
+         */
+        void programar(long ahora) {
+            long ultimaActividad = cliente.getUltimaActividad();
+            long proxima = Long.MAX_VALUE;
+            if (inactividadMs > 0) {
+                proxima = ultimaActividad + inactividadMs;
+            }
+            if (latidoMs > 0) {
+                proxima = Math.min(proxima, Math.max(ultimaActividad, ultimoLatido) + latidoMs);
+            }
+            temporizador = rueda.programar(Math.max(1, proxima - ahora), this::revisar);
+            // Si se canceló mientras se programaba, no dejar el temporizador colgado
+            if (cancelada) {
+                temporizador.cancelar();
+            }
+        }
+
+        void revisar() {
+            if (cancelada) {
+                return;
+            }
+            long ahora = System.currentTimeMillis();
+            long inactivo = ahora - cliente.getUltimaActividad();
+            if (inactividadMs > 0 && inactivo >= inactividadMs) {
+                Log.info("Cerrando conexión inactiva por " + inactivo / 1000 + " s: " + cliente.getDireccionIP());
+                vigilancias.remove(cliente.getIdConexion(), this);
+                cerrar.run();
+                return;
+            }
+            if (latidoMs > 0 && cliente.isLatido()
+                    && ahora - Math.max(cliente.getUltimaActividad(), ultimoLatido) >= latidoMs) {
+                ultimoLatido = ahora;
+                enviarLatido();
+            }
+            programar(ahora);
+        }
+
+        private void enviarLatido() {
+            // La solicitud solo indica el formato de la trama en el protocolo binario
+            SolicitudDTO ping = new SolicitudDTO();
+            ping.setTipoOperacion("ping");
+            ping.setIdSolicitud(ID_LATIDO);
+            RespuestaDTO latido = new RespuestaDTO();
+            latido.setCodigo(200);
+            latido.setMensaje("ping");
+            latido.setIdSolicitud(ID_LATIDO);
+            try {
+                ejecutor.execute(() -> respondedor.responder(ping, latido));
+            } catch (RejectedExecutionException e) {
+                // El servidor se está deteniendo
+            }
+        }
+
+        void cancelar() {
+            cancelada = true;
+            RuedaTemporizadores.Temporizador actual = temporizador;
+            if (actual != null) {
+                actual.cancelar();
+            }
+        }
+    }
+}